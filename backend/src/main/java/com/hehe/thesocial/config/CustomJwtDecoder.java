@@ -1,9 +1,8 @@
 package com.hehe.thesocial.config;
 
 
-import com.hehe.thesocial.dto.request.auth.IntrospectRequest;
-import com.hehe.thesocial.dto.response.auth.IntrospectResponse;
-import com.hehe.thesocial.service.authentication.AuthenticationService;
+import com.hehe.thesocial.service.authentication.TokenRevocationList;
+import jakarta.annotation.PostConstruct;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -11,16 +10,22 @@ import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.BadJwtException;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.spec.SecretKeySpec;
-import java.util.Objects;
+import java.time.Duration;
 
 
+/**
+ * The one decoder for access tokens, shared by the HTTP filter chain and the WebSocket handshake.
+ * Each token is verified in a single pass: signature and expiry by Nimbus, then the in-memory revocation list.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
@@ -33,30 +38,26 @@ public class CustomJwtDecoder implements JwtDecoder {
 
 
     @NonFinal
-    NimbusJwtDecoder decoder = null;
-
-    AuthenticationService authenticationService;
+    NimbusJwtDecoder decoder;
+
+    TokenRevocationList tokenRevocationList;
+
+    @PostConstruct
+    void init() {
+        SecretKeySpec secretKeySpec = new SecretKeySpec(JWT_SECRET.getBytes(), "HS512");
+        decoder = NimbusJwtDecoder.withSecretKey(secretKeySpec)
+                .macAlgorithm(MacAlgorithm.HS512)
+                .build();
+        // No clock skew, a token is rejected the moment it expires like introspection does
+        decoder.setJwtValidator(new JwtTimestampValidator(Duration.ZERO));
+    }
 
     @Override
     public Jwt decode(String token) throws JwtException {
-        try {
-            IntrospectResponse response = authenticationService.introspectToken(IntrospectRequest.builder().token(token).build());
-            if (!response.isValid()) {
-                throw new JwtException("Invalid Token");
-            }
-
-
-        } catch (JwtException e) {
-            throw e;
+        Jwt jwt = decoder.decode(token);
+        if (tokenRevocationList.isRevoked(jwt.getId())) {
+            throw new BadJwtException("Invalid Token");
         }
-
-        if (Objects.isNull(decoder)) {
-            SecretKeySpec secretKeySpec = new SecretKeySpec(JWT_SECRET.getBytes(), "HS512");
-            decoder = NimbusJwtDecoder.withSecretKey(secretKeySpec)
-                    .macAlgorithm(MacAlgorithm.HS512)
-                    .build();
-        }
-
-        return decoder.decode(token);
+        return jwt;
     }
 }
@@ -1,9 +1,19 @@
 package com.hehe.thesocial.config;
 
+import com.hehe.thesocial.service.cluster.UserRouteTable;
+import com.hehe.thesocial.service.kafka.KafkaRetryRouter;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ContainerProperties;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
 
 @Configuration
 public class KafkaConfig {
@@ -11,8 +21,46 @@ public class KafkaConfig {
     public KafkaAdmin.NewTopics newTopics() {
         return new KafkaAdmin.NewTopics(
                 new NewTopic("chat_messages", 3, (short) 1),
+                new NewTopic("chat_messages.DLT", 3, (short) 1),
+                new NewTopic("read_status_updates", 3, (short) 1),
+                new NewTopic("read_status_updates.DLT", 3, (short) 1),
                 new NewTopic("notifications", 1, (short) 1),
-                new NewTopic("user_events", 2, (short) 1)
+                new NewTopic("user_events", 2, (short) 1),
+                // Compacted, so the latest route of every user and node is kept for nodes that start later
+                TopicBuilder.name(UserRouteTable.ROUTES_TOPIC).partitions(1).replicas(1).compact().build()
         );
     }
+
+    /**
+     * One retry tier per attempt, their number follows chat.kafka.retry.attempts
+     */
+    @Bean
+    public KafkaAdmin.NewTopics retryTopics(KafkaRetryRouter kafkaRetryRouter) {
+        return new KafkaAdmin.NewTopics(Stream.of("chat_messages", "read_status_updates")
+                .flatMap(topic -> Arrays.stream(kafkaRetryRouter.retryTopics(topic)))
+                .map(topic -> new NewTopic(topic, 3, (short) 1))
+                .toArray(NewTopic[]::new));
+    }
+
+    /**
+     * Frames forwarded to users connected to this node, only this node consumes it
+     */
+    @Bean
+    public NewTopic nodeDeliveryTopic(UserRouteTable userRouteTable) {
+        return new NewTopic(UserRouteTable.deliveryTopicOf(userRouteTable.getNodeId()), 1, (short) 1);
+    }
+
+    /**
+     * Record listeners with manual acknowledgment, so a retry listener can nack a record that is not due yet
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> retryKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(false);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
 }
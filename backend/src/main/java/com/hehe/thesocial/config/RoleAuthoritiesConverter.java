@@ -0,0 +1,45 @@
+package com.hehe.thesocial.config;
+
+import com.hehe.thesocial.service.role.RolePermissionCache;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Authorities of a request: the space separated roles of the scope claim, each followed by its current permissions
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RoleAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
+    static String ROLE_PREFIX = "ROLE_";
+
+    RolePermissionCache rolePermissionCache;
+
+    @Override
+    public Collection<GrantedAuthority> convert(Jwt jwt) {
+        String scope = jwt.getClaimAsString("scope");
+        if (scope == null || scope.isBlank()) {
+            return Set.of();
+        }
+
+        Set<GrantedAuthority> authorities = new LinkedHashSet<>();
+        for (String authority : scope.trim().split("\\s+")) {
+            authorities.add(new SimpleGrantedAuthority(authority));
+            if (authority.startsWith(ROLE_PREFIX)) {
+                rolePermissionCache.permissionsOf(authority.substring(ROLE_PREFIX.length()))
+                        .forEach(permission -> authorities.add(new SimpleGrantedAuthority(permission)));
+            }
+        }
+        return authorities;
+    }
+}
@@ -1,6 +1,7 @@
 package com.hehe.thesocial.config;
 
 import com.hehe.thesocial.constant.PredefinedRoles;
+import com.hehe.thesocial.service.authentication.AdaptiveBCryptPasswordEncoder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,16 +9,17 @@ import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
-import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.util.Map;
+
 @Configuration
 @EnableMethodSecurity
 public class SecuritySetting {
@@ -54,7 +56,8 @@ public class SecuritySetting {
 
 
     @Bean
-    SecurityFilterChain httpSecurity(HttpSecurity httpSecurity, CustomJwtDecoder customJwtDecoder) throws Exception {
+    SecurityFilterChain httpSecurity(HttpSecurity httpSecurity, CustomJwtDecoder customJwtDecoder,
+                                     JwtAuthenticationConverter jwtAuthenticationConverter) throws Exception {
         return httpSecurity
                 .authorizeHttpRequests(requests -> requests
                         .requestMatchers(PUBLIC_ENDPOINTS).permitAll()
@@ -67,7 +70,7 @@ public class SecuritySetting {
                 )
                 .oauth2ResourceServer(oauth2Security ->
                                 oauth2Security.jwt(jwtConfigurer -> jwtConfigurer.decoder(customJwtDecoder)
-                                        .jwtAuthenticationConverter(jwtAuthenticationConverter()))
+                                        .jwtAuthenticationConverter(jwtAuthenticationConverter))
                                         .authenticationEntryPoint(new AuthenticationEntryPoint()))
                 .csrf(AbstractHttpConfigurer::disable)
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
@@ -75,11 +78,9 @@ public class SecuritySetting {
     }
 
     @Bean
-    JwtAuthenticationConverter jwtAuthenticationConverter() {
-        JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
-        jwtGrantedAuthoritiesConverter.setAuthorityPrefix("");
+    JwtAuthenticationConverter jwtAuthenticationConverter(RoleAuthoritiesConverter roleAuthoritiesConverter) {
         JwtAuthenticationConverter jwtAuthenticationConverter = new JwtAuthenticationConverter();
-        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(jwtGrantedAuthoritiesConverter);
+        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(roleAuthoritiesConverter);
         return jwtAuthenticationConverter;
     }
 
@@ -97,9 +98,16 @@ public class SecuritySetting {
         return source;
     }
 
+    /**
+     * New hashes are stored as {bcrypt} at the configured cost. Hashes without an id prefix (written before the
+     * delegating encoder) and hashes of another cost still match and are rehashed on the next successful login.
+     */
     @Bean
-    PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12);
+    PasswordEncoder passwordEncoder(@Value("${security.password.bcrypt-cost:12}") int bcryptCost) {
+        AdaptiveBCryptPasswordEncoder bcrypt = new AdaptiveBCryptPasswordEncoder(bcryptCost);
+        DelegatingPasswordEncoder passwordEncoder = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+        passwordEncoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return passwordEncoder;
     }
 
 }
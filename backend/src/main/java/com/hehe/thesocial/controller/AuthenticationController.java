@@ -15,6 +15,8 @@ import lombok.experimental.FieldDefaults;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/auth")
 @RequiredArgsConstructor
@@ -23,11 +25,14 @@ public class AuthenticationController {
 
     AuthenticationService authenticationService;
 
+    // Checked on the login pool, the request thread is released while the password is verified
     @PostMapping("/token")
-    public ResponseEntity<ApiResponse<AuthenticateResponse>> authenticate(@RequestBody AuthenticateRequest request) {
-        return ResponseEntity.ok(ApiResponse.<AuthenticateResponse>builder()
-                .result(authenticationService.authenticate(request))
-                .build());
+    public CompletableFuture<ResponseEntity<ApiResponse<AuthenticateResponse>>> authenticate(
+            @RequestBody AuthenticateRequest request) {
+        return authenticationService.authenticateAsync(request)
+                .thenApply(response -> ResponseEntity.ok(ApiResponse.<AuthenticateResponse>builder()
+                        .result(response)
+                        .build()));
     }
 
     @PostMapping("/refresh")
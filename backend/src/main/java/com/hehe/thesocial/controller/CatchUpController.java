@@ -0,0 +1,41 @@
+package com.hehe.thesocial.controller;
+
+import com.hehe.thesocial.dto.response.chat.CatchUpResponse;
+import com.hehe.thesocial.service.messageDelivery.PendingDeliveryService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * STOMP endpoints for catching up after a reconnect, the session principal is the userDetailId
+ */
+@Controller
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CatchUpController {
+    PendingDeliveryService pendingDeliveryService;
+
+    /**
+     * Subscribing to /app/catch-up right after CONNECT answers with a single frame on that subscription, so the
+     * replay cannot race the client's other subscriptions
+     */
+    @SubscribeMapping("/catch-up")
+    public CatchUpResponse catchUp(Principal principal) {
+        return pendingDeliveryService.catchUp(principal.getName());
+    }
+
+    /**
+     * Acknowledge the ids of a catch-up frame once applied, they are not replayed again
+     */
+    @MessageMapping("/catch-up.ack")
+    public void acknowledge(@Payload List<String> messageIds, Principal principal) {
+        pendingDeliveryService.acknowledge(principal.getName(), messageIds);
+    }
+}
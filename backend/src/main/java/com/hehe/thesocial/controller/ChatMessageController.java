@@ -5,6 +5,7 @@ import com.hehe.thesocial.dto.request.chat.ChatMessageUpdateRequest;
 import com.hehe.thesocial.dto.request.chat.DirectChatMessageRequest;
 import com.hehe.thesocial.dto.request.chat.GroupChatMessageRequest;
 import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.dto.response.chat.ChatMessageSliceResponse;
 import com.hehe.thesocial.dto.response.conversation.ConversationResponse;
 import com.hehe.thesocial.service.aiChat.AiChatService;
 import com.hehe.thesocial.service.chatMessage.ChatMessageService;
@@ -41,6 +42,18 @@ public class ChatMessageController {
                 .build());
     }
 
+    @GetMapping("/conversation/{conversationId}/history")
+    public ResponseEntity<ApiResponse<ChatMessageSliceResponse>> getChatMessageHistory(
+            @PathVariable String conversationId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") int size) {
+
+        ChatMessageSliceResponse messages = chatMessageService.getChatMessagesBefore(conversationId, before, size);
+
+        return ResponseEntity.ok(ApiResponse.<ChatMessageSliceResponse>builder()
+                .result(messages)
+                .build());
+    }
 
 
     @PostMapping()
@@ -2,22 +2,21 @@ package com.hehe.thesocial.controller;
 
 import com.hehe.thesocial.dto.response.file.FileResponse;
 import com.hehe.thesocial.service.file.FileService;
+import com.hehe.thesocial.service.file.MediaFileServer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.net.MalformedURLException;
-import java.nio.file.Files;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -29,6 +28,7 @@ import java.util.List;
 public class FileController {
 
     private final FileService fileService;
+    private final MediaFileServer mediaFileServer;
 
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
@@ -67,82 +67,42 @@ public class FileController {
     }
 
     @GetMapping("/thumbnailImage/{uploader}/{filename:.+}")
-    public ResponseEntity<Resource> serveThumbnail(@PathVariable String uploader, @PathVariable String filename) {
-        try {
-            log.info("Serving thumbnail request - uploader: {}, filename: {}", uploader, filename);
-            
-            Path filePath = Paths.get(uploadDir, "thumbnailImage", uploader, filename);
-            log.info("Attempting to serve thumbnail: {}", filePath.toAbsolutePath());
-            
-            // Check if file exists
-            if (!Files.exists(filePath)) {
-                log.warn("Thumbnail does not exist: {}", filePath);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-            }
-            
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (resource.exists() && resource.isReadable()) {
-                log.info("Thumbnail found and readable: {}", filePath);
-                // Determine content type
-                String contentType = determineContentType(filename);
-                log.info("Content type determined as: {}", contentType);
-
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
-                        .body(resource);
-            } else {
-                log.warn("Thumbnail not found or not readable: {}", filePath);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-            }
-        } catch (MalformedURLException e) {
-            log.error("Error serving thumbnail: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-        } catch (Exception e) {
-            log.error("Unexpected error serving thumbnail: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    public void serveThumbnail(@PathVariable String uploader, @PathVariable String filename,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, filename, "thumbnailImage", uploader, filename);
+    }
+
+    @GetMapping("/hls/{videoId}/{attempt}/{filename:.+}")
+    public void serveHlsPlaylist(@PathVariable String videoId, @PathVariable String attempt,
+                                 @PathVariable String filename,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, filename, "hls", videoId, attempt, filename);
+    }
+
+    @GetMapping("/hls/{videoId}/{attempt}/{rendition}/{filename:.+}")
+    public void serveHlsSegment(@PathVariable String videoId, @PathVariable String attempt,
+                                @PathVariable String rendition, @PathVariable String filename,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, filename, "hls", videoId, attempt, rendition, filename);
     }
 
     @GetMapping("/{uploader}/{filename:.+}")
-    public ResponseEntity<Resource> serveFile(@PathVariable String uploader, @PathVariable String filename) {
-        try {
-            log.info("Serving file request - uploader: {}, filename: {}", uploader, filename);
-            log.info("Upload directory: {}", uploadDir);
-            
-            Path filePath = Paths.get(uploadDir).resolve(uploader).resolve(filename);
-            log.info("Attempting to serve file: {}", filePath.toAbsolutePath());
-            
-            // Check if file exists
-            if (!Files.exists(filePath)) {
-                log.warn("File does not exist: {}", filePath);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-            }
-            
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (resource.exists() && resource.isReadable()) {
-                log.info("File found and readable: {}", filePath);
-                // Determine content type
-                String contentType = determineContentType(filename);
-                log.info("Content type determined as: {}", contentType);
-
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
-                        .body(resource);
-            } else {
-                log.warn("File not found or not readable: {}", filePath);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-            }
-        } catch (MalformedURLException e) {
-            log.error("Error serving file: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-        } catch (Exception e) {
-            log.error("Unexpected error serving file: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    public void serveFile(@PathVariable String uploader, @PathVariable String filename,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, filename, uploader, filename);
+    }
+
+    private void serve(HttpServletRequest request, HttpServletResponse response, String filename,
+                       String... segments) throws IOException {
+        Path root = Paths.get(uploadDir).toAbsolutePath().normalize();
+        Path filePath = root.resolve(Paths.get("", segments)).normalize();
+        if (!filePath.startsWith(root)) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
         }
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"");
+        mediaFileServer.serve(filePath, determineContentType(filename), request, response);
     }
 
     private String determineContentType(String filename) {
@@ -169,6 +129,8 @@ public class FileController {
             case "ogg" -> "audio/ogg";
             case "aac" -> "audio/aac";
             case "flac" -> "audio/flac";
+            case "m3u8" -> "application/vnd.apple.mpegurl";
+            case "ts" -> "video/mp2t";
             case "pdf" -> "application/pdf";
             case "txt" -> "text/plain";
             case "json" -> "application/json";
@@ -0,0 +1,41 @@
+package com.hehe.thesocial.controller;
+
+import com.hehe.thesocial.dto.ApiResponse;
+import com.hehe.thesocial.dto.response.inbox.InboxRepairResponse;
+import com.hehe.thesocial.service.inbox.ReadWatermarkMigration;
+import com.hehe.thesocial.service.inbox.UnreadCounterConsistencyChecker;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/admin/inbox")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class InboxAdminController {
+    UnreadCounterConsistencyChecker unreadCounterConsistencyChecker;
+    ReadWatermarkMigration readWatermarkMigration;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/repair")
+    public ResponseEntity<ApiResponse<InboxRepairResponse>> repairUnreadCounters(
+            @RequestParam(defaultValue = "false") boolean dryRun) {
+        return ResponseEntity.ok(ApiResponse.<InboxRepairResponse>builder()
+                .result(unreadCounterConsistencyChecker.checkAll(dryRun))
+                .build());
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/migrate-read-watermarks")
+    public ResponseEntity<ApiResponse<InboxRepairResponse>> migrateReadWatermarks() {
+        return ResponseEntity.ok(ApiResponse.<InboxRepairResponse>builder()
+                .result(readWatermarkMigration.migrateAll())
+                .build());
+    }
+}
@@ -0,0 +1,34 @@
+package com.hehe.thesocial.controller;
+
+import com.hehe.thesocial.dto.ApiResponse;
+import com.hehe.thesocial.dto.response.kafka.DeadLetterReplayResponse;
+import com.hehe.thesocial.service.kafka.DeadLetterReplayService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/admin/kafka")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class KafkaAdminController {
+    DeadLetterReplayService deadLetterReplayService;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/dlt/{topic}/replay")
+    public ResponseEntity<ApiResponse<DeadLetterReplayResponse>> replayDeadLetters(
+            @PathVariable String topic,
+            @RequestParam(defaultValue = "1000") int maxRecords,
+            @RequestParam(defaultValue = "100") int batchSize) {
+        return ResponseEntity.ok(ApiResponse.<DeadLetterReplayResponse>builder()
+                .result(deadLetterReplayService.replay(topic, maxRecords, batchSize))
+                .build());
+    }
+}
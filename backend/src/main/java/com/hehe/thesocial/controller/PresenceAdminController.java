@@ -0,0 +1,36 @@
+package com.hehe.thesocial.controller;
+
+import com.hehe.thesocial.dto.ApiResponse;
+import com.hehe.thesocial.dto.response.presence.PresenceSnapshotResponse;
+import com.hehe.thesocial.service.presence.PresenceRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/presence")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class PresenceAdminController {
+    PresenceRegistry presenceRegistry;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping
+    public ResponseEntity<ApiResponse<PresenceSnapshotResponse>> getSnapshot() {
+        Map<String, Integer> sessionsByUser = presenceRegistry.snapshot();
+        return ResponseEntity.ok(ApiResponse.<PresenceSnapshotResponse>builder()
+                .result(PresenceSnapshotResponse.builder()
+                        .onlineUsers(sessionsByUser.size())
+                        .sessions(presenceRegistry.totalSessions())
+                        .sessionsByUser(sessionsByUser)
+                        .build())
+                .build());
+    }
+}
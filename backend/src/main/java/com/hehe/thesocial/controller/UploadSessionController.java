@@ -0,0 +1,69 @@
+package com.hehe.thesocial.controller;
+
+import com.hehe.thesocial.dto.ApiResponse;
+import com.hehe.thesocial.dto.request.file.UploadSessionRequest;
+import com.hehe.thesocial.dto.response.file.FileResponse;
+import com.hehe.thesocial.dto.response.file.UploadSessionResponse;
+import com.hehe.thesocial.service.file.ResumableUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Resumable uploads: POST a session, PUT the bytes in chunks at the reported offset, then POST complete.
+ * After a broken connection GET the session and continue from its offset.
+ */
+@RestController
+@RequestMapping("/uploads")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UploadSessionController {
+    ResumableUploadService resumableUploadService;
+
+    @PostMapping
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> createSession(
+            @Valid @RequestBody UploadSessionRequest request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(ApiResponse.<UploadSessionResponse>builder()
+                .result(resumableUploadService.create(request))
+                .build());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> getSession(@PathVariable String id) {
+        return ResponseEntity.ok(ApiResponse.<UploadSessionResponse>builder()
+                .result(resumableUploadService.status(id))
+                .build());
+    }
+
+    @PutMapping(value = "/{id}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> writeChunk(@PathVariable String id,
+                                                                         @RequestParam long offset,
+                                                                         HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(ApiResponse.<UploadSessionResponse>builder()
+                .result(resumableUploadService.writeChunk(id, offset, request.getContentLengthLong(),
+                        request.getInputStream()))
+                .build());
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<ApiResponse<FileResponse>> complete(@PathVariable String id,
+                                                              @RequestParam(required = false) String checksum) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(ApiResponse.<FileResponse>builder()
+                .result(resumableUploadService.complete(id, checksum))
+                .build());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        resumableUploadService.cancel(id);
+        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    }
+}
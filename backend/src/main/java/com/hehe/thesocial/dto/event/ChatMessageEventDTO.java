@@ -1,6 +1,7 @@
 package com.hehe.thesocial.dto.event;
 
 import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.entity.enums.ConversationType;
 import com.hehe.thesocial.entity.enums.EventType;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -17,4 +18,5 @@ public class ChatMessageEventDTO {
     ChatMessageResponse response;
     Set<String> participantsIds;
     EventType eventType;
+    ConversationType conversationType;
 }
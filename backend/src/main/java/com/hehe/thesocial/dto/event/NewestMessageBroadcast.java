@@ -0,0 +1,25 @@
+package com.hehe.thesocial.dto.event;
+
+import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Inbox frame sent on /queue/newest-message alongside every delivered chat message
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class NewestMessageBroadcast {
+    String conversationId;
+    ChatMessageResponse message;
+    String conversationType;
+    Integer participantCount;
+    Long timestamp;
+}
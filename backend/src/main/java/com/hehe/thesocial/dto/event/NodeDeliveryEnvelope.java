@@ -0,0 +1,22 @@
+package com.hehe.thesocial.dto.event;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+/**
+ * A user-destination frame forwarded to the node holding the sessions of the given users.
+ * The payload is already in its STOMP JSON form, so the receiving node sends it unchanged.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class NodeDeliveryEnvelope {
+    List<String> userDetailIds;
+    String destination;
+    JsonNode payload;
+}
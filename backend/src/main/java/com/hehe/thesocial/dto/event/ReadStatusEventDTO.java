@@ -3,7 +3,9 @@ package com.hehe.thesocial.dto.event;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -12,9 +14,17 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 public class ReadStatusEventDTO {
+    // messageId, readParticipantsId and readCount describe the most recent read only
     String messageId;
+    // Every message covered by this event once reads of the same reader have been coalesced
+    List<String> messageIds;
+    // Readers of each message in messageIds, the read count of a message is the size of its list
+    Map<String, List<String>> readParticipantsByMessageId;
     String conversationId;
     List<String> readParticipantsId;
     Integer readCount;
     String readerId;
+    // Set when the reader's watermark moved: every message up to this time is read by the reader.
+    // Watermark events carry nothing else, clients derive the receipts of each message from it.
+    LocalDateTime readUpTo;
 }
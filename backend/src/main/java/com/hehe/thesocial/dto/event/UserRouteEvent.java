@@ -0,0 +1,19 @@
+package com.hehe.thesocial.dto.event;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Entry of the cluster routing table: the user holds sessions on the node.
+ * Without a userDetailId it is the heartbeat of the node itself.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class UserRouteEvent {
+    String nodeId;
+    String userDetailId;
+    long timestamp;
+}
@@ -0,0 +1,24 @@
+package com.hehe.thesocial.dto.event;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Frame sent to the uploader on /queue/video-updates once the server has probed their video
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class VideoProcessedEvent {
+    String videoId;
+    String thumbnailUrl;
+    Double duration;
+    Integer width;
+    Integer height;
+}
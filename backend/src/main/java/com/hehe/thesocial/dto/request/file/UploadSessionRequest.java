@@ -0,0 +1,20 @@
+package com.hehe.thesocial.dto.request.file;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@NoArgsConstructor
+@Builder
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class UploadSessionRequest {
+    @NotBlank(message = "File name is required")
+    String fileName;
+
+    // Total size in bytes, the part file is preallocated to it
+    @Positive(message = "Size must be positive")
+    long size;
+}
@@ -0,0 +1,18 @@
+package com.hehe.thesocial.dto.response.chat;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatchUpResponse {
+    // Oldest first, the client acknowledges these ids once they are applied
+    List<ChatMessageResponse> messages;
+    Boolean hasMore;
+}
@@ -0,0 +1,19 @@
+package com.hehe.thesocial.dto.response.chat;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessageSliceResponse {
+    List<ChatMessageResponse> content;
+    Integer size;
+    Boolean hasNext;
+    String nextCursor;
+}
@@ -25,4 +25,5 @@ public class FileResponse {
     String title;
     String description;
     String thumbnailUrl;
+    String hlsUrl;
 }
@@ -0,0 +1,20 @@
+package com.hehe.thesocial.dto.response.file;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class UploadSessionResponse {
+    String id;
+    String fileName;
+    long size;
+    // Where the next chunk has to start
+    long offset;
+    Instant expiresAt;
+}
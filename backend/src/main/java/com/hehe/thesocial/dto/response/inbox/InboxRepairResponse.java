@@ -0,0 +1,16 @@
+package com.hehe.thesocial.dto.response.inbox;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class InboxRepairResponse {
+    int conversationsChecked;
+    int countersChecked;
+    int countersRepaired;
+    boolean dryRun;
+}
@@ -0,0 +1,15 @@
+package com.hehe.thesocial.dto.response.kafka;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class DeadLetterReplayResponse {
+    String topic;
+    int replayed;
+    int skipped;
+}
@@ -0,0 +1,18 @@
+package com.hehe.thesocial.dto.response.presence;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class PresenceSnapshotResponse {
+    int onlineUsers;
+    int sessions;
+    // userDetailId -> open sessions on this node
+    Map<String, Integer> sessionsByUser;
+}
@@ -49,4 +49,12 @@ public class FileDocument extends BaseDocument {
 
     @Field("etag")
     String etag;
+
+    // SHA-256 of the content as hex, only known for files that were hashed while being received
+    @Field("checksum")
+    String checksum;
+
+    // StoredBlob holding the bytes, null for files stored before the blob store
+    @Field("blob_id")
+    String blobId;
 }
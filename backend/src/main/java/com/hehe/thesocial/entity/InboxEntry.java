@@ -0,0 +1,62 @@
+package com.hehe.thesocial.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.LocalDateTime;
+
+/**
+ * Per-user projection of a conversation for the inbox screen, maintained incrementally on send and read
+ */
+@Document(collection = "inbox_entries")
+@CompoundIndexes({
+        @CompoundIndex(name = "owner_conversation_idx", def = "{'owner_id': 1, 'conversation_id': 1}", unique = true),
+        @CompoundIndex(name = "owner_last_activity_idx", def = "{'owner_id': 1, 'last_activity_at': -1}"),
+        @CompoundIndex(name = "conversation_last_message_idx", def = "{'conversation_id': 1, 'last_message.message_id': 1}")
+})
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = false)
+public class InboxEntry {
+    public static final LocalDateTime NEVER_READ = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @EqualsAndHashCode.Include
+    @MongoId
+    @Field("_id")
+    String id;
+
+    @Field("owner_id")
+    String ownerId;
+
+    @Field("conversation_id")
+    String conversationId;
+
+    @Field("last_message")
+    InboxLastMessage lastMessage;
+
+    @Field("unread_count")
+    int unreadCount;
+
+    @Field("last_activity_at")
+    LocalDateTime lastActivityAt;
+
+    // Read watermark: every message up to this point has been read by the owner
+    @Field("last_read_at")
+    LocalDateTime lastReadAt;
+
+    @Field("last_read_message_id")
+    String lastReadMessageId;
+
+    public LocalDateTime readWatermark() {
+        return lastReadAt != null ? lastReadAt : NEVER_READ;
+    }
+}
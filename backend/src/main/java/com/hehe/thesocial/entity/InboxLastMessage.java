@@ -0,0 +1,52 @@
+package com.hehe.thesocial.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot of the newest message of a conversation, embedded in {@link InboxEntry}
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class InboxLastMessage {
+    @Field("message_id")
+    String messageId;
+
+    @Field("sender_id")
+    String senderId;
+
+    @Field("message")
+    String message;
+
+    @Field("created_at")
+    LocalDateTime createdAt;
+
+    @Field("edited")
+    Boolean edited;
+
+    @Field("read_participants_id")
+    @Builder.Default
+    List<String> readParticipantsId = new ArrayList<>();
+
+    public static InboxLastMessage of(ChatMessage chatMessage) {
+        return InboxLastMessage.builder()
+                .messageId(chatMessage.getId())
+                .senderId(chatMessage.getSenderId())
+                .message(chatMessage.getMessage())
+                .createdAt(chatMessage.getCreatedAt())
+                .edited(chatMessage.getEdited())
+                .readParticipantsId(chatMessage.getReadParticipantsId() != null
+                        ? new ArrayList<>(chatMessage.getReadParticipantsId())
+                        : new ArrayList<>())
+                .build();
+    }
+}
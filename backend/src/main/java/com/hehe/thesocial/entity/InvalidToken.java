@@ -2,6 +2,7 @@ package com.hehe.thesocial.entity;
 
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import org.springframework.data.mongodb.core.mapping.MongoId;
@@ -30,4 +31,10 @@ public class InvalidToken extends BaseDocument {
 
     @Field("expire_at")
     Date expireAt;
+
+    // Set explicitly: the id is assigned up front, so auditing never fills created_at for a revocation.
+    // Incremental refresh of the in-memory revocation list reads the newest revocations by it.
+    @Indexed(name = "revoked_at_idx")
+    @Field("revoked_at")
+    Date revokedAt;
 }
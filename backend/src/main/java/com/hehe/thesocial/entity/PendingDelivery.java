@@ -0,0 +1,55 @@
+package com.hehe.thesocial.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * A chat message that reached a participant while they had no WebSocket session, kept until the client acknowledges
+ * the catch-up frame that replayed it
+ */
+@Document(collection = "pending_deliveries")
+@CompoundIndex(name = "owner_created_at_idx", def = "{'owner_id': 1, 'created_at': 1}")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = false)
+public class PendingDelivery {
+    // ownerId:messageId, so recording the same message twice for a user is a no-op
+    @EqualsAndHashCode.Include
+    @MongoId
+    @Field("_id")
+    String id;
+
+    @Field("owner_id")
+    String ownerId;
+
+    @Field("conversation_id")
+    String conversationId;
+
+    @Field("message_id")
+    String messageId;
+
+    // Creation time of the message, catch-up replays in this order
+    @Field("created_at")
+    LocalDateTime createdAt;
+
+    // Users gone for longer than this fall back to reloading their inbox
+    @Indexed(name = "recorded_at_ttl_idx", expireAfter = "7d")
+    @Field("recorded_at")
+    Instant recordedAt;
+
+    public static String idOf(String ownerId, String messageId) {
+        return ownerId + ":" + messageId;
+    }
+}
@@ -31,7 +31,8 @@ public class Role extends BaseDocument {
     @Field("description")
     String description;
 
-    @DBRef
+    // Loading a user only needs role names, permissions are resolved when first accessed
+    @DBRef(lazy = true)
     @Field("permissions_ref")
     Set<Permission> permissions = new HashSet<>();
 }
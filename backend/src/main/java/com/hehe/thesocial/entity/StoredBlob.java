@@ -0,0 +1,38 @@
+package com.hehe.thesocial.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+
+/**
+ * Stored content shared by every FileDocument with the same bytes, deleted with its file once no document
+ * references it any more
+ */
+@Document(collection = "blobs")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = false)
+public class StoredBlob {
+    // SHA-256 of the content as hex
+    @EqualsAndHashCode.Include
+    @MongoId
+    @Field("_id")
+    String id;
+
+    @Field("size")
+    long size;
+
+    @Field("ref_count")
+    long refCount;
+
+    @Field("created_at")
+    Instant createdAt;
+}
@@ -0,0 +1,47 @@
+package com.hehe.thesocial.entity;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.MongoId;
+
+import java.time.Instant;
+
+/**
+ * A resumable upload in progress. The bytes go to a preallocated part file on the node that created the session,
+ * received is the length of the contiguous prefix written so far and where the next chunk has to start.
+ */
+@Document(collection = "upload_sessions")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@EqualsAndHashCode(onlyExplicitlyIncluded = true, callSuper = false)
+public class UploadSession extends BaseDocument {
+    @EqualsAndHashCode.Include
+    @MongoId
+    @Field("_id")
+    String id;
+
+    @Indexed(name = "uploader_idx")
+    @Field("uploader")
+    String uploader;
+
+    @Field("file_name")
+    String fileName;
+
+    @Field("size")
+    long size;
+
+    @Field("received")
+    long received;
+
+    // Pushed forward by every chunk, sessions idle past it are swept together with their part file
+    @Indexed(name = "expires_at_idx")
+    @Field("expires_at")
+    Instant expiresAt;
+}
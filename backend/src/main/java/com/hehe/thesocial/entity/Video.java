@@ -1,5 +1,6 @@
 package com.hehe.thesocial.entity;
 
+import com.hehe.thesocial.entity.enums.TranscodeStatus;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 import org.springframework.data.mongodb.core.mapping.DBRef;
@@ -7,6 +8,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import org.springframework.data.mongodb.core.mapping.MongoId;
 
+import java.time.Instant;
 import java.util.List;
 
 @Document(collection = "videos")
@@ -50,4 +52,29 @@ public class Video extends BaseDocument {
     @DBRef
     @Field("metadata_ref")
     MetaData metaData;
+
+    // The videos collection doubles as the transcoding queue, see VideoTranscodeService
+    @Field("transcode_status")
+    TranscodeStatus transcodeStatus;
+
+    // Percent of the source transcoded by the current attempt
+    @Field("transcode_progress")
+    int transcodeProgress;
+
+    @Field("transcode_attempts")
+    int transcodeAttempts;
+
+    @Field("transcode_next_attempt_at")
+    Instant transcodeNextAttemptAt;
+
+    // A PROCESSING job whose lease ran out belongs to a worker that died and is picked up again
+    @Field("transcode_lease_until")
+    Instant transcodeLeaseUntil;
+
+    @Field("transcode_error")
+    String transcodeError;
+
+    // HLS master playlist, only set once transcodeStatus is READY
+    @Field("hls_url")
+    String hlsUrl;
 }
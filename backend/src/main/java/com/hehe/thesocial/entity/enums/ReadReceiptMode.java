@@ -0,0 +1,10 @@
+package com.hehe.thesocial.entity.enums;
+
+public enum ReadReceiptMode {
+    // Every reader is appended to chat_message.read_participants_id
+    PER_MESSAGE,
+    // One read watermark per participant and conversation, per-message readers derived at query time
+    WATERMARK
+
+    ;
+}
@@ -0,0 +1,8 @@
+package com.hehe.thesocial.entity.enums;
+
+public enum TranscodeStatus {
+    PENDING,
+    PROCESSING,
+    READY,
+    FAILED
+}
@@ -11,10 +11,16 @@ public enum ErrorCode {
 
     UNAUTHENTICATED(HttpStatus.BAD_REQUEST, 1001, "Invalid authentication info"),
     USER_ACCOUNT_DISABLED(HttpStatus.FORBIDDEN, 1002, "User account is disabled"),
+    TOO_MANY_LOGIN_ATTEMPTS(HttpStatus.TOO_MANY_REQUESTS, 1003, "Too many login attempts, try again shortly"),
 
     INVALID_FILE(HttpStatus.BAD_REQUEST, 1051, "File uploaded not valid!"),
     ERROR_UPLOADING_FILE(HttpStatus.INTERNAL_SERVER_ERROR, 1052, "File uploaded having trouble"),
     FILE_NOT_FOUND(HttpStatus.NOT_FOUND, 1053, "File not found!"),
+    UPLOAD_SESSION_NOT_FOUND(HttpStatus.NOT_FOUND, 1054, "Upload session not found!"),
+    UPLOAD_OFFSET_MISMATCH(HttpStatus.CONFLICT, 1055, "Chunk offset does not match the bytes received so far"),
+    UPLOAD_INCOMPLETE(HttpStatus.BAD_REQUEST, 1056, "Upload is still missing bytes"),
+    UPLOAD_CHECKSUM_MISMATCH(HttpStatus.BAD_REQUEST, 1057, "Uploaded bytes do not match the checksum"),
+    FILE_TOO_LARGE(HttpStatus.PAYLOAD_TOO_LARGE, 1058, "File or chunk is too large"),
 
     USER_NOT_FOUND(HttpStatus.NOT_FOUND, 1101, "User not found!"),
     VIDEO_NOT_FOUND(HttpStatus.NOT_FOUND, 1102, "Video not found!"),
@@ -28,7 +34,9 @@ public enum ErrorCode {
     INVALID_CONVERSATION_PARTICIPANTS(HttpStatus.BAD_REQUEST, 1109, "Conversation info not valid"),
     CONVERSATION_ALREADY_EXISTS(HttpStatus.BAD_REQUEST, 1110, "Conversation between these participants already exists!"),
     INVALID_CONVERSATION_TYPE(HttpStatus.BAD_REQUEST, 1111, "Invalid conversation type for this operation"),
-    CONVERSATION_ACCESS_DENIED(HttpStatus.FORBIDDEN, 1112, "Access denied to this conversation");
+    CONVERSATION_ACCESS_DENIED(HttpStatus.FORBIDDEN, 1112, "Access denied to this conversation"),
+    INVALID_CURSOR(HttpStatus.BAD_REQUEST, 1113, "Invalid pagination cursor"),
+    UNKNOWN_TOPIC(HttpStatus.BAD_REQUEST, 1114, "Topic has no dead letter queue");
 
 
     private final HttpStatus httpStatus;
@@ -1,7 +1,13 @@
 package com.hehe.thesocial.listener;
 
+import com.hehe.thesocial.service.presence.PresenceRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
@@ -10,9 +16,15 @@ import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
+import java.util.Map;
+
 @Slf4j
 @Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class WebSocketListener {
+    PresenceRegistry presenceRegistry;
+
     /**
      * Handle the initial connection attempt (before STOMP connection is established)
      */
@@ -50,6 +62,11 @@ public class WebSocketListener {
             log.info("===== WebSocket Connected Successfully =====");
             log.info("WebSocket connection session ID: {}", accessor.getSessionId());
             log.info("WebSocket connection host IP: {}", accessor.getHost());
+
+            String userDetailId = resolveUserDetailId(accessor);
+            if (userDetailId != null) {
+                presenceRegistry.connect(accessor.getSessionId(), userDetailId);
+            }
             
             // Log authentication method
             String authHeader = accessor.getFirstNativeHeader("Authorization");
@@ -77,6 +94,7 @@ public class WebSocketListener {
         try {
             StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
             log.info("===== WebSocket Disconnected =====");
+            presenceRegistry.disconnect(event.getSessionId());
 
             // Get disconnect status
             CloseStatus closeStatus = event.getCloseStatus();
@@ -111,6 +129,17 @@ public class WebSocketListener {
         }
     }
 
-
-
+    /**
+     * The session principal when the handshake set one, otherwise the id the handshake interceptor stored
+     */
+    private String resolveUserDetailId(StompHeaderAccessor accessor) {
+        if (accessor.getUser() != null) {
+            return accessor.getUser().getName();
+        }
+        Message<?> connectMessage = (Message<?>) accessor.getHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER);
+        Map<String, Object> sessionAttributes = connectMessage != null
+                ? SimpMessageHeaderAccessor.getSessionAttributes(connectMessage.getHeaders())
+                : accessor.getSessionAttributes();
+        return sessionAttributes != null ? (String) sessionAttributes.get("userDetailId") : null;
+    }
 }
@@ -3,6 +3,7 @@ package com.hehe.thesocial.mapper.chatMessage;
 import com.hehe.thesocial.dto.request.chat.DirectChatMessageRequest;
 import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
 import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.entity.InboxLastMessage;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.NullValuePropertyMappingStrategy;
@@ -14,4 +15,8 @@ public interface ChatMessageMapper {
 
     @Mapping(source = "senderId", target = "sender")
     ChatMessageResponse toChatMessageResponse(ChatMessage chatMessage);
+
+    @Mapping(source = "messageId", target = "id")
+    @Mapping(source = "senderId", target = "sender")
+    ChatMessageResponse toChatMessageResponse(InboxLastMessage lastMessage);
 }
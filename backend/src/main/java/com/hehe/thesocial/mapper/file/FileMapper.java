@@ -5,6 +5,7 @@ import com.hehe.thesocial.entity.FileDocument;
 import com.hehe.thesocial.entity.Video;
 import com.hehe.thesocial.entity.ImageSlide;
 import com.hehe.thesocial.entity.enums.FileType;
+import com.hehe.thesocial.entity.enums.TranscodeStatus;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Named;
@@ -45,6 +46,11 @@ public interface FileMapper {
         if (video.getThumbnail() != null) {
             response.setThumbnailUrl(video.getThumbnail().getUrl());
         }
+
+        // Players switch to the adaptive stream once it exists and fall back to the original until then
+        if (video.getTranscodeStatus() == TranscodeStatus.READY) {
+            response.setHlsUrl(video.getHlsUrl());
+        }
         
         return response;
     }
@@ -3,9 +3,13 @@ package com.hehe.thesocial.repository;
 import com.hehe.thesocial.entity.ChatMessage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,15 +17,33 @@ import java.util.Optional;
 public interface ChatMessageRepository extends MongoRepository<ChatMessage, String> {
     Page<ChatMessage> findAllByConversationId(String conversationId, Pageable pageable);
 
+    Slice<ChatMessage> findSliceByConversationId(String conversationId, Pageable pageable);
+
+    // Keyset page: messages strictly older than the (createdAt, _id) cursor, no count query
+    @Query("{ 'conversationId': ?0, '$or': [ { 'createdAt': { '$lt': ?1 } }, { 'createdAt': ?1, '_id': { '$lt': ?2 } } ] }")
+    Slice<ChatMessage> findSliceByConversationIdBefore(String conversationId, LocalDateTime createdAt, String id,
+                                                       Pageable pageable);
+
     void deleteByConversationId(String conversationId);
 
     List<ChatMessage> findByConversationIdOrderByCreatedAtDesc(String conversationId);
 
     Optional<ChatMessage> findFirstByConversationIdOrderByCreatedAtDesc(String conversationId);
     
-    List<ChatMessage> findByConversationIdAndSenderIdNotAndReadParticipantsIdNotContaining(
-        String conversationId, String senderId, String userId);
-    
-    long countByConversationIdAndSenderIdNotAndReadParticipantsIdNotContaining(
-        String conversationId, String senderId, String userId);
+    // Unread messages of a user between two read watermarks, bounded by the (conversationId, createdAt) index
+    @Query(value = "{ 'conversationId': ?0, 'createdAt': { '$gt': ?2, '$lte': ?3 }, 'senderId': { '$ne': ?1 }, 'read_participants_id': { '$ne': ?1 } }",
+            fields = "{ '_id': 1, 'conversationId': 1, 'read_participants_id': 1 }")
+    List<ChatMessage> findUnreadBetween(String conversationId, String userId, LocalDateTime after, LocalDateTime upTo);
+
+    @Query("{ 'conversationId': ?0, 'createdAt': { '$gt': ?2, '$lte': ?3 }, 'senderId': { '$ne': ?1 }, 'read_participants_id': { '$ne': ?1 } }")
+    @Update("{ '$addToSet': { 'read_participants_id': ?1 } }")
+    long markReadBetween(String conversationId, String userId, LocalDateTime after, LocalDateTime upTo);
+
+    // Newest message a user appears in as reader, used to migrate read_participants_id arrays to watermarks
+    @Query(value = "{ 'conversationId': ?0, 'read_participants_id': ?1 }", sort = "{ 'createdAt': -1 }")
+    Slice<ChatMessage> findReadByParticipant(String conversationId, String userId, Pageable pageable);
+
+    @Query(value = "{ 'conversationId': ?0, 'createdAt': { '$gt': ?2 }, 'senderId': { '$ne': ?1 }, 'read_participants_id': { '$ne': ?1 } }",
+            count = true)
+    long countUnreadAfter(String conversationId, String userId, LocalDateTime after);
 }
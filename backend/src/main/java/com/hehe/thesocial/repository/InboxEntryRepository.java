@@ -0,0 +1,25 @@
+package com.hehe.thesocial.repository;
+
+import com.hehe.thesocial.entity.InboxEntry;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface InboxEntryRepository extends MongoRepository<InboxEntry, String> {
+    Page<InboxEntry> findByOwnerIdOrderByLastActivityAtDesc(String ownerId, Pageable pageable);
+
+    Optional<InboxEntry> findByOwnerIdAndConversationId(String ownerId, String conversationId);
+
+    @Query(value = "{ 'conversation_id': ?0 }", fields = "{ 'owner_id': 1, 'last_read_at': 1 }")
+    List<InboxEntry> findWatermarksByConversationId(String conversationId);
+
+    void deleteByConversationId(String conversationId);
+
+    void deleteByOwnerIdAndConversationId(String ownerId, String conversationId);
+}
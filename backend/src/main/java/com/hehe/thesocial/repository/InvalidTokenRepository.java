@@ -2,8 +2,19 @@ package com.hehe.thesocial.repository;
 
 import com.hehe.thesocial.entity.InvalidToken;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
+import java.util.List;
+
 @Repository
 public interface InvalidTokenRepository extends MongoRepository<InvalidToken, String> {
+    @Query(value = "{ 'expire_at': { '$gt': ?0 } }", fields = "{ '_id': 1, 'expire_at': 1 }")
+    List<InvalidToken> findByExpireAtAfter(Date expireAt);
+
+    @Query(value = "{ 'revoked_at': { '$gt': ?0 } }", fields = "{ '_id': 1, 'expire_at': 1 }")
+    List<InvalidToken> findByRevokedAtAfter(Date revokedAt);
+
+    long deleteByExpireAtBefore(Date expireAt);
 }
@@ -0,0 +1,18 @@
+package com.hehe.thesocial.repository;
+
+import com.hehe.thesocial.entity.PendingDelivery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PendingDeliveryRepository extends MongoRepository<PendingDelivery, String> {
+    List<PendingDelivery> findByOwnerIdOrderByCreatedAtAsc(String ownerId, Pageable pageable);
+
+    long countByOwnerId(String ownerId);
+
+    void deleteByOwnerIdAndMessageIdIn(String ownerId, Collection<String> messageIds);
+}
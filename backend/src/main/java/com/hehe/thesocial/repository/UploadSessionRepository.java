@@ -0,0 +1,13 @@
+package com.hehe.thesocial.repository;
+
+import com.hehe.thesocial.entity.UploadSession;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String> {
+    List<UploadSession> findByExpiresAtBefore(Instant cutoff);
+}
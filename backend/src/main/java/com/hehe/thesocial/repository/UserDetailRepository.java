@@ -7,6 +7,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +18,10 @@ public interface UserDetailRepository extends MongoRepository<UserDetail, String
     @Query("{'user_ref.$id': ?0}")
     Optional<UserDetail> findByUserId(String userId);
 
+    // Projection used by the handshake principal cache: only the id, so none of the references get resolved
+    @Query(value = "{'user_ref.$id': ?0}", fields = "{ '_id': 1 }")
+    Optional<UserDetail> findIdByUserId(String userId);
+
     @Query("{'display_name': {$regex: ?0, $options: 'i'}}")
     List<UserDetail> findByDisplayNameContainingIgnoreCase(String displayName);
 
@@ -31,5 +36,10 @@ public interface UserDetailRepository extends MongoRepository<UserDetail, String
     })
     Optional<UserDetail> findByIdWithUser(String userDetailId);
 
+    // Projection used when hydrating chat messages: only the avatar is needed, so skip the
+    // user/following/follower references that a full findAllById would resolve
+    @Query(fields = "{ 'avatar_ref': 1, 'display_name': 1 }")
+    List<UserDetail> findByIdIn(Collection<String> ids);
+
     User User(User user);
 }
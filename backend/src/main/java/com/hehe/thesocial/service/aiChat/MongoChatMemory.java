@@ -14,6 +14,7 @@ import com.hehe.thesocial.repository.ChatMessageRepository;
 import com.hehe.thesocial.repository.ConversationRepository;
 import com.hehe.thesocial.repository.UserDetailRepository;
 import com.hehe.thesocial.repository.UserRepository;
+import com.hehe.thesocial.service.inbox.InboxService;
 import com.hehe.thesocial.service.kafka.KafkaProducer;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
@@ -40,13 +41,15 @@ public class MongoChatMemory implements ChatMemory {
     UserRepository userRepository;
     ChatMessageMapper chatMessageMapper;
     KafkaProducer producer;
+    InboxService inboxService;
 
     public MongoChatMemory(ChatMessageRepository chatMessageRepository,
                            ConversationRepository conversationRepository,
                            UserDetailRepository userDetailRepository,
                            UserRepository userRepository,
                            ChatMessageMapper chatMessageMapper,
-                           KafkaProducer producer) {
+                           KafkaProducer producer,
+                           InboxService inboxService) {
         this.chatMessageRepository = chatMessageRepository;
         this.conversationRepository = conversationRepository;
         this.maxMessages = 10;
@@ -54,6 +57,7 @@ public class MongoChatMemory implements ChatMemory {
         this.userRepository = userRepository;
         this.chatMessageMapper = chatMessageMapper;
         this.producer = producer;
+        this.inboxService = inboxService;
     }
 
     @Override
@@ -87,6 +91,7 @@ public class MongoChatMemory implements ChatMemory {
             }
 
             ChatMessage savedMessage = chatMessageRepository.save(chatMessage);
+            inboxService.recordMessage(savedMessage, participantIds);
             
             // Create response and broadcast
             ChatMessageResponse response = chatMessageMapper.toChatMessageResponse(savedMessage);
@@ -99,6 +104,7 @@ public class MongoChatMemory implements ChatMemory {
                     .response(response)
                     .eventType(EventType.MESSAGE_CREATE)
                     .participantsIds(participantIds)
+                    .conversationType(conversation.getConversationType())
                     .build();
 
             producer.sendMessage(event);
@@ -132,11 +138,12 @@ public class MongoChatMemory implements ChatMemory {
     @Override
     public void clear(String conversationId) {
         // Validate conversation exists
-        conversationRepository.findById(conversationId)
+        Conversation conversation = conversationRepository.findById(conversationId)
                 .orElseThrow(() -> new AppException(ErrorCode.CONVERSATION_NOT_FOUND));
 
         // Delete all messages in the conversation
         chatMessageRepository.deleteByConversationId(conversationId);
+        inboxService.rebuildConversation(conversation);
     }
 
     /**
@@ -0,0 +1,54 @@
+package com.hehe.thesocial.service.authentication;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * BCrypt at a configurable target cost. Hashes of any cost still match, and a hash whose cost differs from the
+ * target, higher or lower, is reported for upgrade so it can be rehashed on the next successful login.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AdaptiveBCryptPasswordEncoder implements PasswordEncoder {
+    @Getter
+    int targetCost;
+    BCryptPasswordEncoder delegate;
+
+    public AdaptiveBCryptPasswordEncoder(int targetCost) {
+        this.targetCost = targetCost;
+        this.delegate = new BCryptPasswordEncoder(targetCost);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return delegate.matches(rawPassword, encodedPassword);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int cost = costOf(encodedPassword);
+        return cost > 0 && cost != targetCost;
+    }
+
+    /**
+     * Cost of a "$2a$12$..." hash, 0 when the hash is not BCrypt
+     */
+    static int costOf(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$'
+                || encodedPassword.charAt(3) != '$' || encodedPassword.charAt(6) != '$') {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(encodedPassword.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
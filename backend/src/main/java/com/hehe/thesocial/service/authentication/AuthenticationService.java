@@ -8,8 +8,11 @@ import com.hehe.thesocial.dto.response.auth.IntrospectResponse;
 import com.hehe.thesocial.dto.response.auth.AuthenticateResponse;
 import com.hehe.thesocial.dto.response.auth.RefreshResponse;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface AuthenticationService {
     AuthenticateResponse authenticate(AuthenticateRequest request);
+    CompletableFuture<AuthenticateResponse> authenticateAsync(AuthenticateRequest request);
     IntrospectResponse introspectToken(IntrospectRequest request);
     RefreshResponse refreshToken(RefreshRequest request);
     void logout(LogoutRequest request);
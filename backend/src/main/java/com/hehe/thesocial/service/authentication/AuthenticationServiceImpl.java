@@ -8,7 +8,6 @@ import com.hehe.thesocial.dto.response.auth.AuthenticateResponse;
 import com.hehe.thesocial.dto.response.auth.IntrospectResponse;
 import com.hehe.thesocial.dto.response.auth.RefreshResponse;
 import com.hehe.thesocial.entity.InvalidToken;
-import com.hehe.thesocial.entity.Permission;
 import com.hehe.thesocial.entity.User;
 import com.hehe.thesocial.exception.AppException;
 import com.hehe.thesocial.exception.ErrorCode;
@@ -23,7 +22,12 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -35,15 +39,20 @@ import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.StringJoiner;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Slf4j
 public class AuthenticationServiceImpl implements AuthenticationService {
 
     UserRepository userRepository;
     PasswordEncoder passwordEncoder;
     InvalidTokenRepository invalidTokenRepository;
+    TokenRevocationList tokenRevocationList;
+    LoginExecutor loginExecutor;
+    MongoTemplate mongoTemplate;
 
     @NonFinal
     @Value("${jwt.expiration}")
@@ -72,6 +81,10 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
         if (!isAuthenticated) throw new AppException(ErrorCode.UNAUTHENTICATED);
 
+        if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+            rehashPassword(user, request.getPassword());
+        }
+
         String token = generateToken(user);
 
         try {
@@ -84,6 +97,26 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         }
     }
 
+    @Override
+    public CompletableFuture<AuthenticateResponse> authenticateAsync(AuthenticateRequest request) {
+        return loginExecutor.submit(() -> authenticate(request));
+    }
+
+    /**
+     * Store the password at the current encoder settings. Only replaces the hash that was just verified, so a
+     * password changed in the meantime is never overwritten, and a failure leaves the old hash working.
+     */
+    private void rehashPassword(User user, String rawPassword) {
+        try {
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(user.getId()).and("password").is(user.getPassword())),
+                    Update.update("password", passwordEncoder.encode(rawPassword)),
+                    User.class);
+        } catch (Exception e) {
+            log.warn("Failed to rehash password of user {}: {}", user.getId(), e.getMessage());
+        }
+    }
+
     public IntrospectResponse introspectToken(IntrospectRequest request) {
         boolean isValid = true;
         String userId = null;
@@ -110,9 +143,11 @@ public class AuthenticationServiceImpl implements AuthenticationService {
             InvalidToken invalidToken = InvalidToken.builder()
                     .id(jit)
                     .expireAt(expireAt)
+                    .revokedAt(new Date())
                     .build();
 
             invalidTokenRepository.save(invalidToken);
+            tokenRevocationList.revoke(jit, expireAt);
 
             String usename = signedJWT.getJWTClaimsSet().getSubject();
 
@@ -146,9 +181,11 @@ public class AuthenticationServiceImpl implements AuthenticationService {
             InvalidToken invalidToken = InvalidToken.builder()
                     .id(jit)
                     .expireAt(expireAt)
+                    .revokedAt(new Date())
                     .build();
 
             invalidTokenRepository.save(invalidToken);
+            tokenRevocationList.revoke(jit, expireAt);
         } catch (ParseException | JOSEException e) {
             throw new AppException(ErrorCode.UNAUTHENTICATED);
         }
@@ -170,7 +207,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         }
 
         String jit = signedJWT.getJWTClaimsSet().getJWTID();
-        if (invalidTokenRepository.existsById(jit)) {
+        if (tokenRevocationList.isRevoked(jit)) {
             throw new AppException(ErrorCode.UNAUTHENTICATED);
         }
         return signedJWT;
@@ -201,16 +238,14 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         }
     }
 
+    /**
+     * Space separated roles only, permissions are resolved per request from the role cache so role edits apply
+     * to tokens that were already issued
+     */
     private String buildScope(User user) {
-        StringJoiner joiner = new StringJoiner("");
+        StringJoiner joiner = new StringJoiner(" ");
         if (!CollectionUtils.isEmpty(user.getRoles())) {
-            user.getRoles().forEach(role -> {
-                joiner.add("ROLE_" + role.getRoleName());
-                if (!CollectionUtils.isEmpty(role.getPermissions())) {
-                    role.getPermissions().stream().map(Permission::getPermission)
-                            .forEach(joiner::add);
-                }
-            });
+            user.getRoles().forEach(role -> joiner.add("ROLE_" + role.getRoleName()));
         }
         return joiner.toString();
     }
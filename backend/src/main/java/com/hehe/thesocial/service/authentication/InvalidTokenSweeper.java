@@ -0,0 +1,98 @@
+package com.hehe.thesocial.service.authentication;
+
+import com.hehe.thesocial.entity.InvalidToken;
+import com.hehe.thesocial.repository.InvalidTokenRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps invalid_tokens bounded. A TTL index on expire_at lets Mongo remove revocations nobody can use anymore, and a
+ * sweeper deletes the same documents on its own schedule for deployments where the TTL monitor lags or is disabled.
+ * A revoked token stays stored for jwt.refreshable seconds past its expiry, since it could still be refreshed until then.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class InvalidTokenSweeper {
+    static String TTL_INDEX = "expire_at_ttl_idx";
+
+    InvalidTokenRepository invalidTokenRepository;
+    MongoTemplate mongoTemplate;
+    MeterRegistry meterRegistry;
+
+    AtomicLong storedTokens = new AtomicLong();
+    ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "invalid-token-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @NonFinal
+    @Value("${jwt.refreshable}")
+    long refreshableSeconds;
+
+    @NonFinal
+    @Value("${jwt.revocation.sweep-interval:1h}")
+    Duration sweepInterval;
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("auth.invalid_tokens.stored", storedTokens, AtomicLong::get)
+                .description("Documents in invalid_tokens as of the last sweep")
+                .register(meterRegistry);
+        ensureTtlIndex();
+        sweeper.scheduleWithFixedDelay(this::sweep, 0, sweepInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    void sweep() {
+        try {
+            Date cutoff = Date.from(Instant.now().minusSeconds(refreshableSeconds));
+            long deleted = invalidTokenRepository.deleteByExpireAtBefore(cutoff);
+            meterRegistry.counter("auth.invalid_tokens.swept").increment(deleted);
+            storedTokens.set(invalidTokenRepository.count());
+            if (deleted > 0) {
+                log.info("Removed {} revoked token(s) that can no longer be used", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to sweep invalid tokens: {}", e.getMessage());
+        }
+    }
+
+    private void ensureTtlIndex() {
+        try {
+            mongoTemplate.indexOps(InvalidToken.class).ensureIndex(new Index()
+                    .on("expire_at", Sort.Direction.ASC)
+                    .named(TTL_INDEX)
+                    .expire(Duration.ofSeconds(refreshableSeconds)));
+        } catch (Exception e) {
+            // An index built with a different jwt.refreshable has to be dropped by hand, the sweeper still runs
+            log.warn("Could not create TTL index on invalid_tokens: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.hehe.thesocial.service.authentication;
+
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.exception.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs password checks on a small dedicated pool so a login storm is bounded to its own threads and CPU share
+ * instead of occupying the request threads that serve chat and feed. The queue is bounded: when it is full the
+ * attempt is rejected with 429 right away rather than waiting behind work that will not finish in time.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class LoginExecutor {
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${security.login.pool-size:0}")
+    int poolSize;
+
+    @NonFinal
+    @Value("${security.login.queue-capacity:200}")
+    int queueCapacity;
+
+    @NonFinal
+    ThreadPoolExecutor executor;
+
+    @NonFinal
+    Counter rejected;
+
+    @NonFinal
+    Timer queueWait;
+
+    @PostConstruct
+    void start() {
+        // Half of the cores by default, BCrypt is pure CPU so more threads only add contention
+        int threads = poolSize > 0 ? poolSize : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        rejected = Counter.builder("auth.login.rejected")
+                .description("Login attempts rejected because the login queue was full")
+                .register(meterRegistry);
+        queueWait = Timer.builder("auth.login.queue_wait")
+                .description("Time a login attempt waited for a login thread")
+                .register(meterRegistry);
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, pool) -> {
+                    rejected.increment();
+                    throw new AppException(ErrorCode.TOO_MANY_LOGIN_ATTEMPTS);
+                });
+        Gauge.builder("auth.login.queued", executor, pool -> pool.getQueue().size())
+                .description("Login attempts waiting for a login thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.login.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Login attempts being checked")
+                .register(meterRegistry);
+        log.info("Login pool started with {} thread(s) and a queue of {}", threads, queueCapacity);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run a login on the pool, throws {@link AppException} with TOO_MANY_LOGIN_ATTEMPTS when the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> login) {
+        long queuedAt = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            queueWait.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+            return login.get();
+        }, executor);
+    }
+}
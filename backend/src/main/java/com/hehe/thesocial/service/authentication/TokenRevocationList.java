@@ -0,0 +1,121 @@
+package com.hehe.thesocial.service.authentication;
+
+import com.hehe.thesocial.entity.InvalidToken;
+import com.hehe.thesocial.repository.InvalidTokenRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process copy of invalid_tokens, so checking a token on every request is a hash lookup instead of a Mongo query.
+ * Loaded once at startup and then refreshed with the tokens revoked since the last refresh, which is how revocations
+ * made on other instances arrive. Revocations made here are visible immediately. Entries are dropped once the token
+ * can no longer be used or refreshed, because verification rejects it by then anyway.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class TokenRevocationList {
+    // Tokens revoked slightly before the previous refresh may only become visible after it
+    static Duration REFRESH_OVERLAP = Duration.ofSeconds(5);
+
+    InvalidTokenRepository invalidTokenRepository;
+    MeterRegistry meterRegistry;
+
+    Map<String, Instant> revokedUntil = new ConcurrentHashMap<>();
+    ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "revocation-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @NonFinal
+    @Value("${jwt.refreshable}")
+    long refreshableSeconds;
+
+    @NonFinal
+    @Value("${jwt.revocation.refresh-interval:5s}")
+    Duration refreshInterval;
+
+    @NonFinal
+    volatile boolean loaded;
+
+    @NonFinal
+    volatile Instant lastRefresh;
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("auth.revoked_tokens", revokedUntil, Map::size)
+                .description("Revoked tokens that could still be presented")
+                .register(meterRegistry);
+        refresher.scheduleWithFixedDelay(this::refresh, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        refresher.shutdownNow();
+    }
+
+    public boolean isRevoked(String jwtId) {
+        if (jwtId == null) {
+            return false;
+        }
+        // Until the first load completes the database stays the source of truth
+        return loaded ? revokedUntil.containsKey(jwtId) : invalidTokenRepository.existsById(jwtId);
+    }
+
+    /**
+     * Record a revocation persisted by this instance
+     */
+    public void revoke(String jwtId, Date expireAt) {
+        revokedUntil.put(jwtId, retainUntil(expireAt));
+    }
+
+    void refresh() {
+        try {
+            Instant now = Instant.now();
+            if (!loaded) {
+                invalidTokenRepository.findByExpireAtAfter(Date.from(now.minusSeconds(refreshableSeconds)))
+                        .forEach(this::add);
+                loaded = true;
+                log.info("Loaded {} revoked token(s)", revokedUntil.size());
+            } else {
+                invalidTokenRepository.findByRevokedAtAfter(Date.from(lastRefresh.minus(REFRESH_OVERLAP)))
+                        .forEach(this::add);
+            }
+            lastRefresh = now;
+            revokedUntil.values().removeIf(until -> until.isBefore(now));
+        } catch (Exception e) {
+            log.warn("Failed to refresh revoked tokens: {}", e.getMessage());
+        }
+    }
+
+    private void add(InvalidToken invalidToken) {
+        revokedUntil.put(invalidToken.getId(), retainUntil(invalidToken.getExpireAt()));
+    }
+
+    /**
+     * A token past its expiry can still be refreshed for jwt.refreshable seconds, so it stays revoked until then
+     */
+    private Instant retainUntil(Date expireAt) {
+        return expireAt == null ? Instant.MAX : expireAt.toInstant().plusSeconds(refreshableSeconds);
+    }
+}
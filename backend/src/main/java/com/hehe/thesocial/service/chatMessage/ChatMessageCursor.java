@@ -0,0 +1,48 @@
+package com.hehe.thesocial.service.chatMessage;
+
+import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.exception.ErrorCode;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Position in a conversation history, encoded as {@code <createdAt>,<id>}
+ */
+@Getter
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ChatMessageCursor {
+    static String SEPARATOR = ",";
+
+    LocalDateTime createdAt;
+    String id;
+
+    public static ChatMessageCursor of(ChatMessage message) {
+        return new ChatMessageCursor(message.getCreatedAt(), message.getId());
+    }
+
+    public static ChatMessageCursor parse(String cursor) {
+        int separator = cursor.lastIndexOf(SEPARATOR);
+        if (separator <= 0 || separator == cursor.length() - 1) {
+            throw new AppException(ErrorCode.INVALID_CURSOR);
+        }
+
+        try {
+            return new ChatMessageCursor(
+                    LocalDateTime.parse(cursor.substring(0, separator)),
+                    cursor.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new AppException(ErrorCode.INVALID_CURSOR);
+        }
+    }
+
+    public String encode() {
+        return createdAt + SEPARATOR + id;
+    }
+}
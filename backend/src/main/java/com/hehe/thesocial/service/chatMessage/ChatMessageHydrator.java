@@ -0,0 +1,82 @@
+package com.hehe.thesocial.service.chatMessage;
+
+import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.entity.InboxLastMessage;
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.mapper.chatMessage.ChatMessageMapper;
+import com.hehe.thesocial.repository.UserDetailRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Turns a page of chat messages into responses, resolving all senders of the page in one query
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class ChatMessageHydrator {
+    ChatMessageMapper chatMessageMapper;
+    UserDetailRepository userDetailRepository;
+
+    public UserDetailIdentityMap newIdentityMap() {
+        return new UserDetailIdentityMap(userDetailRepository);
+    }
+
+    /**
+     * Preload the distinct senders of the given messages into the identity map
+     */
+    public void preloadSenders(List<ChatMessage> messages, UserDetailIdentityMap identityMap) {
+        identityMap.preload(messages.stream()
+                .map(ChatMessage::getSenderId)
+                .distinct()
+                .toList());
+    }
+
+    public ChatMessageResponse toResponse(ChatMessage message, UserDetailIdentityMap identityMap,
+                                          String currentUserDetailId) {
+        return toResponse(message, identityMap, null, currentUserDetailId);
+    }
+
+    /**
+     * When watermarks are given the readers are derived from them instead of the stored read_participants_id
+     */
+    public ChatMessageResponse toResponse(ChatMessage message, UserDetailIdentityMap identityMap,
+                                          ReadWatermarks watermarks, String currentUserDetailId) {
+        ChatMessageResponse response = chatMessageMapper.toChatMessageResponse(message);
+        List<String> readParticipantsId = watermarks != null
+                ? watermarks.readersOf(message)
+                : message.getReadParticipantsId();
+        applySenderAndReadStatus(response, message.getSenderId(), readParticipantsId,
+                identityMap, currentUserDetailId);
+        return response;
+    }
+
+    /**
+     * Build the newest-message response of an inbox row from its denormalized snapshot
+     */
+    public ChatMessageResponse toResponse(InboxLastMessage lastMessage, String conversationId,
+                                          UserDetailIdentityMap identityMap, String currentUserDetailId) {
+        ChatMessageResponse response = chatMessageMapper.toChatMessageResponse(lastMessage);
+        response.setConversationId(conversationId);
+        applySenderAndReadStatus(response, lastMessage.getSenderId(), lastMessage.getReadParticipantsId(),
+                identityMap, currentUserDetailId);
+        return response;
+    }
+
+    private void applySenderAndReadStatus(ChatMessageResponse response, String senderId, List<String> readParticipantsId,
+                                          UserDetailIdentityMap identityMap, String currentUserDetailId) {
+        identityMap.get(senderId)
+                .map(UserDetail::getAvatar)
+                .ifPresent(response::setAvatar);
+        response.setSender(senderId.equals(currentUserDetailId) ? "me" : "other");
+
+        response.setReadParticipantsId(readParticipantsId);
+        response.setIsReadByCurrentUser(readParticipantsId != null && readParticipantsId.contains(currentUserDetailId));
+        response.setReadCount(readParticipantsId != null ? readParticipantsId.size() : 0);
+    }
+}
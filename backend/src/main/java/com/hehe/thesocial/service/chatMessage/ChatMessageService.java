@@ -4,6 +4,7 @@ import com.hehe.thesocial.dto.request.chat.ChatMessageUpdateRequest;
 import com.hehe.thesocial.dto.request.chat.DirectChatMessageRequest;
 import com.hehe.thesocial.dto.request.chat.GroupChatMessageRequest;
 import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.dto.response.chat.ChatMessageSliceResponse;
 import com.hehe.thesocial.entity.UserDetail;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -12,6 +13,8 @@ import org.springframework.transaction.annotation.Transactional;
 public interface ChatMessageService {
     Page<ChatMessageResponse> getAllChatMessageByConversationId(String conversationId, Pageable pageable);
 
+    ChatMessageSliceResponse getChatMessagesBefore(String conversationId, String before, int size);
+
     @Transactional
     ChatMessageResponse createDirectChatMessage(DirectChatMessageRequest request);
 
@@ -6,33 +6,39 @@ import com.hehe.thesocial.dto.request.chat.ChatMessageUpdateRequest;
 import com.hehe.thesocial.dto.request.chat.DirectChatMessageRequest;
 import com.hehe.thesocial.dto.request.chat.GroupChatMessageRequest;
 import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.dto.response.chat.ChatMessageSliceResponse;
 import com.hehe.thesocial.entity.ChatMessage;
 import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.InboxEntry;
 import com.hehe.thesocial.entity.UserDetail;
 import com.hehe.thesocial.entity.enums.ConversationType;
 import com.hehe.thesocial.entity.enums.EventType;
+import com.hehe.thesocial.entity.enums.ReadReceiptMode;
 import com.hehe.thesocial.exception.AppException;
 import com.hehe.thesocial.exception.ErrorCode;
 import com.hehe.thesocial.mapper.chatMessage.ChatMessageMapper;
 import com.hehe.thesocial.repository.ChatMessageRepository;
 import com.hehe.thesocial.repository.ConversationRepository;
 import com.hehe.thesocial.repository.UserDetailRepository;
+import com.hehe.thesocial.service.inbox.InboxService;
 import com.hehe.thesocial.service.kafka.KafkaProducer;
-import com.hehe.thesocial.service.messageDelivery.MessageDeliveryService;
-import com.hehe.thesocial.service.messageDelivery.NewestMessageBroadcastService;
+import com.hehe.thesocial.service.kafka.ReadStatusCoalescer;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -40,13 +46,22 @@ import java.util.stream.Collectors;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @RequiredArgsConstructor
 public class ChatMessageServiceImpl implements ChatMessageService {
+    static int MAX_SLICE_SIZE = 100;
+    static Sort HISTORY_SORT = Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "id"));
+
     ChatMessageRepository chatMessageRepository;
     ChatMessageMapper chatMessageMapper;
     KafkaProducer producer;
+    ReadStatusCoalescer readStatusCoalescer;
     UserDetailRepository userDetailRepository;
     ConversationRepository conversationRepository;
-    MessageDeliveryService messageDeliveryService;
-    NewestMessageBroadcastService newestMessageBroadcastService;
+    ChatMessageHydrator chatMessageHydrator;
+    InboxService inboxService;
+    ChatSendDispatcher chatSendDispatcher;
+
+    @NonFinal
+    @Value("${chat.read-receipts.mode:PER_MESSAGE}")
+    ReadReceiptMode readReceiptMode;
 
     // ============ Public Methods ============
 
@@ -58,30 +73,51 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         validateUserIsParticipant(conversation, currentUser.getId());
 
         Page<ChatMessage> chatMessages = chatMessageRepository.findAllByConversationId(conversationId, pageable);
-        Page<ChatMessageResponse> responses = chatMessages.map(chatMessageMapper::toChatMessageResponse);
-
-        // Create a map of message IDs to ChatMessage objects for efficient lookup
-        Map<String, ChatMessage> messageMap = chatMessages.getContent().stream()
-                .collect(Collectors.toMap(ChatMessage::getId, message -> message));
-
-        responses.getContent().forEach(response -> {
-                String senderId = response.getSender();
-                UserDetail sender = getUserDetailById(senderId);
-                response.setAvatar(sender.getAvatar());
-                response.setSender(senderId.equals(currentUser.getId()) ? "me" : "other");
-                
-                // Set read status information using the message map
-                ChatMessage message = messageMap.get(response.getId());
-                if (message != null) {
-                    response.setReadParticipantsId(message.getReadParticipantsId());
-                    response.setIsReadByCurrentUser(message.getReadParticipantsId() != null && 
-                        message.getReadParticipantsId().contains(currentUser.getId()));
-                    response.setReadCount(message.getReadParticipantsId() != null ? 
-                        message.getReadParticipantsId().size() : 0);
-                }
-        });
 
-        return responses;
+        // Resolve every sender on the page with one query instead of one lookup per message
+        UserDetailIdentityMap senders = chatMessageHydrator.newIdentityMap();
+        chatMessageHydrator.preloadSenders(chatMessages.getContent(), senders);
+        ReadWatermarks watermarks = getReadWatermarks(conversationId);
+
+        return chatMessages.map(message ->
+                chatMessageHydrator.toResponse(message, senders, watermarks, currentUser.getId()));
+    }
+
+    @Override
+    public ChatMessageSliceResponse getChatMessagesBefore(String conversationId, String before, int size) {
+        UserDetail currentUser = getCurrentUser();
+        Conversation conversation = getConversation(conversationId);
+
+        validateUserIsParticipant(conversation, currentUser.getId());
+
+        Pageable pageable = PageRequest.of(0, Math.min(Math.max(size, 1), MAX_SLICE_SIZE), HISTORY_SORT);
+        Slice<ChatMessage> chatMessages;
+        if (before == null || before.isBlank()) {
+            chatMessages = chatMessageRepository.findSliceByConversationId(conversationId, pageable);
+        } else {
+            ChatMessageCursor cursor = ChatMessageCursor.parse(before);
+            chatMessages = chatMessageRepository.findSliceByConversationIdBefore(
+                    conversationId, cursor.getCreatedAt(), cursor.getId(), pageable);
+        }
+
+        UserDetailIdentityMap senders = chatMessageHydrator.newIdentityMap();
+        chatMessageHydrator.preloadSenders(chatMessages.getContent(), senders);
+        ReadWatermarks watermarks = getReadWatermarks(conversationId);
+
+        List<ChatMessageResponse> content = chatMessages.getContent().stream()
+                .map(message -> chatMessageHydrator.toResponse(message, senders, watermarks, currentUser.getId()))
+                .toList();
+
+        String nextCursor = chatMessages.hasNext() && !content.isEmpty()
+                ? ChatMessageCursor.of(chatMessages.getContent().get(content.size() - 1)).encode()
+                : null;
+
+        return ChatMessageSliceResponse.builder()
+                .content(content)
+                .size(content.size())
+                .hasNext(chatMessages.hasNext())
+                .nextCursor(nextCursor)
+                .build();
     }
 
     @Transactional
@@ -91,7 +127,6 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         UserDetail receiver = getUserDetailById(request.getReceiverId());
 
         Conversation conversation = findOrCreateDirectConversation(sender, receiver);
-        Set<String> participantIds = getParticipantIds(conversation);
 
         ChatMessage chatMessage = buildChatMessage(
                 request.getMessage(),
@@ -99,7 +134,7 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 sender.getId()
         );
 
-        return saveAndBroadcastMessage(chatMessage, participantIds);
+        return saveAndBroadcastMessage(chatMessage, conversation, sender);
     }
 
     @Transactional
@@ -117,8 +152,7 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 sender.getId()
         );
 
-        Set<String> participantIds = getParticipantIds(conversation);
-        return saveAndBroadcastMessage(chatMessage, participantIds);
+        return saveAndBroadcastMessage(chatMessage, conversation, sender);
     }
 
     @Transactional
@@ -137,6 +171,7 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         existingMessage.setCreatedAt(LocalDateTime.now());
 
         ChatMessage updatedMessage = chatMessageRepository.save(existingMessage);
+        inboxService.recordMessageEdited(updatedMessage);
         return chatMessageMapper.toChatMessageResponse(updatedMessage);
     }
 
@@ -152,6 +187,7 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         validateUserIsParticipant(conversation, currentUser.getId());
 
         chatMessageRepository.deleteById(chatMessageId);
+        inboxService.recordMessageDeleted(chatMessage);
     }
 
     @Transactional
@@ -167,6 +203,10 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         if (message.getSenderId().equals(currentUser.getId())) {
             return chatMessageMapper.toChatMessageResponse(message);
         }
+
+        if (readReceiptMode == ReadReceiptMode.WATERMARK) {
+            return markReadUpTo(message, currentUser.getId());
+        }
         
         // Add current user to read participants if not already there
         if (message.getReadParticipantsId() == null) {
@@ -181,11 +221,13 @@ public class ChatMessageServiceImpl implements ChatMessageService {
             return chatMessageMapper.toChatMessageResponse(message);
         }
         
-        // Mark as read and save to database first
+        // Mark as read in the database first, a concurrent read of the same message sends no second event
+        if (inboxService.recordMessagesRead(message.getConversationId(), currentUser.getId(), List.of(messageId)) == 0) {
+            return chatMessageMapper.toChatMessageResponse(message);
+        }
         message.getReadParticipantsId().add(currentUser.getId());
-        message = chatMessageRepository.save(message);
         
-        // Send read status update via Kafka
+        // Send read status update via Kafka, merged with the reader's other reads in the coalescing window
         ReadStatusEventDTO readStatusEvent = ReadStatusEventDTO.builder()
                 .messageId(messageId)
                 .conversationId(message.getConversationId())
@@ -194,7 +236,7 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 .readerId(currentUser.getId())
                 .build();
         
-        producer.sendReadStatusUpdate(readStatusEvent);
+        readStatusCoalescer.submit(readStatusEvent);
         
         return chatMessageMapper.toChatMessageResponse(message);
     }
@@ -205,38 +247,50 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         UserDetail currentUser = getCurrentUser();
         Conversation conversation = getConversation(conversationId);
         validateUserIsParticipant(conversation, currentUser.getId());
-        
-        // Get all unread messages in this conversation for the current user
-        java.util.List<ChatMessage> unreadMessages = chatMessageRepository
-            .findByConversationIdAndSenderIdNotAndReadParticipantsIdNotContaining(
-                conversationId, currentUser.getId(), currentUser.getId());
-        
-        // Mark all as read first
-        for (ChatMessage message : unreadMessages) {
-            if (message.getReadParticipantsId() == null) {
-                message.setReadParticipantsId(new java.util.ArrayList<>());
-            }
-            if (!message.getReadParticipantsId().contains(currentUser.getId())) {
-                message.getReadParticipantsId().add(currentUser.getId());
-            }
+
+        ChatMessage newestMessage = chatMessageRepository.findFirstByConversationIdOrderByCreatedAtDesc(conversationId)
+                .orElse(null);
+        if (newestMessage == null) {
+            return;
         }
-        
-        // Save all messages to database first
-        if (!unreadMessages.isEmpty()) {
-            chatMessageRepository.saveAll(unreadMessages);
-            
-            // Then send read status updates for each message
-            for (ChatMessage message : unreadMessages) {
-                ReadStatusEventDTO readStatusEvent = ReadStatusEventDTO.builder()
-                        .messageId(message.getId())
-                        .conversationId(conversationId)
-                        .readParticipantsId(message.getReadParticipantsId())
-                        .readCount(message.getReadParticipantsId().size())
-                        .readerId(currentUser.getId())
-                        .build();
-                
-                producer.sendReadStatusUpdate(readStatusEvent);
-            }
+
+        if (readReceiptMode == ReadReceiptMode.WATERMARK) {
+            markReadUpTo(newestMessage, currentUser.getId());
+            return;
+        }
+
+        // Only messages after the previous watermark can still be unread, so the scan stays bounded
+        LocalDateTime previousWatermark = inboxService.getEntry(currentUser.getId(), conversationId)
+                .map(InboxEntry::readWatermark)
+                .orElse(InboxEntry.NEVER_READ);
+        LocalDateTime watermark = newestMessage.getCreatedAt();
+
+        List<ChatMessage> unreadMessages = chatMessageRepository.findUnreadBetween(
+                conversationId, currentUser.getId(), previousWatermark, watermark);
+
+        inboxService.advanceReadWatermark(conversationId, currentUser.getId(), newestMessage);
+
+        if (unreadMessages.isEmpty()) {
+            return;
+        }
+
+        // One server-side update instead of loading and rewriting every message
+        chatMessageRepository.markReadBetween(conversationId, currentUser.getId(), previousWatermark, watermark);
+
+        for (ChatMessage message : unreadMessages) {
+            List<String> readParticipantsId = new java.util.ArrayList<>(
+                    message.getReadParticipantsId() != null ? message.getReadParticipantsId() : List.of());
+            readParticipantsId.add(currentUser.getId());
+
+            ReadStatusEventDTO readStatusEvent = ReadStatusEventDTO.builder()
+                    .messageId(message.getId())
+                    .conversationId(conversationId)
+                    .readParticipantsId(readParticipantsId)
+                    .readCount(readParticipantsId.size())
+                    .readerId(currentUser.getId())
+                    .build();
+
+            readStatusCoalescer.submit(readStatusEvent);
         }
     }
 
@@ -278,6 +332,7 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 .response(response)
                 .eventType(EventType.MESSAGE_CREATE)
                 .participantsIds(participantIds)
+                .conversationType(conversation.getConversationType())
                 .build();
 
         producer.sendMessage(event);
@@ -292,7 +347,6 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         UserDetail sender = getUserDetailByUserId(senderId);
 
         Conversation conversation = findOrCreateDirectConversation(sender, receiver);
-        Set<String> participantIds = getParticipantIds(conversation);
 
         ChatMessage chatMessage = buildChatMessage(
                 message,
@@ -300,7 +354,7 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 sender.getId()
         );
 
-        return saveAndBroadcastMessage(chatMessage, participantIds);
+        return saveAndBroadcastMessage(chatMessage, conversation, sender);
     }
 
     // ============ Private Helper Methods ============
@@ -337,6 +391,37 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 .collect(Collectors.toSet());
     }
 
+    private ReadWatermarks getReadWatermarks(String conversationId) {
+        return readReceiptMode == ReadReceiptMode.WATERMARK
+                ? new ReadWatermarks(inboxService.getReadWatermarks(conversationId))
+                : null;
+    }
+
+    /**
+     * Watermark mode: reading a message reads everything before it. Nothing is written to the messages
+     * and a single read status event describes the new watermark.
+     */
+    private ChatMessageResponse markReadUpTo(ChatMessage message, String readerId) {
+        boolean advanced = inboxService.advanceReadWatermark(message.getConversationId(), readerId, message);
+
+        List<String> readParticipantsId = new ReadWatermarks(inboxService.getReadWatermarks(message.getConversationId()))
+                .readersOf(message);
+
+        if (advanced) {
+            // Receipts of every message follow from the watermark, so the event carries nothing per message
+            readStatusCoalescer.submit(ReadStatusEventDTO.builder()
+                    .conversationId(message.getConversationId())
+                    .readerId(readerId)
+                    .readUpTo(message.getCreatedAt())
+                    .build());
+        }
+
+        ChatMessageResponse response = chatMessageMapper.toChatMessageResponse(message);
+        response.setReadParticipantsId(readParticipantsId);
+        response.setReadCount(readParticipantsId.size());
+        return response;
+    }
+
     private void validateUserIsParticipant(Conversation conversation, String userId) {
         Set<String> participantIds = getParticipantIds(conversation);
         if (!participantIds.contains(userId)) {
@@ -370,7 +455,9 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 .userDetails(Set.of(user1, user2))
                 .build();
 
-        return conversationRepository.save(newConversation);
+        Conversation savedConversation = conversationRepository.save(newConversation);
+        inboxService.registerConversation(savedConversation);
+        return savedConversation;
     }
 
     private ChatMessage buildChatMessage(String message, String conversationId, String senderId) {
@@ -384,29 +471,26 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 .build();
     }
 
-    private ChatMessageResponse saveAndBroadcastMessage(ChatMessage chatMessage, Set<String> participantIds) {
+    private ChatMessageResponse saveAndBroadcastMessage(ChatMessage chatMessage, Conversation conversation,
+                                                        UserDetail sender) {
+        Set<String> participantIds = getParticipantIds(conversation);
         ChatMessage savedMessage = chatMessageRepository.save(chatMessage);
         ChatMessageResponse response = chatMessageMapper.toChatMessageResponse(savedMessage);
-
-        // Add sender's avatar to the response
-        UserDetail sender = getUserDetailById(savedMessage.getSenderId());
         response.setAvatar(sender.getAvatar());
 
-        // Send via Kafka for real-time delivery to subscribed users
+        // Kafka is the only delivery path: the consumer sends the chat and inbox frames to every participant
         ChatMessageEventDTO event = ChatMessageEventDTO.builder()
                 .response(response)
                 .eventType(EventType.MESSAGE_CREATE)
                 .participantsIds(participantIds)
+                .conversationType(conversation.getConversationType())
                 .build();
 
-        producer.sendMessage(event);
-
-        // Also deliver directly via WebSocket to ensure offline users get the message
-        // This ensures messages reach users even if they're not actively viewing the conversation
-        messageDeliveryService.deliverMessageToConversation(savedMessage.getConversationId(), response);
-
-        // Broadcast newest message for inbox updates
-        newestMessageBroadcastService.broadcastNewestMessage(savedMessage.getConversationId(), response);
+        // The message is durable at this point, the per-participant work may finish after the response is sent
+        chatSendDispatcher.dispatch(savedMessage.getConversationId(), () -> {
+            inboxService.recordMessage(savedMessage, participantIds);
+            producer.sendMessage(event);
+        });
 
         return response;
     }
@@ -0,0 +1,121 @@
+package com.hehe.thesocial.service.chatMessage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the post-persist part of a send (inbox projection and Kafka publish).
+ * With chat.send.async the work leaves the request thread and goes to one of a fixed set of single-thread workers,
+ * picked by conversation so the messages of a conversation keep their order. Queues are bounded: when a worker is
+ * full the caller waits for room in that same queue, which slows producers down without letting a later message
+ * overtake the queued ones. Once the workers are shut down, tasks run synchronously on the caller.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class ChatSendDispatcher {
+    MeterRegistry meterRegistry;
+
+    List<ThreadPoolExecutor> workers = new ArrayList<>();
+
+    @NonFinal
+    @Value("${chat.send.async:false}")
+    boolean async;
+
+    @NonFinal
+    @Value("${chat.send.workers:4}")
+    int workerCount;
+
+    @NonFinal
+    @Value("${chat.send.queue-capacity:1000}")
+    int queueCapacity;
+
+    @NonFinal
+    Counter rejected;
+
+    @PostConstruct
+    void start() {
+        rejected = Counter.builder("chat.send.fanout.rejected")
+                .description("Send tasks that had to wait because the worker queue was full")
+                .register(meterRegistry);
+
+        if (!async) {
+            return;
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> new Thread(runnable, "chat-send-" + threadNumber.incrementAndGet()),
+                    this::enqueueWhenFull));
+        }
+        Gauge.builder("chat.send.fanout.queued", workers,
+                        list -> list.stream().mapToInt(worker -> worker.getQueue().size()).sum())
+                .description("Send tasks waiting for a worker")
+                .register(meterRegistry);
+    }
+
+    public void dispatch(String conversationId, Runnable task) {
+        if (workers.isEmpty()) {
+            task.run();
+            return;
+        }
+        workers.get(Math.floorMod(conversationId.hashCode(), workers.size())).execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("❌ Send task failed for conversation {}: {}", conversationId, e.getMessage());
+            }
+        });
+    }
+
+    private void enqueueWhenFull(Runnable task, ThreadPoolExecutor executor) {
+        rejected.increment();
+        try {
+            while (!executor.isShutdown()) {
+                if (executor.getQueue().offer(task, 100, TimeUnit.MILLISECONDS)) {
+                    // A worker that terminated in the meantime will never drain the queue
+                    if (!executor.isTerminated() || !executor.getQueue().remove(task)) {
+                        return;
+                    }
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Shut down or interrupted while waiting: nothing will pick the task up, so do the work here
+        task.run();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+        for (ThreadPoolExecutor worker : workers) {
+            if (!worker.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Chat send worker did not drain {} queued tasks", worker.getQueue().size());
+            }
+        }
+    }
+}
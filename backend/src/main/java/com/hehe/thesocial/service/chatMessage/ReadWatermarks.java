@@ -0,0 +1,34 @@
+package com.hehe.thesocial.service.chatMessage;
+
+import com.hehe.thesocial.entity.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read watermarks of all participants of a conversation, used to derive per-message readers
+ */
+public class ReadWatermarks {
+    private final Map<String, LocalDateTime> lastReadAtByParticipant;
+
+    public ReadWatermarks(Map<String, LocalDateTime> lastReadAtByParticipant) {
+        this.lastReadAtByParticipant = lastReadAtByParticipant;
+    }
+
+    public List<String> readersOf(ChatMessage message) {
+        return readersOf(message.getSenderId(), message.getCreatedAt());
+    }
+
+    public List<String> readersOf(String senderId, LocalDateTime createdAt) {
+        if (createdAt == null) {
+            return List.of();
+        }
+        return lastReadAtByParticipant.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(senderId))
+                .filter(entry -> entry.getValue() != null && !entry.getValue().isBefore(createdAt))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+    }
+}
@@ -0,0 +1,55 @@
+package com.hehe.thesocial.service.chatMessage;
+
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.repository.UserDetailRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Short-lived identity map of sender profiles, scoped to a single request.
+ * Ids are resolved in bulk and every id is looked up at most once, including ids that do not exist.
+ */
+public class UserDetailIdentityMap {
+    private final UserDetailRepository userDetailRepository;
+    private final Map<String, UserDetail> userDetails = new HashMap<>();
+
+    UserDetailIdentityMap(UserDetailRepository userDetailRepository) {
+        this.userDetailRepository = userDetailRepository;
+    }
+
+    /**
+     * Load every id not yet known with a single query
+     */
+    public void preload(Collection<String> userDetailIds) {
+        Set<String> missing = userDetailIds.stream()
+                .filter(Objects::nonNull)
+                .filter(id -> !userDetails.containsKey(id))
+                .collect(Collectors.toSet());
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        userDetailRepository.findByIdIn(missing)
+                .forEach(userDetail -> userDetails.put(userDetail.getId(), userDetail));
+
+        // Remember misses too so an unknown sender never triggers another round trip
+        missing.forEach(id -> userDetails.putIfAbsent(id, null));
+    }
+
+    public Optional<UserDetail> get(String userDetailId) {
+        if (userDetailId == null) {
+            return Optional.empty();
+        }
+        if (!userDetails.containsKey(userDetailId)) {
+            preload(Set.of(userDetailId));
+        }
+        return Optional.ofNullable(userDetails.get(userDetailId));
+    }
+}
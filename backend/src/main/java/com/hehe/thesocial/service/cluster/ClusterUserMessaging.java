@@ -0,0 +1,107 @@
+package com.hehe.thesocial.service.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hehe.thesocial.dto.event.NodeDeliveryEnvelope;
+import com.hehe.thesocial.service.presence.PresenceRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * User-destination messaging across backend nodes.
+ * The simple broker only reaches sessions of this JVM, so users connected elsewhere are looked up in the route table
+ * and their frames are forwarded over Kafka, one record per node and frame, to the delivery topic of that node.
+ * Every node consumes only its own delivery topic.
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterUserMessaging {
+    SimpMessagingTemplate simpMessagingTemplate;
+    PresenceRegistry presenceRegistry;
+    UserRouteTable userRouteTable;
+    KafkaTemplate<String, Object> kafkaTemplate;
+    ObjectMapper objectMapper;
+    MeterRegistry meterRegistry;
+
+    /**
+     * Whether the user has a session on any node of the cluster
+     */
+    public boolean isOnline(String userDetailId) {
+        return presenceRegistry.isOnline(userDetailId) || !userRouteTable.remoteNodesFor(userDetailId).isEmpty();
+    }
+
+    /**
+     * Send a frame to every session of the given users wherever they are connected, offline users are skipped
+     *
+     * @return the users whose frame could not be handed to the local broker
+     */
+    public List<String> sendToUsers(Collection<String> userDetailIds, String destination, Object payload) {
+        List<String> failed = new ArrayList<>();
+        Map<String, List<String>> usersByNode = new HashMap<>();
+        for (String userDetailId : userDetailIds) {
+            if (presenceRegistry.isOnline(userDetailId)) {
+                try {
+                    simpMessagingTemplate.convertAndSendToUser(userDetailId, destination, payload);
+                } catch (Exception e) {
+                    log.warn("⚠️ Failed to deliver to user {} on {}: {}", userDetailId, destination, e.getMessage());
+                    failed.add(userDetailId);
+                }
+            }
+            for (String node : userRouteTable.remoteNodesFor(userDetailId)) {
+                usersByNode.computeIfAbsent(node, id -> new ArrayList<>()).add(userDetailId);
+            }
+        }
+
+        if (!usersByNode.isEmpty()) {
+            JsonNode json = objectMapper.valueToTree(payload);
+            usersByNode.forEach((node, users) -> {
+                kafkaTemplate.send(UserRouteTable.deliveryTopicOf(node), NodeDeliveryEnvelope.builder()
+                        .userDetailIds(users)
+                        .destination(destination)
+                        .payload(json)
+                        .build());
+                meterRegistry.counter("chat.cluster.forwarded").increment(users.size());
+            });
+        }
+        return failed;
+    }
+
+    @KafkaListener(topics = "#{__listener.deliveryTopic}", groupId = "#{__listener.deliveryTopic}",
+            properties = "auto.offset.reset=earliest")
+    public void onNodeDelivery(NodeDeliveryEnvelope envelope) {
+        if (envelope == null) {
+            return;
+        }
+        for (String userDetailId : envelope.getUserDetailIds()) {
+            // The user left this node after the frame was routed, dropped as the local broker would have
+            if (!presenceRegistry.isOnline(userDetailId)) {
+                continue;
+            }
+            try {
+                simpMessagingTemplate.convertAndSendToUser(userDetailId, envelope.getDestination(), envelope.getPayload());
+            } catch (Exception e) {
+                log.warn("⚠️ Failed to deliver forwarded frame to user {} on {}: {}",
+                        userDetailId, envelope.getDestination(), e.getMessage());
+            }
+        }
+    }
+
+    public String getDeliveryTopic() {
+        return UserRouteTable.deliveryTopicOf(userRouteTable.getNodeId());
+    }
+}
@@ -0,0 +1,244 @@
+package com.hehe.thesocial.service.cluster;
+
+import com.hehe.thesocial.dto.event.UserRouteEvent;
+import com.hehe.thesocial.service.presence.PresenceChangedEvent;
+import com.hehe.thesocial.service.presence.PresenceRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Which backend node holds the WebSocket sessions of which user.
+ * Every node announces its own users on a compacted Kafka topic and replays the whole topic from the start into an
+ * in-memory table, so looking up a route never leaves the JVM. Nodes also publish a heartbeat, and routes of a node
+ * whose heartbeat stopped, because it crashed without withdrawing them, are ignored and then dropped. Liveness is
+ * judged by when this node received a heartbeat, never by the sender's clock.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class UserRouteTable {
+    public static final String ROUTES_TOPIC = "chat_user_routes";
+    static String DELIVERY_TOPIC_PREFIX = "chat_node_deliveries.";
+    static int MISSED_HEARTBEATS = 3;
+    static int LOCK_STRIPES = 64;
+
+    KafkaTemplate<String, Object> kafkaTemplate;
+    PresenceRegistry presenceRegistry;
+    MeterRegistry meterRegistry;
+
+    Map<String, Set<String>> nodesByUser = new ConcurrentHashMap<>();
+    // Local time each node's heartbeat was last received
+    Map<String, Long> nodeHeartbeats = new ConcurrentHashMap<>();
+    Object[] locks = createLocks();
+    long startedAt = System.currentTimeMillis();
+    ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "route-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Getter
+    @NonFinal
+    @Value("${chat.cluster.node-id:}")
+    String nodeId;
+
+    // Set once this run's own first heartbeat comes back, every record before it was replayed from the topic
+    @NonFinal
+    volatile boolean caughtUp;
+
+    @NonFinal
+    @Value("${chat.cluster.heartbeat-interval:10s}")
+    Duration heartbeatInterval;
+
+    public static String deliveryTopicOf(String nodeId) {
+        return DELIVERY_TOPIC_PREFIX + nodeId;
+    }
+
+    @PostConstruct
+    void start() {
+        if (nodeId == null || nodeId.isBlank()) {
+            // A generated id would leave a delivery topic and consumer group behind on every restart
+            throw new IllegalStateException("chat.cluster.node-id (CHAT_CLUSTER_NODE_ID) must be set to a stable id");
+        }
+        Gauge.builder("chat.cluster.nodes", this, table -> table.liveNodes().size())
+                .description("Backend nodes with a recent heartbeat, this one included")
+                .register(meterRegistry);
+        heartbeat.scheduleAtFixedRate(this::beat, 0, heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        heartbeat.shutdownNow();
+        presenceRegistry.snapshot().keySet().forEach(userDetailId -> withdraw(nodeId, userDetailId));
+        kafkaTemplate.send(ROUTES_TOPIC, nodeId, null);
+    }
+
+    /**
+     * Other live nodes where the user currently has sessions, this node's own sessions are in the presence registry
+     */
+    public Set<String> remoteNodesFor(String userDetailId) {
+        Set<String> nodes = nodesByUser.get(userDetailId);
+        if (nodes == null || nodes.isEmpty()) {
+            return Set.of();
+        }
+        return nodes.stream()
+                .filter(node -> !node.equals(nodeId) && isLive(node))
+                .collect(Collectors.toSet());
+    }
+
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        String userDetailId = event.getUserDetailId();
+        // Events of one user are published outside the registry's update and can arrive out of order, so announce
+        // the state the registry holds now. The lock keeps the check and the send of one user in the same order.
+        synchronized (lockOf(userDetailId)) {
+            if (presenceRegistry.isOnline(userDetailId)) {
+                kafkaTemplate.send(ROUTES_TOPIC, routeKey(nodeId, userDetailId), UserRouteEvent.builder()
+                        .nodeId(nodeId)
+                        .userDetailId(userDetailId)
+                        .timestamp(System.currentTimeMillis())
+                        .build());
+            } else {
+                withdraw(nodeId, userDetailId);
+            }
+        }
+    }
+
+    /**
+     * Always reads the single partition from offset 0, so a starting node rebuilds the full table
+     */
+    @KafkaListener(groupId = "#{__listener.routesGroupId}",
+            topicPartitions = @TopicPartition(topic = ROUTES_TOPIC,
+                    partitionOffsets = @PartitionOffset(partition = "0", initialOffset = "0")))
+    public void onRoute(ConsumerRecord<String, UserRouteEvent> record) {
+        String key = record.key();
+        int separator = key.indexOf('/');
+        if (separator < 0) {
+            onHeartbeat(key, record.value());
+            return;
+        }
+
+        String routeNodeId = key.substring(0, separator);
+        String userDetailId = key.substring(separator + 1);
+        UserRouteEvent route = record.value();
+        if (route == null) {
+            nodesByUser.computeIfPresent(userDetailId, (id, nodes) -> {
+                nodes.remove(routeNodeId);
+                return nodes.isEmpty() ? null : nodes;
+            });
+            return;
+        }
+
+        if (routeNodeId.equals(nodeId) && route.getTimestamp() < startedAt && !presenceRegistry.isOnline(userDetailId)) {
+            // Left behind by a previous run of this node that did not shut down cleanly
+            withdraw(nodeId, userDetailId);
+            return;
+        }
+        nodesByUser.computeIfAbsent(userDetailId, id -> ConcurrentHashMap.newKeySet()).add(routeNodeId);
+    }
+
+    public String getRoutesGroupId() {
+        return "social-routes-" + nodeId;
+    }
+
+    Set<String> liveNodes() {
+        return nodeHeartbeats.keySet().stream()
+                .filter(this::isLive)
+                .collect(Collectors.toSet());
+    }
+
+    private void onHeartbeat(String heartbeatNodeId, UserRouteEvent heartbeat) {
+        if (heartbeat == null) {
+            forgetNode(heartbeatNodeId);
+            return;
+        }
+        if (heartbeatNodeId.equals(nodeId) && heartbeat.getTimestamp() >= startedAt) {
+            caughtUp = true;
+        }
+
+        long receivedAt = System.currentTimeMillis();
+        if (!caughtUp) {
+            // Replayed, the node may be long gone: it stays live only if it beats again within one interval
+            receivedAt -= heartbeatInterval.toMillis() * (MISSED_HEARTBEATS - 1);
+        }
+        nodeHeartbeats.merge(heartbeatNodeId, receivedAt, Math::max);
+    }
+
+    private void beat() {
+        try {
+            kafkaTemplate.send(ROUTES_TOPIC, nodeId, UserRouteEvent.builder()
+                    .nodeId(nodeId)
+                    .timestamp(System.currentTimeMillis())
+                    .build());
+            nodeHeartbeats.keySet().stream()
+                    .filter(node -> !isLive(node))
+                    .toList()
+                    .forEach(this::forgetNode);
+        } catch (Exception e) {
+            log.warn("Failed to publish heartbeat of node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    private boolean isLive(String node) {
+        if (node.equals(nodeId)) {
+            return true;
+        }
+        Long lastBeat = nodeHeartbeats.get(node);
+        return lastBeat != null
+                && System.currentTimeMillis() - lastBeat < heartbeatInterval.toMillis() * MISSED_HEARTBEATS;
+    }
+
+    private void forgetNode(String node) {
+        if (nodeHeartbeats.remove(node) != null) {
+            log.info("Dropping routes of node {}", node);
+        }
+        nodesByUser.values().forEach(nodes -> nodes.remove(node));
+        nodesByUser.values().removeIf(Set::isEmpty);
+    }
+
+    private void withdraw(String routeNodeId, String userDetailId) {
+        kafkaTemplate.send(ROUTES_TOPIC, routeKey(routeNodeId, userDetailId), null);
+    }
+
+    private static String routeKey(String routeNodeId, String userDetailId) {
+        return routeNodeId + "/" + userDetailId;
+    }
+
+    private Object lockOf(String userDetailId) {
+        return locks[Math.floorMod(userDetailId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static Object[] createLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+}
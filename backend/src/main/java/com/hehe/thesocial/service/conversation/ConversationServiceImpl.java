@@ -3,23 +3,27 @@ package com.hehe.thesocial.service.conversation;
 import com.hehe.thesocial.dto.request.conversation.ConversationRequest;
 import com.hehe.thesocial.dto.response.conversation.ConversationResponse;
 import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.InboxEntry;
 import com.hehe.thesocial.entity.User;
 import com.hehe.thesocial.entity.UserDetail;
 import com.hehe.thesocial.entity.enums.ConversationType;
 import com.hehe.thesocial.exception.AppException;
 import com.hehe.thesocial.exception.ErrorCode;
-import com.hehe.thesocial.mapper.chatMessage.ChatMessageMapper;
 import com.hehe.thesocial.mapper.conversation.ConversationMapper;
-import com.hehe.thesocial.repository.ChatMessageRepository;
 import com.hehe.thesocial.repository.ConversationRepository;
 import com.hehe.thesocial.repository.FileRepository;
 import com.hehe.thesocial.repository.UserDetailRepository;
 import com.hehe.thesocial.repository.UserRepository;
+import com.hehe.thesocial.service.chatMessage.ChatMessageHydrator;
+import com.hehe.thesocial.service.chatMessage.UserDetailIdentityMap;
+import com.hehe.thesocial.service.inbox.InboxService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -28,7 +32,9 @@ import org.springframework.util.StringUtils;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -43,8 +49,8 @@ public class ConversationServiceImpl implements ConversationService {
     UserDetailRepository userDetailRepository;
     FileRepository fileRepository;
     UserRepository userRepository;
-    ChatMessageRepository chatMessageRepository;
-    ChatMessageMapper chatMessageMapper;
+    ChatMessageHydrator chatMessageHydrator;
+    InboxService inboxService;
 
 
     @Transactional
@@ -97,6 +103,7 @@ public class ConversationServiceImpl implements ConversationService {
         conversation.setConversationType(determineConversationType(participants.size()));
 
         conversation = conversationRepository.save(conversation);
+        inboxService.registerConversation(conversation);
         log.info("Created conversation with ID: {} and {} participants", conversation.getConversationId(),
                 participants.size());
 
@@ -146,6 +153,7 @@ public class ConversationServiceImpl implements ConversationService {
         }
 
         conversation = conversationRepository.save(conversation);
+        inboxService.registerConversation(conversation);
         log.info("Added member {} to conversation {}", newParticipantId, conversationId);
 
         return conversationMapper.toConversationResponse(conversation);
@@ -168,6 +176,7 @@ public class ConversationServiceImpl implements ConversationService {
         }
 
         conversation = conversationRepository.save(conversation);
+        inboxService.removeParticipant(conversationId, participantId);
         log.info("Removed member {} from conversation {}", participantId, conversationId);
 
         return conversationMapper.toConversationResponse(conversation);
@@ -177,14 +186,34 @@ public class ConversationServiceImpl implements ConversationService {
     public Page<ConversationResponse> getMyConversations(Pageable pageable) {
         UserDetail currentUserDetail = getCurrentUserDetail();
 
-        Page<Conversation> conversations = conversationRepository
-                .findByUserDetailsContaining(Set.of(currentUserDetail), pageable);
-
-        return conversations.map(conversation -> {
-            ConversationResponse response = conversationMapper.toConversationResponse(conversation);
-            customizeConversationResponse(response, conversation, currentUserDetail);
-            return response;
-        });
+        // The inbox projection is already sorted by last activity and carries the newest message and unread count
+        Page<InboxEntry> entries = inboxService.getInbox(currentUserDetail.getId(),
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+
+        Map<String, Conversation> conversations = conversationRepository.findAllById(entries.getContent().stream()
+                        .map(InboxEntry::getConversationId)
+                        .toList())
+                .stream()
+                .collect(Collectors.toMap(Conversation::getConversationId, Function.identity()));
+
+        UserDetailIdentityMap senders = chatMessageHydrator.newIdentityMap();
+        senders.preload(entries.getContent().stream()
+                .filter(entry -> entry.getLastMessage() != null)
+                .map(entry -> entry.getLastMessage().getSenderId())
+                .toList());
+
+        List<ConversationResponse> responses = entries.getContent().stream()
+                .filter(entry -> conversations.containsKey(entry.getConversationId()))
+                .map(entry -> {
+                    Conversation conversation = conversations.get(entry.getConversationId());
+                    ConversationResponse response = conversationMapper.toConversationResponse(conversation);
+                    applyDirectConversationDisplay(response, conversation, currentUserDetail);
+                    applyInboxEntry(response, entry, senders, currentUserDetail);
+                    return response;
+                })
+                .toList();
+
+        return new PageImpl<>(responses, pageable, entries.getTotalElements());
     }
 
     @Transactional
@@ -195,6 +224,7 @@ public class ConversationServiceImpl implements ConversationService {
         }
 
         conversationRepository.deleteById(conversationId);
+        inboxService.removeConversation(conversationId);
         log.info("Deleted conversation with ID: {}", conversationId);
     }
 
@@ -248,6 +278,23 @@ public class ConversationServiceImpl implements ConversationService {
 
     private void customizeConversationResponse(ConversationResponse response, Conversation conversation,
                                                UserDetail currentUserDetail) {
+        applyDirectConversationDisplay(response, conversation, currentUserDetail);
+
+        // Conversations that predate the inbox projection are rebuilt once on first access
+        InboxEntry inboxEntry = inboxService.getEntry(currentUserDetail.getId(), conversation.getConversationId())
+                .orElseGet(() -> {
+                    inboxService.rebuildConversation(conversation);
+                    return inboxService.getEntry(currentUserDetail.getId(), conversation.getConversationId())
+                            .orElse(null);
+                });
+
+        if (inboxEntry != null) {
+            applyInboxEntry(response, inboxEntry, chatMessageHydrator.newIdentityMap(), currentUserDetail);
+        }
+    }
+
+    private void applyDirectConversationDisplay(ConversationResponse response, Conversation conversation,
+                                                UserDetail currentUserDetail) {
         if (conversation.getConversationType() == ConversationType.DIRECT) {
             conversation.getUserDetails().stream()
                     .filter(userDetail -> !userDetail.getId().equals(currentUserDetail.getId()))
@@ -258,47 +305,17 @@ public class ConversationServiceImpl implements ConversationService {
                     });
         }
         // Group chat customization can be added here if needed
-
-        // Populate the latest chat message
-        populateLatestChatMessage(response, conversation.getConversationId(), currentUserDetail);
-        
-        // Calculate unread count for this conversation
-        calculateUnreadCount(response, conversation.getConversationId(), currentUserDetail);
     }
 
-    private void populateLatestChatMessage(ConversationResponse response, String conversationId,
-                                           UserDetail currentUserDetail) {
-        chatMessageRepository.findFirstByConversationIdOrderByCreatedAtDesc(conversationId)
-                .ifPresent(latestMessage -> {
-                    var messageResponse = chatMessageMapper.toChatMessageResponse(latestMessage);
-
-                    // Set sender avatar
-                    userDetailRepository.findById(latestMessage.getSenderId())
-                            .ifPresent(sender -> messageResponse.setAvatar(sender.getAvatar()));
-
-                    // Set sender as "me" or "other"
-                    messageResponse.setSender(
-                            latestMessage.getSenderId().equals(currentUserDetail.getId()) ? "me" : "other"
-                    );
-
-                    // Add read status information
-                    messageResponse.setReadParticipantsId(latestMessage.getReadParticipantsId());
-                    messageResponse.setIsReadByCurrentUser(latestMessage.getReadParticipantsId() != null && 
-                        latestMessage.getReadParticipantsId().contains(currentUserDetail.getId()));
-                    messageResponse.setReadCount(latestMessage.getReadParticipantsId() != null ? 
-                        latestMessage.getReadParticipantsId().size() : 0);
-
-                    response.setNewestChatMessage(messageResponse);
-                });
-    }
+    private void applyInboxEntry(ConversationResponse response, InboxEntry entry, UserDetailIdentityMap senders,
+                                 UserDetail currentUserDetail) {
+        if (entry.getLastMessage() != null) {
+            response.setNewestChatMessage(chatMessageHydrator.toResponse(
+                    entry.getLastMessage(), entry.getConversationId(), senders, currentUserDetail.getId()));
+        }
 
-    private void calculateUnreadCount(ConversationResponse response, String conversationId, UserDetail currentUserDetail) {
-        // Count unread messages (messages not sent by current user and not read by current user)
-        long unreadCount = chatMessageRepository.countByConversationIdAndSenderIdNotAndReadParticipantsIdNotContaining(
-                conversationId, currentUserDetail.getId(), currentUserDetail.getId());
-        
-        response.setUnreadCount((int) unreadCount);
-        response.setHasUnreadMessages(unreadCount > 0);
+        response.setUnreadCount(entry.getUnreadCount());
+        response.setHasUnreadMessages(entry.getUnreadCount() > 0);
     }
 
     private void updateConversationFields(Conversation conversation, ConversationRequest request) {
@@ -361,6 +378,7 @@ public class ConversationServiceImpl implements ConversationService {
         conversation.setParticipantHash(hash);
 
         conversation = conversationRepository.save(conversation);
+        inboxService.registerConversation(conversation);
         log.info("Created conversation with ID: {} and {} participants", conversation.getConversationId(),
                 participants.size());
 
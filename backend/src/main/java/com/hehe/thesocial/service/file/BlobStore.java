@@ -0,0 +1,274 @@
+package com.hehe.thesocial.service.file;
+
+import com.hehe.thesocial.entity.StoredBlob;
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.exception.ErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed storage under uploadDir/.blobs, one file per distinct SHA-256 with a reference count in the
+ * blobs collection. Uploads are hashed while they are written to a temporary file; content that is already stored
+ * only gains a reference and the temporary copy is dropped. Callers expose a blob at its public path with a hard
+ * link, so serving is unchanged and duplicates cost no extra space.
+ * The reference counts are shared through Mongo while the files are on disk, so every node running the store has to
+ * see the same upload-dir (a single node, or one shared volume); a node that finds a counted blob missing from its
+ * disk logs it. Adopting and releasing the same digest is serialized in process.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class BlobStore {
+    static int BUFFER_SIZE = 64 * 1024;
+    static int LOCK_STRIPES = 64;
+
+    MongoTemplate mongoTemplate;
+    MeterRegistry meterRegistry;
+
+    Object[] locks = createLocks();
+    AtomicLong storedBytes = new AtomicLong();
+    AtomicLong savedBytes = new AtomicLong();
+    ScheduledExecutorService statistics = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "blob-statistics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @NonFinal
+    @Value("${file.upload-dir:uploads}")
+    String uploadDir;
+
+    @NonFinal
+    @Value("${file.blobs.statistics-interval:5m}")
+    Duration statisticsInterval;
+
+    @NonFinal
+    Counter deduplicated;
+
+    @PostConstruct
+    void start() {
+        deduplicated = Counter.builder("file.blobs.deduplicated")
+                .description("Uploads whose content was already stored")
+                .register(meterRegistry);
+        Gauge.builder("file.blobs.stored_bytes", storedBytes, AtomicLong::get)
+                .description("Bytes on disk for distinct uploaded content")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("file.blobs.saved_bytes", savedBytes, AtomicLong::get)
+                .description("Bytes that duplicate uploads would have taken without deduplication")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        statistics.scheduleWithFixedDelay(this::refreshStatistics, 0, statisticsInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        statistics.shutdownNow();
+    }
+
+    /**
+     * Write the stream to the store, hashing it on the way, and take one reference to the resulting blob
+     */
+    public Blob store(InputStream in) {
+        Path temporary = temporaryPath();
+        MessageDigest sha256 = sha256();
+        long size = 0;
+        try {
+            Files.createDirectories(temporary.getParent());
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    sha256.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+        } catch (IOException e) {
+            deleteQuietly(temporary);
+            log.error("Failed to write upload to the blob store: {}", e.getMessage());
+            throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+        }
+        return adopt(temporary, HexFormat.of().formatHex(sha256.digest()), size);
+    }
+
+    /**
+     * Take over a file whose SHA-256 is already known and take one reference to its blob. The file is moved into
+     * the store, or deleted when the same content is already there.
+     */
+    public Blob adopt(Path file, String digest, long size) {
+        synchronized (lockOf(digest)) {
+            // Referenced before the file is placed, so a concurrent release cannot remove it underneath
+            StoredBlob blob = mongoTemplate.findAndModify(
+                    Query.query(Criteria.where("_id").is(digest)),
+                    new Update().inc("ref_count", 1)
+                            .setOnInsert("size", size)
+                            .setOnInsert("created_at", Instant.now()),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    StoredBlob.class);
+            Path path = pathOf(digest);
+            try {
+                Files.createDirectories(path.getParent());
+                try {
+                    // Without ATOMIC_MOVE so an existing blob is reported instead of silently replaced
+                    Files.move(file, path);
+                    storedBytes.addAndGet(size);
+                    if (blob != null && blob.getRefCount() > 1) {
+                        log.warn("Blob {} is counted {} times but was not on this node's disk, upload-dir must be"
+                                + " shared by every node", digest, blob.getRefCount());
+                    }
+                } catch (FileAlreadyExistsException e) {
+                    keepStoredOrReplace(file, path, digest, size);
+                    log.debug("Upload matches blob {} ({} references)", digest,
+                            blob == null ? "?" : blob.getRefCount());
+                }
+            } catch (IOException e) {
+                release(digest);
+                log.error("Failed to move upload into blob {}: {}", digest, e.getMessage());
+                throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+            }
+            return new Blob(digest, size, path);
+        }
+    }
+
+    /**
+     * Drop the incoming copy of content that is already stored, unless the stored file is damaged: a length that
+     * differs from the incoming file, whose digest was just computed, means the blob has to be replaced
+     */
+    private void keepStoredOrReplace(Path file, Path path, String digest, long size) throws IOException {
+        if (Files.size(path) == size) {
+            deleteQuietly(file);
+            deduplicated.increment();
+            savedBytes.addAndGet(size);
+            return;
+        }
+        log.warn("Blob {} has {} byte(s) on disk instead of {}, replacing it", digest, Files.size(path), size);
+        Files.move(file, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Drop one reference, the blob file goes with the last one
+     */
+    public void release(String digest) {
+        synchronized (lockOf(digest)) {
+            StoredBlob blob = mongoTemplate.findAndModify(
+                    Query.query(Criteria.where("_id").is(digest)),
+                    new Update().inc("ref_count", -1),
+                    FindAndModifyOptions.options().returnNew(true),
+                    StoredBlob.class);
+            if (blob == null) {
+                return;
+            }
+            if (blob.getRefCount() > 0) {
+                savedBytes.addAndGet(-blob.getSize());
+                return;
+            }
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(digest).and("ref_count").lte(0)),
+                    StoredBlob.class);
+            deleteQuietly(pathOf(digest));
+            storedBytes.addAndGet(-blob.getSize());
+        }
+    }
+
+    public Path pathOf(String digest) {
+        return root().resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    /**
+     * Recount the gauges from the blobs collection, the running updates in between only cover this node
+     */
+    void refreshStatistics() {
+        try {
+            Document totals = mongoTemplate.aggregate(Aggregation.newAggregation(
+                            Aggregation.group()
+                                    .sum("size").as("stored")
+                                    .sum(ArithmeticOperators.Multiply.valueOf("size")
+                                            .multiplyBy(ArithmeticOperators.Subtract.valueOf("ref_count")
+                                                    .subtract(1)))
+                                    .as("saved")),
+                    StoredBlob.class, Document.class).getUniqueMappedResult();
+            storedBytes.set(totals == null ? 0 : ((Number) totals.get("stored")).longValue());
+            savedBytes.set(totals == null ? 0 : ((Number) totals.get("saved")).longValue());
+        } catch (Exception e) {
+            log.warn("Failed to refresh blob statistics: {}", e.getMessage());
+        }
+    }
+
+    private Path root() {
+        return Paths.get(uploadDir, ".blobs");
+    }
+
+    private Path temporaryPath() {
+        return root().resolve("tmp").resolve(UUID.randomUUID() + ".tmp");
+    }
+
+    private Object lockOf(String digest) {
+        return locks[Math.floorMod(digest.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static Object[] createLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    public record Blob(String digest, long size, Path path) {
+    }
+}
@@ -0,0 +1,83 @@
+package com.hehe.thesocial.service.file;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded I/O pool that writes the parts of a multi-file upload concurrently. Writing is mostly waiting on the disk
+ * and on multipart temp files, so the pool is sized independently of the cores. When the queue is full, or the pool
+ * is already shutting down, the caller writes the part itself, which slows that request down instead of failing it.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class FileIngestExecutor {
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${file.ingest.threads:8}")
+    int threads;
+
+    @NonFinal
+    @Value("${file.ingest.queue-capacity:64}")
+    int queueCapacity;
+
+    @NonFinal
+    ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        Counter rejected = Counter.builder("file.ingest.rejected")
+                .description("File writes run on the request thread because the ingest queue was full")
+                .register(meterRegistry);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "file-ingest-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, pool) -> {
+                    // Always run: a dropped task would leave the caller's future incomplete forever
+                    rejected.increment();
+                    task.run();
+                });
+        Gauge.builder("file.ingest.queued", executor, pool -> pool.getQueue().size())
+                .description("File writes waiting for an ingest thread")
+                .register(meterRegistry);
+        Gauge.builder("file.ingest.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("File writes in progress")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("File ingest pool did not drain {} queued writes", executor.getQueue().size());
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> write) {
+        return CompletableFuture.supplyAsync(write, executor);
+    }
+}
@@ -1,11 +1,13 @@
 package com.hehe.thesocial.service.file;
 
 import com.hehe.thesocial.dto.response.file.FileResponse;
+import com.hehe.thesocial.entity.FileDocument;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
 import java.util.List;
 
 @Service
@@ -14,6 +16,16 @@ public interface FileService {
 
     List<FileResponse> storeMultipleFile(MultipartFile[] multipartFiles);
 
+    /**
+     * Store all parts and return their saved documents in the same order, nothing is kept if any part fails
+     */
+    List<FileDocument> storeFiles(List<MultipartFile> multipartFiles);
+
+    /**
+     * Move a fully received file into the uploader's directory and save its FileDocument
+     */
+    FileResponse storeUploadedFile(String uploader, String originalFilename, Path source, String checksum);
+
     FileResponse findDocumentById(String id);
 
     Page<FileResponse> findAllDocument(Pageable pageable);
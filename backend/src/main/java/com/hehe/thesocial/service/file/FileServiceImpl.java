@@ -19,13 +19,17 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 @Slf4j
@@ -34,6 +38,8 @@ import java.util.UUID;
 public class FileServiceImpl implements FileService {
     FileMapper fileMapper;
     FileRepository fileRepository;
+    BlobStore blobStore;
+    FileIngestExecutor fileIngestExecutor;
 
 
     @NonFinal
@@ -59,75 +65,170 @@ public class FileServiceImpl implements FileService {
             throw new AppException(ErrorCode.INVALID_FILE);
         }
 
+        FileDocument fileDocument = fileRepository.save(writeFile(uploader, multipartFile));
+        return fileMapper.toFileResponse(fileDocument);
+    }
+
+    /**
+     * Parts are written concurrently on the ingest pool, so the batch takes about as long as its largest part,
+     * and the documents are saved with one insert. If any part fails the others are removed again.
+     */
+    @Override
+    public List<FileDocument> storeFiles(List<MultipartFile> multipartFiles) {
+        // Resolved here, the security context does not follow the work onto the pool
+        String uploader = SecurityContextHolder.getContext().getAuthentication().getName();
+        if (multipartFiles.isEmpty() || multipartFiles.stream().anyMatch(MultipartFile::isEmpty)) {
+            throw new AppException(ErrorCode.INVALID_FILE);
+        }
+
+        List<CompletableFuture<FileDocument>> writes = multipartFiles.stream()
+                .map(multipartFile -> fileIngestExecutor.submit(() -> writeFile(uploader, multipartFile)))
+                .toList();
+        List<FileDocument> written = new ArrayList<>(writes.size());
+        RuntimeException failure = null;
+        for (CompletableFuture<FileDocument> write : writes) {
+            try {
+                written.add(write.join());
+            } catch (CompletionException e) {
+                failure = e.getCause() instanceof AppException appException
+                        ? appException
+                        : new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+            }
+        }
+
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            return fileRepository.insert(written);
+        } catch (RuntimeException e) {
+            // Best effort, one file that cannot be removed must not keep the others on disk
+            for (FileDocument fileDocument : written) {
+                try {
+                    removeStoredBytes(fileDocument);
+                } catch (RuntimeException cleanup) {
+                    log.warn("Failed to roll back stored file {}: {}", fileDocument.getUrl(), cleanup.getMessage());
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write the part to the blob store and link it under the uploader, the returned document is not saved yet
+     */
+    private FileDocument writeFile(String uploader, MultipartFile multipartFile) {
         try {
             // Create upload directory if it doesn't exist
-            String userUploadDir = uploadDir + "/" + uploader;
-            Path uploadPath = Paths.get(userUploadDir);
+            Path uploadPath = Paths.get(uploadDir, uploader);
             Files.createDirectories(uploadPath);
 
             // Generate unique filename
             String originalFilename = multipartFile.getOriginalFilename();
-            String fileExtension = "";
-            if (originalFilename != null && originalFilename.contains(".")) {
-                fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            }
-            String uniqueFilename = UUID.randomUUID() + fileExtension;
+            String uniqueFilename = UUID.randomUUID() + extensionOf(originalFilename);
 
-            // Save file to local storage
-            Path filePath = uploadPath.resolve(uniqueFilename);
-            Files.copy(multipartFile.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+            // Save file to local storage, content that is already stored is shared
+            BlobStore.Blob blob;
+            try (InputStream in = multipartFile.getInputStream()) {
+                blob = blobStore.store(in);
+            }
+            String blobId = linkBlob(blob, uploadPath.resolve(uniqueFilename));
 
-            // Determine resource type based on file extension
-            String resourceType = determineResourceType(fileExtension);
+            return buildFileDocument(uploader, originalFilename, uniqueFilename, blob, blobId);
+        } catch (IOException e) {
+            log.error("Failed to store file: {}", e.getMessage());
+            throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+        }
+    }
 
-            // Create file URL using configured host (fallback to localhost if not configured)
-            String host = (serverHost != null && !serverHost.isEmpty()) ? serverHost : "172.20.82.76";
-            String fileUrl = "http://" + host + ":" + serverPort + contextPath + "/files/" + uploader + "/" + uniqueFilename;
+    @Override
+    public FileResponse storeUploadedFile(String uploader, String originalFilename, Path source, String checksum) {
+        try {
+            Path uploadPath = Paths.get(uploadDir, uploader);
+            Files.createDirectories(uploadPath);
+            String uniqueFilename = UUID.randomUUID() + extensionOf(originalFilename);
+            BlobStore.Blob blob = blobStore.adopt(source, checksum, Files.size(source));
+            String blobId = linkBlob(blob, uploadPath.resolve(uniqueFilename));
 
-            // Generate thumbnail for video files
-            String thumbnailUrl = null;
-            if ("video".equals(resourceType)) {
-                try {
+            FileDocument fileDocument = fileRepository.save(
+                    buildFileDocument(uploader, originalFilename, uniqueFilename, blob, blobId));
+            return fileMapper.toFileResponse(fileDocument);
+        } catch (IOException e) {
+            log.error("Failed to store uploaded file: {}", e.getMessage());
+            throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+        }
+    }
 
-                    log.info("Generated thumbnail for video: {}", thumbnailUrl);
-                    
-                    // If thumbnail generation failed, create a default one
-                    if (thumbnailUrl == null) {
-                        log.warn("Thumbnail generation failed, creating default thumbnail");
-                        thumbnailUrl = "http://" + host + ":" + serverPort + contextPath + "/files/default-thumbnail.jpg";
-                    }
-                } catch (Exception e) {
-                    log.warn("Failed to generate thumbnail for video: {}", e.getMessage());
-                    thumbnailUrl = "http://" + host + ":" + serverPort + contextPath + "/files/default-thumbnail.jpg";
-                }
+    /**
+     * Expose a blob at its public path and return the blob id the document keeps a reference to. A hard link shares
+     * the blob's disk space; where links are not supported the bytes are copied and the reference is dropped again,
+     * since the copy shares nothing and must not count as deduplicated.
+     */
+    private String linkBlob(BlobStore.Blob blob, Path publicPath) {
+        try {
+            try {
+                Files.createLink(publicPath, blob.path());
+                return blob.digest();
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                log.warn("Hard links unavailable for {}, copying instead: {}", publicPath, e.getMessage());
+                Files.copy(blob.path(), publicPath);
+                blobStore.release(blob.digest());
+                return null;
             }
+        } catch (IOException e) {
+            blobStore.release(blob.digest());
+            log.error("Failed to link blob {} to {}: {}", blob.digest(), publicPath, e.getMessage());
+            throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+        }
+    }
 
-            FileDocument fileDocument = FileDocument.builder()
-                    .fileName(originalFilename)
-                    .size(multipartFile.getSize())
-                    .url(fileUrl)
-                    .format(fileExtension.substring(1)) // Remove the dot
-                    .resourceType(resourceType)
-                    .build();
-
-            // For images, you might want to get dimensions (optional)
-            if ("image".equals(resourceType)) {
-                // You can add image dimension detection here if needed
-                // For now, we'll leave height and width as null
-            }
+    /**
+     * Metadata of a file already linked at uploadDir/uploader/uniqueFilename, blobId is null for a private copy
+     */
+    private FileDocument buildFileDocument(String uploader, String originalFilename, String uniqueFilename,
+                                           BlobStore.Blob blob, String blobId) {
+        long size = blob.size();
+        String fileExtension = extensionOf(originalFilename);
 
-            fileDocument = fileRepository.save(fileDocument);
-            return fileMapper.toFileResponse(fileDocument);
+        // Determine resource type based on file extension
+        String resourceType = determineResourceType(fileExtension);
 
-        } catch (IOException e) {
-            log.error("Failed to store file: {}", e.getMessage());
-            throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+        // Create file URL using configured host (fallback to localhost if not configured)
+        String host = (serverHost != null && !serverHost.isEmpty()) ? serverHost : "172.20.82.76";
+        String fileUrl = "http://" + host + ":" + serverPort + contextPath + "/files/" + uploader + "/" + uniqueFilename;
+
+        // Video thumbnails and dimensions are filled in after the upload by VideoThumbnailService
+        FileDocument fileDocument = FileDocument.builder()
+                .fileName(originalFilename)
+                .size(size)
+                .url(fileUrl)
+                .format(fileExtension.isEmpty() ? null : fileExtension.substring(1)) // Remove the dot
+                .resourceType(resourceType)
+                .etag(MediaFileServer.etagOf(uniqueFilename, size))
+                .checksum(blob.digest())
+                .blobId(blobId)
+                .build();
+
+        // For images, you might want to get dimensions (optional)
+        if ("image".equals(resourceType)) {
+            // You can add image dimension detection here if needed
+            // For now, we'll leave height and width as null
+        }
+        return fileDocument;
+    }
+
+    private static String extensionOf(String originalFilename) {
+        if (originalFilename != null && originalFilename.contains(".")) {
+            return originalFilename.substring(originalFilename.lastIndexOf("."));
         }
+        return "";
     }
 
     @Override
     public List<FileResponse> storeMultipleFile(MultipartFile[] multipartFiles) {
-        return Arrays.stream(multipartFiles).map(this::storeFile).toList();
+        return storeFiles(Arrays.asList(multipartFiles)).stream()
+                .map(fileMapper::toFileResponse)
+                .toList();
     }
 
     @Override
@@ -148,22 +249,28 @@ public class FileServiceImpl implements FileService {
         FileDocument fileDocument = fileRepository.findById(id)
                 .orElseThrow(() -> new AppException(ErrorCode.FILE_NOT_FOUND));
 
-        try {
-            // Extract the file path from the URL or use publicId
-            String filename = fileDocument.getFileName();
-            String uploader = extractUploaderFromUrl(fileDocument.getUrl());
-            Path filePath = Paths.get(uploadDir, uploader, filename);
+        // Delete the document from database, then the bytes it pointed at
+        fileRepository.deleteById(fileDocument.getId());
+        removeStoredBytes(fileDocument);
+    }
 
-            // Delete the physical file
+    /**
+     * Delete the public link and drop the blob reference, the shared bytes stay while other documents use them
+     */
+    private void removeStoredBytes(FileDocument fileDocument) {
+        // The stored name is the last URL segment, the original file name is only metadata
+        String url = fileDocument.getUrl();
+        String filename = url.substring(url.lastIndexOf('/') + 1);
+        Path filePath = Paths.get(uploadDir, extractUploaderFromUrl(url), filename);
+        try {
             Files.deleteIfExists(filePath);
-
-            // Delete the document from database
-            fileRepository.deleteById(fileDocument.getId());
-
         } catch (IOException e) {
-            log.error("Failed to delete file: {}", e.getMessage());
+            log.error("Failed to delete file {}: {}", filePath, e.getMessage());
             throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
         }
+        if (fileDocument.getBlobId() != null) {
+            blobStore.release(fileDocument.getBlobId());
+        }
     }
 
     private String determineResourceType(String fileExtension) {
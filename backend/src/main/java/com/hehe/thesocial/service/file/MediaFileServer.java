@@ -0,0 +1,244 @@
+package com.hehe.thesocial.service.file;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Serves stored media straight from disk with byte ranges, conditional GET and long-lived caching.
+ * Stored files are never modified in place (every upload gets a new name), so a strong ETag of name and size is
+ * stable and the response can be cached as immutable. Single ranges and whole files are handed to Tomcat's sendfile
+ * when the connector supports it, so the bytes go from the page cache to the socket without entering the heap.
+ * Multipart ranges and small bodies are written with {@link FileChannel#transferTo} into the servlet stream.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class MediaFileServer {
+    static String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // More ranges than this are answered with the whole file, which the spec allows
+    static int MAX_RANGES = 16;
+
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${file.serving.max-age:365d}")
+    Duration maxAge;
+
+    @NonFinal
+    @Value("${file.serving.sendfile-threshold:48KB}")
+    DataSize sendfileThreshold;
+
+    /**
+     * Strong ETag of a stored file, also kept on its FileDocument
+     */
+    public static String etagOf(String storedName, long size) {
+        int dot = storedName.lastIndexOf('.');
+        return "\"" + (dot > 0 ? storedName.substring(0, dot) : storedName) + "-" + Long.toHexString(size) + "\"";
+    }
+
+    public void serve(Path file, String contentType, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = etagOf(file.getFileName().toString(), length);
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                CacheControl.maxAge(maxAge).cachePublic().immutable().getHeaderValue());
+        // Answers If-None-Match, If-Modified-Since and the If-Match family, and sets ETag and Last-Modified
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        List<Region> regions;
+        try {
+            regions = requestedRegions(request, etag, lastModified, length);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return;
+        }
+        boolean head = "HEAD".equals(request.getMethod());
+
+        if (regions.size() > 1) {
+            writeMultipart(file, contentType, length, regions, head, response);
+            return;
+        }
+
+        Region region = regions.isEmpty() ? new Region(0, length) : regions.get(0);
+        if (!regions.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, region.contentRange(length));
+        }
+        response.setContentType(contentType);
+        response.setContentLengthLong(region.count);
+        if (head || region.count == 0) {
+            return;
+        }
+
+        if (region.count >= sendfileThreshold.toBytes() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the bytes with sendfile once the handler returns
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, region.start);
+            request.setAttribute(SENDFILE_END, region.start + region.count);
+            served("sendfile", region.count);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(channel, region, Channels.newChannel(response.getOutputStream()));
+        }
+        served("channel", region.count);
+    }
+
+    /**
+     * Ranges to send, empty for the whole file. Throws IllegalArgumentException when no range can be satisfied.
+     */
+    private List<Region> requestedRegions(HttpServletRequest request, String etag, long lastModified, long length) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !rangeStillValid(request.getHeader(HttpHeaders.IF_RANGE), etag, lastModified)) {
+            return List.of();
+        }
+
+        List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+        if (ranges.size() > MAX_RANGES) {
+            return List.of();
+        }
+        List<Region> regions = new ArrayList<>(ranges.size());
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            if (start > end) {
+                throw new IllegalArgumentException("Unsatisfiable range " + range);
+            }
+            regions.add(new Region(start, end - start + 1));
+        }
+        return regions;
+    }
+
+    /**
+     * If-Range holds either the ETag or the Last-Modified date the client's partial copy came from
+     */
+    private static boolean rangeStillValid(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond()
+                    == lastModified / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private void writeMultipart(Path file, String contentType, long length, List<Region> regions, boolean head,
+                                HttpServletResponse response) throws IOException {
+        String boundary = UUID.randomUUID().toString();
+        List<byte[]> partHeaders = new ArrayList<>(regions.size());
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        long contentLength = closing.length;
+        for (Region region : regions) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + region.contentRange(length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + region.count;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (head) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        long served = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < regions.size(); i++) {
+                out.write(partHeaders.get(i));
+                transfer(channel, regions.get(i), target);
+                served += regions.get(i).count;
+            }
+        }
+        out.write(closing);
+        served("channel", served);
+    }
+
+    private static void transfer(FileChannel channel, Region region, WritableByteChannel target) throws IOException {
+        long position = region.start;
+        long remaining = region.count;
+        while (remaining > 0) {
+            long written = channel.transferTo(position, remaining, target);
+            if (written <= 0) {
+                // The file shrank underneath us, the client sees a short body
+                log.warn("Stopped serving at byte {} with {} byte(s) left", position, remaining);
+                return;
+            }
+            position += written;
+            remaining -= written;
+        }
+    }
+
+    private void served(String transfer, long bytes) {
+        meterRegistry.counter("file.served.bytes", "transfer", transfer).increment(bytes);
+    }
+
+    private record Region(long start, long count) {
+        String contentRange(long length) {
+            return "bytes " + start + "-" + (start + count - 1) + "/" + length;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.hehe.thesocial.service.file;
+
+import com.hehe.thesocial.dto.request.file.UploadSessionRequest;
+import com.hehe.thesocial.dto.response.file.FileResponse;
+import com.hehe.thesocial.dto.response.file.UploadSessionResponse;
+import com.hehe.thesocial.entity.UploadSession;
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.exception.ErrorCode;
+import com.hehe.thesocial.repository.UploadSessionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumable uploads: create a session, PUT chunks at the offset received so far, then complete it.
+ * Chunks are streamed from the request straight into a part file preallocated to the final size, through one small
+ * buffer per request, so neither the heap nor the multipart limit bounds the file size. The SHA-256 is updated as
+ * the bytes are written; if this node lost the running digest (restart, or a chunk rewritten after a failed write)
+ * the part file is hashed once more when the upload completes. The completed file becomes a FileDocument exactly
+ * like a multipart upload.
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class ResumableUploadService {
+    static int BUFFER_SIZE = 64 * 1024;
+
+    UploadSessionRepository uploadSessionRepository;
+    MongoTemplate mongoTemplate;
+    FileService fileService;
+    MeterRegistry meterRegistry;
+
+    Map<String, ChunkDigest> digests = new ConcurrentHashMap<>();
+    ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "upload-session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @NonFinal
+    @Value("${file.upload-dir:uploads}")
+    String uploadDir;
+
+    @NonFinal
+    @Value("${file.upload.max-size:2GB}")
+    DataSize maxSize;
+
+    @NonFinal
+    @Value("${file.upload.max-chunk-size:16MB}")
+    DataSize maxChunkSize;
+
+    @NonFinal
+    @Value("${file.upload.session-ttl:24h}")
+    Duration sessionTtl;
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("file.upload.sessions.hashing", digests, Map::size)
+                .description("Upload sessions with a running digest on this node")
+                .register(meterRegistry);
+        long period = Math.max(1, sessionTtl.toMillis() / 4);
+        sweeper.scheduleWithFixedDelay(this::sweepExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    public UploadSessionResponse create(UploadSessionRequest request) {
+        if (request.getSize() <= 0 || request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new AppException(ErrorCode.INVALID_FILE);
+        }
+        if (request.getSize() > maxSize.toBytes()) {
+            throw new AppException(ErrorCode.FILE_TOO_LARGE);
+        }
+
+        UploadSession session = UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .uploader(currentUser())
+                .fileName(request.getFileName())
+                .size(request.getSize())
+                .received(0)
+                .expiresAt(Instant.now().plus(sessionTtl))
+                .build();
+        Path part = partOf(session.getId());
+        try {
+            Files.createDirectories(part.getParent());
+            // Reserves the length up front, sparse on most file systems until the chunks arrive
+            try (RandomAccessFile file = new RandomAccessFile(part.toFile(), "rw")) {
+                file.setLength(session.getSize());
+            }
+        } catch (IOException e) {
+            log.error("Failed to create part file for upload {}: {}", session.getId(), e.getMessage());
+            throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+        }
+
+        session = uploadSessionRepository.save(session);
+        digests.put(session.getId(), new ChunkDigest());
+        return toResponse(session);
+    }
+
+    public UploadSessionResponse status(String sessionId) {
+        return toResponse(ownedSession(sessionId));
+    }
+
+    /**
+     * Append the request body at offset, which has to equal the bytes received so far. A body cut off midway still
+     * counts for the bytes that reached the disk, so the client resumes from the offset reported by the status.
+     */
+    public UploadSessionResponse writeChunk(String sessionId, long offset, long contentLength, InputStream body) {
+        ownedSession(sessionId);
+        ChunkDigest digest = digests.computeIfAbsent(sessionId, id -> ChunkDigest.lost());
+        UploadSession session;
+        long written = 0;
+        // Chunks of a session are written one at a time, the offset is checked again once this one holds the lock
+        synchronized (digest) {
+            session = ownedSession(sessionId);
+            if (offset != session.getReceived()) {
+                throw new AppException(ErrorCode.UPLOAD_OFFSET_MISMATCH);
+            }
+            long limit = Math.min(session.getSize() - offset, maxChunkSize.toBytes());
+            if (contentLength > limit) {
+                throw new AppException(ErrorCode.FILE_TOO_LARGE);
+            }
+
+            try (FileChannel channel = FileChannel.open(partOf(sessionId), StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                boolean hashing = digest.hashedUpTo == offset;
+                int read;
+                while (written < limit
+                        && (read = body.read(buffer, 0, (int) Math.min(buffer.length, limit - written))) > 0) {
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes, offset + written + bytes.position());
+                    }
+                    if (hashing) {
+                        digest.update(buffer, read);
+                    }
+                    written += read;
+                }
+                if (!hashing) {
+                    digest.invalidate();
+                }
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                // The part file is on the node that created the session, or was already swept
+                log.warn("Part file of upload {} is not on this node", sessionId);
+                digest.invalidate();
+                throw new AppException(ErrorCode.UPLOAD_SESSION_NOT_FOUND);
+            } catch (IOException e) {
+                digest.invalidate();
+                if (written == 0) {
+                    log.error("Chunk of upload {} could not be written: {}", sessionId, e.getMessage());
+                    throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+                }
+                log.warn("Chunk of upload {} stopped after {} byte(s): {}", sessionId, written, e.getMessage());
+            } finally {
+                if (written > 0) {
+                    session = advance(session, offset, written, digest);
+                }
+            }
+        }
+        meterRegistry.counter("file.upload.chunk.bytes").increment(written);
+        return toResponse(session);
+    }
+
+    /**
+     * Turn a fully received session into a FileDocument. A checksum given by the client is compared with the
+     * SHA-256 of the received bytes, a mismatch discards the session.
+     */
+    public FileResponse complete(String sessionId, String expectedChecksum) {
+        UploadSession session = ownedSession(sessionId);
+        if (session.getReceived() != session.getSize()) {
+            throw new AppException(ErrorCode.UPLOAD_INCOMPLETE);
+        }
+
+        Path part = partOf(sessionId);
+        // Taken out before the hand-off, a retry after a failed store hashes the part file again
+        ChunkDigest digest = digests.remove(sessionId);
+        String checksum = digest != null && digest.hashedUpTo == session.getSize()
+                ? digest.hex()
+                : hashFile(part);
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            discard(session);
+            throw new AppException(ErrorCode.UPLOAD_CHECKSUM_MISMATCH);
+        }
+
+        FileResponse response = fileService.storeUploadedFile(session.getUploader(), session.getFileName(), part,
+                checksum);
+        uploadSessionRepository.deleteById(sessionId);
+        meterRegistry.counter("file.upload.completed").increment();
+        return response;
+    }
+
+    public void cancel(String sessionId) {
+        discard(ownedSession(sessionId));
+    }
+
+    void sweepExpired() {
+        try {
+            Instant orphanedBefore = Instant.now().minus(sessionTtl);
+            for (UploadSession session : uploadSessionRepository.findByExpiresAtBefore(Instant.now())) {
+                // The node holding the part file sweeps it, only a session left idle for another TTL is
+                // taken to belong to a node that is gone for good
+                if (!Files.exists(partOf(session.getId())) && session.getExpiresAt().isAfter(orphanedBefore)) {
+                    continue;
+                }
+                log.info("Discarding upload {} of {} idle since {}", session.getId(), session.getUploader(),
+                        session.getExpiresAt());
+                discard(session);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to sweep expired uploads: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Record the new offset only if no other request moved it meanwhile
+     */
+    private UploadSession advance(UploadSession session, long offset, long written, ChunkDigest digest) {
+        Instant expiresAt = Instant.now().plus(sessionTtl);
+        boolean advanced = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(session.getId()).and("received").is(offset)),
+                new Update().set("received", offset + written).set("expires_at", expiresAt),
+                UploadSession.class).getModifiedCount() > 0;
+        if (!advanced) {
+            digest.invalidate();
+            throw new AppException(ErrorCode.UPLOAD_OFFSET_MISMATCH);
+        }
+        session.setReceived(offset + written);
+        session.setExpiresAt(expiresAt);
+        return session;
+    }
+
+    private void discard(UploadSession session) {
+        try {
+            Files.deleteIfExists(partOf(session.getId()));
+        } catch (IOException e) {
+            log.warn("Failed to delete part file of upload {}: {}", session.getId(), e.getMessage());
+        }
+        uploadSessionRepository.deleteById(session.getId());
+        digests.remove(session.getId());
+    }
+
+    private UploadSession ownedSession(String sessionId) {
+        UploadSession session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new AppException(ErrorCode.UPLOAD_SESSION_NOT_FOUND));
+        if (!session.getUploader().equals(currentUser())) {
+            throw new AppException(ErrorCode.UPLOAD_SESSION_NOT_FOUND);
+        }
+        return session;
+    }
+
+    private Path partOf(String sessionId) {
+        return Paths.get(uploadDir, ".parts", sessionId + ".part");
+    }
+
+    private static String hashFile(Path part) {
+        ChunkDigest digest = new ChunkDigest();
+        try (InputStream in = Files.newInputStream(part)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, read);
+            }
+        } catch (IOException e) {
+            log.error("Failed to hash part file {}: {}", part, e.getMessage());
+            throw new AppException(ErrorCode.ERROR_UPLOADING_FILE);
+        }
+        return digest.hex();
+    }
+
+    private static String currentUser() {
+        return SecurityContextHolder.getContext().getAuthentication().getName();
+    }
+
+    private static UploadSessionResponse toResponse(UploadSession session) {
+        return UploadSessionResponse.builder()
+                .id(session.getId())
+                .fileName(session.getFileName())
+                .size(session.getSize())
+                .offset(session.getReceived())
+                .expiresAt(session.getExpiresAt())
+                .build();
+    }
+
+    /**
+     * SHA-256 of the contiguous prefix hashed so far, hashedUpTo is -1 once it no longer matches the part file
+     */
+    private static final class ChunkDigest {
+        final MessageDigest sha256;
+        long hashedUpTo;
+        String hex;
+
+        ChunkDigest() {
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static ChunkDigest lost() {
+            ChunkDigest digest = new ChunkDigest();
+            digest.invalidate();
+            return digest;
+        }
+
+        void update(byte[] bytes, int length) {
+            sha256.update(bytes, 0, length);
+            hashedUpTo += length;
+        }
+
+        void invalidate() {
+            hashedUpTo = -1;
+        }
+
+        // digest() resets the MessageDigest, so the result is kept for repeated calls
+        String hex() {
+            if (hex == null) {
+                hex = HexFormat.of().formatHex(sha256.digest());
+            }
+            return hex;
+        }
+    }
+}
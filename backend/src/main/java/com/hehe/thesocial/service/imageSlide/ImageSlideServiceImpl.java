@@ -109,18 +109,12 @@ public class ImageSlideServiceImpl implements ImageSlideService {
         // Get current user
         UserDetail uploader = getCurrentUser();
 
-        // Process and store all images
-        List<FileDocument> imageFiles = new ArrayList<>();
-        List<FileResponse> imageResponses = new ArrayList<>();
-        
-        for (MultipartFile image : request.getImages()) {
-            FileResponse savedFile = fileService.storeFile(image);
-            FileDocument fileDocument = fileRepository.findById(savedFile.getId())
-                    .orElseThrow(() -> new AppException(ErrorCode.FILE_NOT_FOUND));
-            imageFiles.add(fileDocument);
-            imageResponses.add(savedFile);
-            log.info("Image file stored with ID: {}", savedFile.getId());
-        }
+        // Process and store all images, written in parallel and saved together
+        List<FileDocument> imageFiles = fileService.storeFiles(request.getImages());
+        List<FileResponse> imageResponses = imageFiles.stream()
+                .map(fileMapper::toFileResponse)
+                .toList();
+        log.info("Stored {} image file(s)", imageFiles.size());
 
         // Process thumbnail if provided
         FileDocument thumbnailFileDocument = null;
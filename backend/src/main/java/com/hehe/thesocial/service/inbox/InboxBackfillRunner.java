@@ -0,0 +1,57 @@
+package com.hehe.thesocial.service.inbox;
+
+import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.repository.ConversationRepository;
+import com.hehe.thesocial.repository.InboxEntryRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+/**
+ * One-off migration that builds inbox entries for conversations created before the inbox projection existed
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class InboxBackfillRunner {
+    static int BATCH_SIZE = 100;
+
+    InboxEntryRepository inboxEntryRepository;
+    ConversationRepository conversationRepository;
+    InboxService inboxService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        if (inboxEntryRepository.count() > 0 || conversationRepository.count() == 0) {
+            return;
+        }
+
+        log.info("Inbox projection is empty, backfilling from existing conversations...");
+        Pageable pageable = PageRequest.of(0, BATCH_SIZE);
+        int rebuilt = 0;
+        Page<Conversation> page;
+        do {
+            page = conversationRepository.findAll(pageable);
+            for (Conversation conversation : page.getContent()) {
+                try {
+                    inboxService.rebuildConversation(conversation);
+                    rebuilt++;
+                } catch (Exception e) {
+                    log.error("Failed to backfill inbox for conversation {}: {}",
+                            conversation.getConversationId(), e.getMessage());
+                }
+            }
+            pageable = page.nextPageable();
+        } while (page.hasNext());
+
+        log.info("Inbox backfill completed for {} conversations", rebuilt);
+    }
+}
@@ -0,0 +1,47 @@
+package com.hehe.thesocial.service.inbox;
+
+import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.InboxEntry;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+public interface InboxService {
+    Page<InboxEntry> getInbox(String ownerId, Pageable pageable);
+
+    Optional<InboxEntry> getEntry(String ownerId, String conversationId);
+
+    void registerConversation(Conversation conversation);
+
+    void recordMessage(ChatMessage chatMessage, Collection<String> participantIds);
+
+    void recordMessageEdited(ChatMessage chatMessage);
+
+    void recordMessageDeleted(ChatMessage chatMessage);
+
+    /**
+     * Mark the messages read by the reader and lower their unread count accordingly
+     *
+     * @return how many of the messages were unread before this call
+     */
+    int recordMessagesRead(String conversationId, String readerId, Collection<String> messageIds);
+
+    boolean advanceReadWatermark(String conversationId, String readerId, ChatMessage newestRead);
+
+    Map<String, LocalDateTime> getReadWatermarks(String conversationId);
+
+    void removeParticipant(String conversationId, String participantId);
+
+    void removeConversation(String conversationId);
+
+    void rebuildConversation(Conversation conversation);
+
+    long countUnread(String conversationId, String participantId);
+
+    void setUnreadCount(String conversationId, String participantId, long unreadCount);
+}
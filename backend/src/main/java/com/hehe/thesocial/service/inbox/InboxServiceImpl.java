@@ -0,0 +1,300 @@
+package com.hehe.thesocial.service.inbox;
+
+import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.InboxEntry;
+import com.hehe.thesocial.entity.InboxLastMessage;
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.repository.ChatMessageRepository;
+import com.hehe.thesocial.repository.InboxEntryRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class InboxServiceImpl implements InboxService {
+    InboxEntryRepository inboxEntryRepository;
+    ChatMessageRepository chatMessageRepository;
+    MongoTemplate mongoTemplate;
+
+    @Override
+    public Page<InboxEntry> getInbox(String ownerId, Pageable pageable) {
+        return inboxEntryRepository.findByOwnerIdOrderByLastActivityAtDesc(ownerId, pageable);
+    }
+
+    @Override
+    public Optional<InboxEntry> getEntry(String ownerId, String conversationId) {
+        return inboxEntryRepository.findByOwnerIdAndConversationId(ownerId, conversationId);
+    }
+
+    @Override
+    public void registerConversation(Conversation conversation) {
+        Set<String> participantIds = getParticipantIds(conversation);
+        if (participantIds.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, InboxEntry.class);
+        LocalDateTime now = LocalDateTime.now();
+        participantIds.forEach(participantId -> bulk.upsert(
+                entryQuery(participantId, conversation.getConversationId()),
+                new Update()
+                        .setOnInsert("unreadCount", 0)
+                        .setOnInsert("lastActivityAt", now)));
+        bulk.execute();
+    }
+
+    @Override
+    public void recordMessage(ChatMessage chatMessage, Collection<String> participantIds) {
+        if (participantIds == null || participantIds.isEmpty()) {
+            return;
+        }
+
+        // Pipeline updates take raw values, so the snapshot is converted here and wrapped in $literal so that
+        // message text starting with $ is not read as a field path
+        Object snapshot = mongoTemplate.getConverter().convertToMongoType(InboxLastMessage.of(chatMessage));
+        Object createdAt = mongoTemplate.getConverter().convertToMongoType(chatMessage.getCreatedAt());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, InboxEntry.class);
+
+        // A read watermark already at or past the message means the participant has read it, for instance when
+        // a read-all was recorded before this send; counting it again would leave a phantom unread
+        Document unreadForRecipient = new Document("$cond", List.of(
+                new Document("$or", List.of(
+                        new Document("$eq", Arrays.asList(
+                                new Document("$ifNull", Arrays.asList("$last_read_at", null)), null)),
+                        new Document("$lt", List.of("$last_read_at", createdAt)))),
+                1,
+                0));
+
+        for (String participantId : participantIds) {
+            Object unreadIncrement = participantId.equals(chatMessage.getSenderId()) ? 0 : unreadForRecipient;
+            // Sends of one conversation can be recorded out of order, an older message never replaces a newer one
+            AggregationUpdate update = AggregationUpdate.update()
+                    .set("lastMessage").toValue(rawExpression(new Document("$cond", List.of(
+                            new Document("$lte", List.of("$last_message.created_at", createdAt)),
+                            new Document("$literal", snapshot),
+                            "$last_message"))))
+                    .set("lastActivityAt").toValue(rawExpression(
+                            new Document("$max", List.of("$last_activity_at", createdAt))))
+                    .set("unreadCount").toValue(rawExpression(new Document("$add", List.of(
+                            new Document("$ifNull", List.of("$unread_count", 0)), unreadIncrement))));
+
+            bulk.upsert(entryQuery(participantId, chatMessage.getConversationId()), update);
+        }
+
+        bulk.execute();
+    }
+
+    @Override
+    public void recordMessageEdited(ChatMessage chatMessage) {
+        mongoTemplate.updateMulti(
+                lastMessageQuery(chatMessage.getConversationId(), Set.of(chatMessage.getId())),
+                new Update()
+                        .set("lastMessage.message", chatMessage.getMessage())
+                        .set("lastMessage.edited", chatMessage.getEdited()),
+                InboxEntry.class);
+    }
+
+    @Override
+    public void recordMessageDeleted(ChatMessage chatMessage) {
+        String conversationId = chatMessage.getConversationId();
+
+        // Participants who still counted the message as unread: not the sender, not a reader, past their watermark
+        Set<String> hadRead = new HashSet<>();
+        hadRead.add(chatMessage.getSenderId());
+        if (chatMessage.getReadParticipantsId() != null) {
+            hadRead.addAll(chatMessage.getReadParticipantsId());
+        }
+        mongoTemplate.updateMulti(
+                new Query(where("conversationId").is(conversationId)
+                        .and("ownerId").nin(hadRead)
+                        .orOperator(
+                                where("lastReadAt").exists(false),
+                                where("lastReadAt").lt(chatMessage.getCreatedAt()))),
+                decrementUnread(1),
+                InboxEntry.class);
+
+        Query query = lastMessageQuery(conversationId, Set.of(chatMessage.getId()));
+        if (!mongoTemplate.exists(query, InboxEntry.class)) {
+            return;
+        }
+
+        // The newest message went away, fall back to the one before it
+        Update update = chatMessageRepository.findFirstByConversationIdOrderByCreatedAtDesc(conversationId)
+                .map(previous -> new Update().set("lastMessage", InboxLastMessage.of(previous)))
+                .orElseGet(() -> new Update().unset("lastMessage"));
+
+        mongoTemplate.updateMulti(query, update, InboxEntry.class);
+    }
+
+    @Override
+    public int recordMessagesRead(String conversationId, String readerId, Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+
+        // Only messages this call moves from unread to read may lower the counter, re-reads change nothing
+        long newlyRead = mongoTemplate.updateMulti(
+                new Query(where("id").in(messageIds)
+                        .and("conversationId").is(conversationId)
+                        .and("senderId").ne(readerId)
+                        .and("readParticipantsId").ne(readerId)),
+                new Update().addToSet("readParticipantsId", readerId),
+                ChatMessage.class).getModifiedCount();
+        if (newlyRead == 0) {
+            return 0;
+        }
+
+        mongoTemplate.updateFirst(entryQuery(readerId, conversationId), decrementUnread(newlyRead), InboxEntry.class);
+        addReaderToLastMessage(conversationId, readerId, messageIds);
+        return (int) newlyRead;
+    }
+
+    @Override
+    public boolean advanceReadWatermark(String conversationId, String readerId, ChatMessage newestRead) {
+        // Only messages newer than the watermark can remain unread, this is an index range count
+        long stillUnread = chatMessageRepository.countUnreadAfter(conversationId, readerId, newestRead.getCreatedAt());
+
+        // Only ever move the watermark forward, a stale read-all must not resurrect unread messages
+        Query query = entryQuery(readerId, conversationId).addCriteria(new Criteria().orOperator(
+                where("lastReadAt").exists(false),
+                where("lastReadAt").lte(newestRead.getCreatedAt())));
+
+        boolean advanced = mongoTemplate.updateFirst(query,
+                new Update()
+                        .set("lastReadAt", newestRead.getCreatedAt())
+                        .set("lastReadMessageId", newestRead.getId())
+                        .set("unreadCount", (int) stillUnread),
+                InboxEntry.class).getModifiedCount() > 0;
+
+        mongoTemplate.updateMulti(
+                new Query(where("conversationId").is(conversationId)
+                        .and("lastMessage.createdAt").lte(newestRead.getCreatedAt())
+                        .and("lastMessage.senderId").ne(readerId)),
+                new Update().addToSet("lastMessage.readParticipantsId", readerId),
+                InboxEntry.class);
+
+        return advanced;
+    }
+
+    @Override
+    public Map<String, LocalDateTime> getReadWatermarks(String conversationId) {
+        Map<String, LocalDateTime> watermarks = new HashMap<>();
+        inboxEntryRepository.findWatermarksByConversationId(conversationId)
+                .forEach(entry -> watermarks.put(entry.getOwnerId(), entry.getLastReadAt()));
+        return watermarks;
+    }
+
+    @Override
+    public void removeParticipant(String conversationId, String participantId) {
+        inboxEntryRepository.deleteByOwnerIdAndConversationId(participantId, conversationId);
+    }
+
+    @Override
+    public void removeConversation(String conversationId) {
+        inboxEntryRepository.deleteByConversationId(conversationId);
+    }
+
+    @Override
+    public void rebuildConversation(Conversation conversation) {
+        String conversationId = conversation.getConversationId();
+        Optional<ChatMessage> newest = chatMessageRepository.findFirstByConversationIdOrderByCreatedAtDesc(conversationId);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, InboxEntry.class);
+        for (String participantId : getParticipantIds(conversation)) {
+            long unreadCount = countUnread(conversationId, participantId);
+
+            Update update = new Update().set("unreadCount", (int) unreadCount);
+            if (newest.isPresent()) {
+                update.set("lastMessage", InboxLastMessage.of(newest.get()))
+                        .set("lastActivityAt", newest.get().getCreatedAt());
+            } else {
+                update.setOnInsert("lastActivityAt", LocalDateTime.now());
+            }
+
+            bulk.upsert(entryQuery(participantId, conversationId), update);
+        }
+        bulk.execute();
+
+        log.debug("Rebuilt inbox entries for conversation {}", conversationId);
+    }
+
+    @Override
+    public long countUnread(String conversationId, String participantId) {
+        LocalDateTime watermark = getEntry(participantId, conversationId)
+                .map(InboxEntry::readWatermark)
+                .orElse(InboxEntry.NEVER_READ);
+        return chatMessageRepository.countUnreadAfter(conversationId, participantId, watermark);
+    }
+
+    @Override
+    public void setUnreadCount(String conversationId, String participantId, long unreadCount) {
+        mongoTemplate.updateFirst(entryQuery(participantId, conversationId),
+                new Update().set("unreadCount", (int) unreadCount),
+                InboxEntry.class);
+    }
+
+    private void addReaderToLastMessage(String conversationId, String readerId, Collection<String> messageIds) {
+        mongoTemplate.updateMulti(
+                lastMessageQuery(conversationId, messageIds),
+                new Update().addToSet("lastMessage.readParticipantsId", readerId),
+                InboxEntry.class);
+    }
+
+    /**
+     * Lower unread_count by the given amount without going below zero
+     */
+    private static AggregationUpdate decrementUnread(long by) {
+        return AggregationUpdate.update().set("unreadCount").toValue(rawExpression(
+                new Document("$max", List.of(0, new Document("$subtract", List.of("$unread_count", by))))));
+    }
+
+    private static AggregationExpression rawExpression(Document expression) {
+        return context -> expression;
+    }
+
+    private Query entryQuery(String ownerId, String conversationId) {
+        return new Query(where("ownerId").is(ownerId).and("conversationId").is(conversationId));
+    }
+
+    private Query lastMessageQuery(String conversationId, Collection<String> messageIds) {
+        return new Query(where("conversationId").is(conversationId).and("lastMessage.messageId").in(messageIds));
+    }
+
+    private Set<String> getParticipantIds(Conversation conversation) {
+        if (conversation.getUserDetails() == null) {
+            return Set.of();
+        }
+        return conversation.getUserDetails().stream()
+                .map(UserDetail::getId)
+                .collect(Collectors.toSet());
+    }
+}
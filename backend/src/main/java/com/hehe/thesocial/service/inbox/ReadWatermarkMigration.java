@@ -0,0 +1,71 @@
+package com.hehe.thesocial.service.inbox;
+
+import com.hehe.thesocial.dto.response.inbox.InboxRepairResponse;
+import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.repository.ChatMessageRepository;
+import com.hehe.thesocial.repository.ConversationRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Converts per-message read_participants_id arrays into read watermarks, for switching to
+ * {@code chat.read-receipts.mode=WATERMARK}. Watermarks only move forward, so running it twice is harmless.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class ReadWatermarkMigration {
+    static int BATCH_SIZE = 100;
+    static Pageable NEWEST_ONLY = PageRequest.of(0, 1);
+
+    ConversationRepository conversationRepository;
+    ChatMessageRepository chatMessageRepository;
+    InboxService inboxService;
+
+    public InboxRepairResponse migrateAll() {
+        InboxRepairResponse report = InboxRepairResponse.builder().build();
+
+        Pageable pageable = PageRequest.of(0, BATCH_SIZE);
+        Page<Conversation> page;
+        do {
+            page = conversationRepository.findAll(pageable);
+            page.getContent().forEach(conversation -> migrate(conversation, report));
+            pageable = page.nextPageable();
+        } while (page.hasNext());
+
+        log.info("Read watermark migration finished: {} conversations, {} watermarks advanced",
+                report.getConversationsChecked(), report.getCountersRepaired());
+        return report;
+    }
+
+    private void migrate(Conversation conversation, InboxRepairResponse report) {
+        report.setConversationsChecked(report.getConversationsChecked() + 1);
+        if (conversation.getUserDetails() == null) {
+            return;
+        }
+
+        String conversationId = conversation.getConversationId();
+        for (UserDetail participant : conversation.getUserDetails()) {
+            report.setCountersChecked(report.getCountersChecked() + 1);
+
+            ChatMessage newestRead = chatMessageRepository
+                    .findReadByParticipant(conversationId, participant.getId(), NEWEST_ONLY)
+                    .stream()
+                    .findFirst()
+                    .orElse(null);
+
+            if (newestRead != null && inboxService.advanceReadWatermark(conversationId, participant.getId(), newestRead)) {
+                report.setCountersRepaired(report.getCountersRepaired() + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.hehe.thesocial.service.inbox;
+
+import com.hehe.thesocial.dto.response.inbox.InboxRepairResponse;
+import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.InboxEntry;
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.repository.ConversationRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recomputes unread counters from chat_message and the read watermarks, repairing any drift
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class UnreadCounterConsistencyChecker {
+    static int BATCH_SIZE = 100;
+
+    ConversationRepository conversationRepository;
+    InboxService inboxService;
+
+    public InboxRepairResponse checkAll(boolean dryRun) {
+        InboxRepairResponse report = InboxRepairResponse.builder().dryRun(dryRun).build();
+
+        Pageable pageable = PageRequest.of(0, BATCH_SIZE);
+        Page<Conversation> page;
+        do {
+            page = conversationRepository.findAll(pageable);
+            page.getContent().forEach(conversation -> check(conversation, dryRun, report));
+            pageable = page.nextPageable();
+        } while (page.hasNext());
+
+        log.info("Unread counter check finished: {} conversations, {} counters, {} repaired (dryRun={})",
+                report.getConversationsChecked(), report.getCountersChecked(), report.getCountersRepaired(), dryRun);
+        return report;
+    }
+
+    public InboxRepairResponse checkConversation(Conversation conversation, boolean dryRun) {
+        InboxRepairResponse report = InboxRepairResponse.builder().dryRun(dryRun).build();
+        check(conversation, dryRun, report);
+        return report;
+    }
+
+    private void check(Conversation conversation, boolean dryRun, InboxRepairResponse report) {
+        String conversationId = conversation.getConversationId();
+        report.setConversationsChecked(report.getConversationsChecked() + 1);
+
+        if (conversation.getUserDetails() == null) {
+            return;
+        }
+
+        for (UserDetail participant : conversation.getUserDetails()) {
+            InboxEntry entry = inboxService.getEntry(participant.getId(), conversationId).orElse(null);
+            if (entry == null) {
+                // Missing projection, rebuilding recomputes every participant of the conversation at once
+                report.setCountersRepaired(report.getCountersRepaired() + 1);
+                if (!dryRun) {
+                    inboxService.rebuildConversation(conversation);
+                    return;
+                }
+                continue;
+            }
+
+            report.setCountersChecked(report.getCountersChecked() + 1);
+            long expected = inboxService.countUnread(conversationId, participant.getId());
+            if (expected != entry.getUnreadCount()) {
+                log.warn("Unread counter drift in conversation {} for user {}: stored {}, actual {}",
+                        conversationId, participant.getId(), entry.getUnreadCount(), expected);
+                report.setCountersRepaired(report.getCountersRepaired() + 1);
+                if (!dryRun) {
+                    inboxService.setUnreadCount(conversationId, participant.getId(), expected);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.hehe.thesocial.service.kafka;
+
+import com.hehe.thesocial.dto.response.kafka.DeadLetterReplayResponse;
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.exception.ErrorCode;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Re-drives dead-lettered records onto their main topic, one poll at a time.
+ * Progress is committed under its own consumer group, so every record is replayed once and a replay can be
+ * resumed after a partial run.
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class DeadLetterReplayService {
+    static Set<String> REPLAYABLE_TOPICS = Set.of("chat_messages", "read_status_updates");
+    static String REPLAY_GROUP = "social-group-dlt-replay";
+    static Duration POLL_TIMEOUT = Duration.ofSeconds(2);
+
+    ConsumerFactory<Object, Object> consumerFactory;
+    KafkaTemplate<String, Object> kafkaTemplate;
+
+    public DeadLetterReplayResponse replay(String topic, int maxRecords, int batchSize) {
+        if (!REPLAYABLE_TOPICS.contains(topic)) {
+            throw new AppException(ErrorCode.UNKNOWN_TOPIC);
+        }
+
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchSize));
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+
+        int replayed = 0;
+        int skipped = 0;
+        try (Consumer<Object, Object> consumer = consumerFactory.createConsumer(REPLAY_GROUP, null, null, overrides)) {
+            consumer.subscribe(List.of(topic + KafkaRetryRouter.DLT_SUFFIX));
+
+            while (replayed + skipped < maxRecords) {
+                ConsumerRecords<Object, Object> records = consumer.poll(POLL_TIMEOUT);
+                if (records.isEmpty()) {
+                    break;
+                }
+
+                Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+                for (ConsumerRecord<Object, Object> record : records) {
+                    if (replayed + skipped >= maxRecords) {
+                        break;
+                    }
+                    if (record.value() == null) {
+                        // Not deserializable, replaying it would only dead-letter it again
+                        skipped++;
+                    } else {
+                        // Back on the main topic with the same key, so it starts a fresh round of attempts in order
+                        kafkaTemplate.send(topic, (String) record.key(), record.value());
+                        replayed++;
+                    }
+                    offsets.put(new TopicPartition(record.topic(), record.partition()),
+                            new OffsetAndMetadata(record.offset() + 1));
+                }
+
+                kafkaTemplate.flush();
+                consumer.commitSync(offsets);
+            }
+        }
+
+        log.info("♻️ Replayed {} record(s) from {}{}, skipped {}", replayed, topic, KafkaRetryRouter.DLT_SUFFIX, skipped);
+        return DeadLetterReplayResponse.builder()
+                .topic(topic)
+                .replayed(replayed)
+                .skipped(skipped)
+                .build();
+    }
+}
@@ -1,85 +1,171 @@
 package com.hehe.thesocial.service.kafka;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hehe.thesocial.dto.event.ChatMessageEventDTO;
 import com.hehe.thesocial.dto.event.ReadStatusEventDTO;
 import com.hehe.thesocial.entity.Conversation;
 import com.hehe.thesocial.entity.UserDetail;
-import com.hehe.thesocial.exception.AppException;
-import com.hehe.thesocial.exception.ErrorCode;
 import com.hehe.thesocial.repository.ConversationRepository;
-import com.hehe.thesocial.repository.UserDetailRepository;
+import com.hehe.thesocial.service.cluster.ClusterUserMessaging;
 import com.hehe.thesocial.service.messageDelivery.MessageDeliveryService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 @Service
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @RequiredArgsConstructor
 @Slf4j
 public class KafkaConsumer {
-    ObjectMapper objectMapper;
-    SimpMessagingTemplate simpMessagingTemplate;
-    UserDetailRepository userDetailRepository;
+    static String CHAT_TOPIC = "chat_messages";
+    static String READ_STATUS_TOPIC = "read_status_updates";
+
+    ClusterUserMessaging clusterUserMessaging;
     ConversationRepository conversationRepository;
     MessageDeliveryService messageDeliveryService;
+    MeterRegistry meterRegistry;
+    KafkaRetryRouter kafkaRetryRouter;
+
+    // One consumer per partition: records are keyed by conversation, so each conversation is handled by a
+    // single thread in offset order while different conversations are processed in parallel.
+    // Each call receives a whole poll so conversations are resolved once per batch instead of once per record.
+    @KafkaListener(topics = "chat_messages", groupId = "social-group", batch = "true",
+            concurrency = "${chat.kafka.listener-concurrency:3}")
+    public void listenConversations(List<ChatMessageEventDTO> chatMessageEvents) {
+        // Records that failed deserialization arrive as null
+        List<ChatMessageEventDTO> events = chatMessageEvents.stream()
+                .filter(Objects::nonNull)
+                .toList();
+        recordBatch(CHAT_TOPIC, events.size());
+        log.info("📩 Broadcasting {} message(s)", events.size());
+
+        // The only delivery path: chat and inbox frames per participant, duplicates dropped
+        List<ChatMessageEventDTO> failed = messageDeliveryService.deliverAll(events);
+        failed.forEach(event -> kafkaRetryRouter.routeFailure(CHAT_TOPIC,
+                event.getResponse().getConversationId(), event, 1, "delivery failed"));
+    }
+
+    /**
+     * Failed chat deliveries, retried one record at a time once their backoff has passed.
+     * Waiting pauses only this retry tier's partition, never the main topic or another tier.
+     */
+    @KafkaListener(topics = "#{@kafkaRetryRouter.retryTopics('chat_messages')}", groupId = "social-group",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    public void retryConversations(ConsumerRecord<String, ChatMessageEventDTO> record, Acknowledgment acknowledgment) {
+        Duration remaining = kafkaRetryRouter.remainingDelay(record);
+        if (!remaining.isZero()) {
+            acknowledgment.nack(remaining);
+            return;
+        }
+
+        ChatMessageEventDTO event = record.value();
+        if (event != null && !messageDeliveryService.deliver(event).isEmpty()) {
+            kafkaRetryRouter.routeFailure(CHAT_TOPIC, record.key(), event, kafkaRetryRouter.attemptOf(record),
+                    "delivery failed");
+        }
+        acknowledgment.acknowledge();
+    }
+
+    @KafkaListener(topics = "read_status_updates", groupId = "social-group", batch = "true",
+            concurrency = "${chat.kafka.listener-concurrency:3}")
+    public void listenReadStatusUpdates(List<ReadStatusEventDTO> readStatusEvents) {
+        // Reads of the same reader that still ended up in one poll are folded into one frame
+        Map<String, ReadStatusEventDTO> merged = new LinkedHashMap<>();
+        int received = 0;
+        for (ReadStatusEventDTO event : readStatusEvents) {
+            if (event == null) {
+                continue;
+            }
+            received++;
+            merged.merge(event.getConversationId() + ":" + event.getReaderId(),
+                    ReadStatusCoalescer.withMessageIds(event),
+                    ReadStatusCoalescer::merge);
+        }
+        recordBatch(READ_STATUS_TOPIC, received);
+        if (merged.isEmpty()) {
+            return;
+        }
 
-    @KafkaListener(topics = "chat_messages", groupId = "social-group")
-    public void listenConversations(ChatMessageEventDTO chatMessageEventDTO) throws JsonProcessingException {
-        log.info("📩 Broadcasting message to {} participants", chatMessageEventDTO.getParticipantsIds().size());
         try {
-            // Use the message delivery service to ensure all participants receive the message
-            // This handles both online and offline users
-            messageDeliveryService.deliverMessageToConversation(
-                chatMessageEventDTO.getResponse().getConversationId(), 
-                chatMessageEventDTO.getResponse()
-            );
-            
-            log.info("✅ Message broadcasted successfully");
+            broadcastReadStatus(merged.values());
+            log.info("✅ Read status updates broadcasted: {} record(s) as {} frame set(s)", received, merged.size());
         } catch (Exception ex) {
-            log.error("❌ Error broadcasting message: {}", ex.getMessage());
+            log.error("❌ Error broadcasting read status updates: {}", ex.getMessage());
+            merged.values().forEach(event -> kafkaRetryRouter.routeFailure(READ_STATUS_TOPIC,
+                    event.getConversationId(), event, 1, ex.getMessage()));
         }
     }
 
-    @KafkaListener(topics = "read_status_updates", groupId = "social-group")
-    public void listenReadStatusUpdates(ReadStatusEventDTO readStatusEventDTO) throws JsonProcessingException {
-        log.info("📖 Broadcasting read status update for message {} to conversation {}", 
-                readStatusEventDTO.getMessageId(), readStatusEventDTO.getConversationId());
-        try {
-            // Get all participants in the conversation
-            Conversation conversation = conversationRepository.findById(readStatusEventDTO.getConversationId())
-                    .orElseThrow(() -> new AppException(ErrorCode.CONVERSATION_NOT_FOUND));
-            
-            String destination = "/queue/read-status";
-            java.util.List<String> failedUsers = new java.util.ArrayList<>();
-            int successCount = 0;
-            
-            // Send read status update to all conversation participants
-            for (UserDetail participant : conversation.getUserDetails()) {
-                try {
-                    simpMessagingTemplate.convertAndSendToUser(participant.getId(), destination, readStatusEventDTO);
-                    successCount++;
-                } catch (Exception e) {
-                    log.error("Failed to send read status to user {}: {}", participant.getId(), e.getMessage());
-                    failedUsers.add(participant.getId());
-                }
+    @KafkaListener(topics = "#{@kafkaRetryRouter.retryTopics('read_status_updates')}", groupId = "social-group",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    public void retryReadStatusUpdates(ConsumerRecord<String, ReadStatusEventDTO> record,
+                                       Acknowledgment acknowledgment) {
+        Duration remaining = kafkaRetryRouter.remainingDelay(record);
+        if (!remaining.isZero()) {
+            acknowledgment.nack(remaining);
+            return;
+        }
+
+        ReadStatusEventDTO event = record.value();
+        if (event != null) {
+            try {
+                broadcastReadStatus(List.of(event));
+            } catch (Exception ex) {
+                kafkaRetryRouter.routeFailure(READ_STATUS_TOPIC, record.key(), event,
+                        kafkaRetryRouter.attemptOf(record), ex.getMessage());
             }
-            
+        }
+        acknowledgment.acknowledge();
+    }
+
+    /**
+     * Resolve every conversation with one query and send each event to its participants.
+     * Throws when the conversations cannot be loaded so the caller can retry the events.
+     */
+    private void broadcastReadStatus(Collection<ReadStatusEventDTO> events) {
+        Set<String> conversationIds = events.stream()
+                .map(ReadStatusEventDTO::getConversationId)
+                .collect(Collectors.toSet());
+        Map<String, Conversation> conversations = new HashMap<>();
+        conversationRepository.findAllById(conversationIds)
+                .forEach(conversation -> conversations.put(conversation.getConversationId(), conversation));
+
+        String destination = "/queue/read-status";
+        for (ReadStatusEventDTO readStatusEventDTO : events) {
+            Conversation conversation = conversations.get(readStatusEventDTO.getConversationId());
+            if (conversation == null) {
+                log.warn("Dropping read status update for unknown conversation {}",
+                        readStatusEventDTO.getConversationId());
+                continue;
+            }
+
+            List<String> failedUsers = clusterUserMessaging.sendToUsers(conversation.getUserDetails().stream()
+                    .map(UserDetail::getId)
+                    .toList(), destination, readStatusEventDTO);
+
             if (!failedUsers.isEmpty()) {
                 log.warn("Failed to send read status to {} users: {}", failedUsers.size(), failedUsers);
             }
-            
-            log.info("✅ Read status update broadcasted successfully to {} out of {} participants", 
-                    successCount, conversation.getUserDetails().size());
-        } catch (Exception ex) {
-            log.error("❌ Error broadcasting read status update: {}", ex.getMessage());
-            // Consider implementing dead letter queue or retry mechanism for critical failures
         }
     }
+
+    private void recordBatch(String topic, int size) {
+        meterRegistry.counter("chat.kafka.consumed", "topic", topic).increment(size);
+        meterRegistry.summary("chat.kafka.batch.size", "topic", topic).record(size);
+    }
 }
@@ -15,13 +15,18 @@ import org.springframework.stereotype.Service;
 public class KafkaProducer {
     KafkaTemplate<String, Object> kafkaTemplate;
 
+    /**
+     * Keyed by conversation so every event of a conversation lands on the same partition, in order
+     */
     public void sendMessage(ChatMessageEventDTO chatMessageEventDTO) {
         kafkaTemplate.send("chat_messages",
+                chatMessageEventDTO.getResponse().getConversationId(),
                 chatMessageEventDTO);
     }
 
     public void sendReadStatusUpdate(ReadStatusEventDTO readStatusEventDTO) {
         kafkaTemplate.send("read_status_updates",
+                readStatusEventDTO.getConversationId(),
                 readStatusEventDTO);
     }
 
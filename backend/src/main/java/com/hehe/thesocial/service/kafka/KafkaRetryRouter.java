@@ -0,0 +1,125 @@
+package com.hehe.thesocial.service.kafka;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.stream.IntStream;
+
+/**
+ * Moves records that could not be delivered off the main topic.
+ * A failed record goes to the retry tier of its attempt, {@code <topic>.retry-<attempt>}, with the time it becomes
+ * due, so the main partition keeps flowing while the retry listener waits out the backoff. Every record of a tier
+ * waits the same delay, so a tier is ordered by due time and pausing on its head never holds back a record that is
+ * already due. Once the attempts are used up the record lands in {@code <topic>.DLT} for a later replay.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class KafkaRetryRouter {
+    public static final String RETRY_SUFFIX = ".retry-";
+    public static final String DLT_SUFFIX = ".DLT";
+    static String ATTEMPT_HEADER = "chat-retry-attempt";
+    static String DUE_AT_HEADER = "chat-retry-due-at";
+    static String ERROR_HEADER = "chat-retry-error";
+
+    KafkaTemplate<String, Object> kafkaTemplate;
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${chat.kafka.retry.attempts:4}")
+    int maxAttempts;
+
+    @NonFinal
+    @Value("${chat.kafka.retry.initial-delay:1s}")
+    Duration initialDelay;
+
+    @NonFinal
+    @Value("${chat.kafka.retry.multiplier:2.0}")
+    double multiplier;
+
+    @NonFinal
+    @Value("${chat.kafka.retry.max-delay:30s}")
+    Duration maxDelay;
+
+    /**
+     * Route a record of {@code mainTopic} whose delivery failed on the given attempt (the first delivery is attempt 1)
+     */
+    public void routeFailure(String mainTopic, String key, Object event, int failedAttempt, String reason) {
+        if (failedAttempt >= maxAttempts) {
+            log.error("❌ Giving up on {} record {} after {} attempts: {}", mainTopic, key, failedAttempt, reason);
+            ProducerRecord<String, Object> record = new ProducerRecord<>(mainTopic + DLT_SUFFIX, key, event);
+            record.headers().add(ATTEMPT_HEADER, intBytes(failedAttempt));
+            record.headers().add(ERROR_HEADER, String.valueOf(reason).getBytes(StandardCharsets.UTF_8));
+            kafkaTemplate.send(record);
+            meterRegistry.counter("chat.kafka.dead_lettered", "topic", mainTopic).increment();
+            return;
+        }
+
+        long dueAt = System.currentTimeMillis() + backoff(failedAttempt).toMillis();
+        log.warn("⚠️ Retrying {} record {} (attempt {} failed): {}", mainTopic, key, failedAttempt, reason);
+        ProducerRecord<String, Object> record = new ProducerRecord<>(retryTopic(mainTopic, failedAttempt), key, event);
+        record.headers().add(ATTEMPT_HEADER, intBytes(failedAttempt + 1));
+        record.headers().add(DUE_AT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(dueAt).array());
+        kafkaTemplate.send(record);
+        meterRegistry.counter("chat.kafka.retried", "topic", mainTopic).increment();
+    }
+
+    /**
+     * Retry tier that takes records of {@code mainTopic} whose given attempt failed
+     */
+    public String retryTopic(String mainTopic, int failedAttempt) {
+        return mainTopic + RETRY_SUFFIX + failedAttempt;
+    }
+
+    /**
+     * Every retry tier of {@code mainTopic}, one per attempt that may still be followed by another
+     */
+    public String[] retryTopics(String mainTopic) {
+        return IntStream.range(1, maxAttempts)
+                .mapToObj(failedAttempt -> retryTopic(mainTopic, failedAttempt))
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Attempt number of a record read from a retry topic
+     */
+    public int attemptOf(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(ATTEMPT_HEADER);
+        return header != null ? ByteBuffer.wrap(header.value()).getInt() : 1;
+    }
+
+    /**
+     * How long a record read from a retry topic still has to wait before it may be retried
+     */
+    public Duration remainingDelay(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(DUE_AT_HEADER);
+        if (header == null) {
+            return Duration.ZERO;
+        }
+        long remaining = ByteBuffer.wrap(header.value()).getLong() - System.currentTimeMillis();
+        return remaining > 0 ? Duration.ofMillis(remaining) : Duration.ZERO;
+    }
+
+    Duration backoff(int failedAttempt) {
+        double delay = initialDelay.toMillis() * Math.pow(multiplier, failedAttempt - 1);
+        return Duration.ofMillis((long) Math.min(delay, maxDelay.toMillis()));
+    }
+
+    private static byte[] intBytes(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+    }
+}
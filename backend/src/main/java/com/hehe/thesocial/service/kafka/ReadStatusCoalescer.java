@@ -0,0 +1,192 @@
+package com.hehe.thesocial.service.kafka;
+
+import com.hehe.thesocial.dto.event.ReadStatusEventDTO;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges read status events of the same reader in the same conversation and publishes them as one batched event.
+ * The first event of a reader opens a window, everything that arrives before it closes is folded into the same
+ * event, so a user scrolling through a backlog produces one Kafka record instead of one per message.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class ReadStatusCoalescer {
+    KafkaProducer producer;
+    MeterRegistry meterRegistry;
+
+    Map<Key, Pending> pending = new ConcurrentHashMap<>();
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "read-status-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @NonFinal
+    @Value("${chat.read-receipts.coalesce-window:500ms}")
+    Duration window;
+
+    @NonFinal
+    DistributionSummary mergedEvents;
+
+    @PostConstruct
+    void registerMetrics() {
+        // Mean of this summary is the merge ratio: received events per published event
+        mergedEvents = DistributionSummary.builder("chat.read_status.merged")
+                .description("Read status events folded into one published event")
+                .register(meterRegistry);
+        Gauge.builder("chat.read_status.pending", pending, Map::size)
+                .description("Readers with a coalescing window open")
+                .register(meterRegistry);
+    }
+
+    public void submit(ReadStatusEventDTO event) {
+        meterRegistry.counter("chat.read_status.events", "stage", "received").increment();
+
+        if (window.isZero() || window.isNegative()) {
+            publish(withMessageIds(event), 1);
+            return;
+        }
+
+        Key key = new Key(event.getConversationId(), event.getReaderId());
+        pending.compute(key, (k, current) -> {
+            if (current == null) {
+                scheduler.schedule(() -> flush(k), window.toMillis(), TimeUnit.MILLISECONDS);
+                return new Pending(withMessageIds(event), 1);
+            }
+            return new Pending(merge(current.event(), event), current.merged() + 1);
+        });
+    }
+
+    /**
+     * Publish every open window right away
+     */
+    public void flushAll() {
+        new ArrayList<>(pending.keySet()).forEach(this::flush);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+        flushAll();
+    }
+
+    private void flush(Key key) {
+        Pending merged = pending.remove(key);
+        if (merged == null) {
+            return;
+        }
+        try {
+            publish(merged.event(), merged.merged());
+        } catch (Exception e) {
+            log.error("Failed to publish coalesced read status for conversation {}: {}",
+                    key.conversationId(), e.getMessage());
+        }
+    }
+
+    private void publish(ReadStatusEventDTO event, int mergedCount) {
+        producer.sendReadStatusUpdate(event);
+        meterRegistry.counter("chat.read_status.events", "stage", "published").increment();
+        mergedEvents.record(mergedCount);
+    }
+
+    /**
+     * Copy of the event in its coalesced form: a watermark event keeps only readUpTo, a per-message event lists
+     * its messages with the readers of each
+     */
+    static ReadStatusEventDTO withMessageIds(ReadStatusEventDTO event) {
+        if (event.getReadUpTo() != null) {
+            return watermark(event, event.getReadUpTo());
+        }
+        List<String> messageIds = event.getMessageIds() != null
+                ? new ArrayList<>(event.getMessageIds())
+                : new ArrayList<>(List.of(event.getMessageId()));
+        return ReadStatusEventDTO.builder()
+                .messageId(event.getMessageId())
+                .messageIds(messageIds)
+                .readParticipantsByMessageId(readersByMessage(event))
+                .conversationId(event.getConversationId())
+                .readParticipantsId(event.getReadParticipantsId())
+                .readCount(event.getReadCount())
+                .readerId(event.getReaderId())
+                .build();
+    }
+
+    /**
+     * Message ids accumulate with their own readers, the latest event wins for the single-message fields, and
+     * readUpTo only moves forward
+     */
+    static ReadStatusEventDTO merge(ReadStatusEventDTO current, ReadStatusEventDTO next) {
+        if (current.getReadUpTo() != null || next.getReadUpTo() != null) {
+            LocalDateTime readUpTo = current.getReadUpTo();
+            if (next.getReadUpTo() != null && (readUpTo == null || next.getReadUpTo().isAfter(readUpTo))) {
+                readUpTo = next.getReadUpTo();
+            }
+            return watermark(current, readUpTo);
+        }
+
+        Set<String> messageIds = new LinkedHashSet<>(current.getMessageIds());
+        if (next.getMessageIds() != null) {
+            messageIds.addAll(next.getMessageIds());
+        } else {
+            messageIds.add(next.getMessageId());
+        }
+        Map<String, List<String>> readers = new LinkedHashMap<>(current.getReadParticipantsByMessageId());
+        readers.putAll(readersByMessage(next));
+
+        current.setMessageId(next.getMessageId());
+        current.setMessageIds(new ArrayList<>(messageIds));
+        current.setReadParticipantsByMessageId(readers);
+        current.setReadParticipantsId(next.getReadParticipantsId());
+        current.setReadCount(next.getReadCount());
+        return current;
+    }
+
+    private static Map<String, List<String>> readersByMessage(ReadStatusEventDTO event) {
+        if (event.getReadParticipantsByMessageId() != null) {
+            return new LinkedHashMap<>(event.getReadParticipantsByMessageId());
+        }
+        Map<String, List<String>> readers = new LinkedHashMap<>();
+        readers.put(event.getMessageId(), event.getReadParticipantsId());
+        return readers;
+    }
+
+    private static ReadStatusEventDTO watermark(ReadStatusEventDTO event, LocalDateTime readUpTo) {
+        return ReadStatusEventDTO.builder()
+                .conversationId(event.getConversationId())
+                .readerId(event.getReaderId())
+                .readUpTo(readUpTo)
+                .build();
+    }
+
+    private record Key(String conversationId, String readerId) {
+    }
+
+    private record Pending(ReadStatusEventDTO event, int merged) {
+    }
+}
@@ -1,81 +1,232 @@
 package com.hehe.thesocial.service.messageDelivery;
 
+import com.hehe.thesocial.dto.event.ChatMessageEventDTO;
+import com.hehe.thesocial.dto.event.NewestMessageBroadcast;
 import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
 import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.PendingDelivery;
 import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.entity.enums.EventType;
 import com.hehe.thesocial.repository.ConversationRepository;
-import com.hehe.thesocial.repository.UserDetailRepository;
+import com.hehe.thesocial.service.cluster.ClusterUserMessaging;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * The single delivery pipeline for chat events consumed from Kafka.
+ * Every participant receives the chat frame and the inbox frame together, and a redelivered event is dropped.
+ * New messages for participants without a session are written to their pending-delivery log instead.
+ */
 @Service
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @RequiredArgsConstructor
 @Slf4j
 public class MessageDeliveryService {
-    SimpMessagingTemplate simpMessagingTemplate;
+    static String CHAT_DESTINATION = "/queue/chat";
+    static String NEWEST_MESSAGE_DESTINATION = "/queue/newest-message";
+    static int RECENT_EVENT_CAPACITY = 10_000;
+
+    ClusterUserMessaging clusterUserMessaging;
     ConversationRepository conversationRepository;
-    UserDetailRepository userDetailRepository;
+    PendingDeliveryService pendingDeliveryService;
+
+    // Bounded so that only recent redeliveries are recognised, which is where Kafka duplicates come from
+    Set<String> deliveredEvents = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > RECENT_EVENT_CAPACITY;
+                }
+            }));
+
+    public List<ChatMessageEventDTO> deliver(ChatMessageEventDTO event) {
+        return deliverAll(List.of(event));
+    }
 
     /**
-     * Deliver message to all participants in a conversation
-     * This method ensures messages reach users even if they're not actively viewing the conversation
+     * Deliver a batch of chat events, at most once per message and event type.
+     * Conversations missing from the events are loaded with one query, and each participant gets a chat frame per
+     * message but only one inbox frame per conversation, for the newest message of the batch.
+     *
+     * @return the events that could not be delivered, they are not remembered as delivered and may be retried
      */
-    public void deliverMessageToConversation(String conversationId, ChatMessageResponse message) {
+    public List<ChatMessageEventDTO> deliverAll(List<ChatMessageEventDTO> events) {
+        Map<String, List<ChatMessageEventDTO>> byConversation = events.stream()
+                .filter(this::markDelivered)
+                .collect(Collectors.groupingBy(event -> event.getResponse().getConversationId(),
+                        LinkedHashMap::new, Collectors.toList()));
+        if (byConversation.isEmpty()) {
+            return List.of();
+        }
+
+        List<ChatMessageEventDTO> failed = new ArrayList<>();
+        Map<String, Set<String>> loadedParticipants;
         try {
-            Conversation conversation = conversationRepository.findById(conversationId)
-                    .orElseThrow(() -> new RuntimeException("Conversation not found: " + conversationId));
+            loadedParticipants = loadMissingParticipants(byConversation.values().stream()
+                    .flatMap(List::stream)
+                    .toList());
+        } catch (Exception e) {
+            log.error("❌ Error resolving participants for {} conversation(s): {}", byConversation.size(), e.getMessage());
+            byConversation.values().forEach(failed::addAll);
+            failed.forEach(this::forgetDelivered);
+            return failed;
+        }
 
-            String destination = "/queue/chat";
-            Set<String> participantIds = conversation.getUserDetails().stream()
-                    .map(UserDetail::getId)
-                    .collect(Collectors.toSet());
-
-            log.info("📨 Delivering message to {} participants in conversation {}", 
-                    participantIds.size(), conversationId);
-
-            // Send to all participants regardless of their online status
-            for (String participantId : participantIds) {
-                try {
-                    simpMessagingTemplate.convertAndSendToUser(participantId, destination, message);
-                    log.debug("✅ Message delivered to participant: {}", participantId);
-                } catch (Exception e) {
-                    log.warn("⚠️ Failed to deliver message to participant {}: {}", participantId, e.getMessage());
-                    // Continue with other participants even if one fails
+        // Written before any frame goes out, so a failed write retries the batch without duplicating frames
+        try {
+            pendingDeliveryService.recordAll(offlineDeliveries(byConversation, loadedParticipants));
+        } catch (Exception e) {
+            log.error("❌ Error recording pending deliveries for {} conversation(s): {}",
+                    byConversation.size(), e.getMessage());
+            byConversation.values().forEach(failed::addAll);
+            failed.forEach(this::forgetDelivered);
+            return failed;
+        }
+
+        byConversation.forEach((conversationId, conversationEvents) -> {
+            try {
+                Set<String> participantIds = Set.of();
+                for (ChatMessageEventDTO event : conversationEvents) {
+                    participantIds = participantsOf(event, loadedParticipants);
+                    sendToParticipants(participantIds, CHAT_DESTINATION, event.getResponse());
                 }
+
+                ChatMessageEventDTO newest = conversationEvents.get(conversationEvents.size() - 1);
+                sendToParticipants(participantIds, NEWEST_MESSAGE_DESTINATION, NewestMessageBroadcast.builder()
+                        .conversationId(conversationId)
+                        .message(newest.getResponse())
+                        .conversationType(newest.getConversationType() != null ? newest.getConversationType().name() : null)
+                        .participantCount(participantIds.size())
+                        .timestamp(System.currentTimeMillis())
+                        .build());
+
+                log.info("📨 Delivered {} message(s) to {} participants in conversation {}",
+                        conversationEvents.size(), participantIds.size(), conversationId);
+            } catch (Exception e) {
+                log.error("❌ Error delivering messages to conversation {}: {}", conversationId, e.getMessage());
+                failed.addAll(conversationEvents);
             }
+        });
 
-            log.info("📨 Message delivery completed for conversation {}", conversationId);
-        } catch (Exception e) {
-            log.error("❌ Error delivering message to conversation {}: {}", conversationId, e.getMessage());
-        }
+        failed.forEach(this::forgetDelivered);
+        return failed;
+    }
+
+    public boolean isUserOnline(String userId) {
+        return clusterUserMessaging.isOnline(userId);
     }
 
     /**
-     * Check if a user is currently online and subscribed to WebSocket
-     * This is a simplified check - in production you might want to use Redis or a session store
+     * Participants of a conversation without an open WebSocket session on any node
      */
-    public boolean isUserOnline(String userId) {
-        // For now, we'll assume all users are potentially online
-        // In a production system, you'd check against a session store or Redis
+    public List<String> getOfflineUsers(String conversationId) {
+        return conversationRepository.findById(conversationId)
+                .map(conversation -> conversation.getUserDetails().stream()
+                        .map(UserDetail::getId)
+                        .filter(id -> !clusterUserMessaging.isOnline(id))
+                        .toList())
+                .orElse(List.of());
+    }
+
+    private boolean markDelivered(ChatMessageEventDTO event) {
+        String messageId = event.getResponse().getId();
+        if (messageId != null && !deliveredEvents.add(deliveryKey(event))) {
+            log.debug("Skipping already delivered message {}", messageId);
+            return false;
+        }
         return true;
     }
 
+    private void forgetDelivered(ChatMessageEventDTO event) {
+        if (event.getResponse().getId() != null) {
+            deliveredEvents.remove(deliveryKey(event));
+        }
+    }
+
     /**
-     * Get offline users for a conversation
-     * This method can be enhanced to check actual online status
+     * Redeliveries of a record carry the same content, while a message published again after an edit does not.
+     * The key therefore includes a version of the content, so an edited message is delivered again.
      */
-    public List<String> getOfflineUsers(String conversationId) {
-        // For now, return empty list - in production you'd check actual online status
-        // This could be implemented using Redis session store or database
-        return List.of();
+    private static String deliveryKey(ChatMessageEventDTO event) {
+        ChatMessageResponse response = event.getResponse();
+        int version = Objects.hash(response.getMessage(), response.getEdited(), response.getCreatedAt());
+        return event.getEventType() + ":" + response.getId() + ":" + Integer.toHexString(version);
+    }
+
+    private static boolean hasParticipants(ChatMessageEventDTO event) {
+        return event.getParticipantsIds() != null && !event.getParticipantsIds().isEmpty();
+    }
+
+    private static Set<String> participantsOf(ChatMessageEventDTO event, Map<String, Set<String>> loadedParticipants) {
+        return hasParticipants(event)
+                ? event.getParticipantsIds()
+                : loadedParticipants.getOrDefault(event.getResponse().getConversationId(), Set.of());
+    }
+
+    /**
+     * New messages of the batch for every offline participant other than the sender.
+     * Edits and deletes are not logged, catch-up loads the current state of each message anyway.
+     */
+    private List<PendingDelivery> offlineDeliveries(Map<String, List<ChatMessageEventDTO>> byConversation,
+                                                    Map<String, Set<String>> loadedParticipants) {
+        List<PendingDelivery> deliveries = new ArrayList<>();
+        byConversation.values().stream()
+                .flatMap(List::stream)
+                .filter(event -> event.getEventType() == EventType.MESSAGE_CREATE && event.getResponse().getId() != null)
+                .forEach(event -> {
+                    ChatMessageResponse response = event.getResponse();
+                    for (String participantId : participantsOf(event, loadedParticipants)) {
+                        if (participantId.equals(response.getSenderId()) || clusterUserMessaging.isOnline(participantId)) {
+                            continue;
+                        }
+                        deliveries.add(PendingDelivery.builder()
+                                .ownerId(participantId)
+                                .conversationId(response.getConversationId())
+                                .messageId(response.getId())
+                                .createdAt(response.getCreatedAt())
+                                .build());
+                    }
+                });
+        return deliveries;
+    }
+
+    /**
+     * Participants travel with the event, conversations are only loaded for events published without them
+     */
+    private Map<String, Set<String>> loadMissingParticipants(List<ChatMessageEventDTO> events) {
+        Set<String> conversationIds = events.stream()
+                .filter(event -> !hasParticipants(event))
+                .map(event -> event.getResponse().getConversationId())
+                .collect(Collectors.toSet());
+        if (conversationIds.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, Set<String>> participants = new HashMap<>();
+        for (Conversation conversation : conversationRepository.findAllById(conversationIds)) {
+            participants.put(conversation.getConversationId(), conversation.getUserDetails().stream()
+                    .map(UserDetail::getId)
+                    .collect(Collectors.toSet()));
+        }
+        return participants;
+    }
+
+    private void sendToParticipants(Set<String> participantIds, String destination, Object payload) {
+        // Frames for users without a session anywhere are skipped, the pending log covers them.
+        // Failures of single participants do not fail the others.
+        clusterUserMessaging.sendToUsers(participantIds, destination, payload);
     }
 }
@@ -0,0 +1,127 @@
+package com.hehe.thesocial.service.messageDelivery;
+
+import com.hehe.thesocial.dto.response.chat.CatchUpResponse;
+import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.entity.PendingDelivery;
+import com.hehe.thesocial.repository.ChatMessageRepository;
+import com.hehe.thesocial.repository.PendingDeliveryRepository;
+import com.hehe.thesocial.service.chatMessage.ChatMessageHydrator;
+import com.hehe.thesocial.service.chatMessage.UserDetailIdentityMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Per-user log of chat messages that were published while the user was offline.
+ * Entries are written by the delivery pipeline, replayed as one catch-up frame when the user reconnects and removed
+ * once the client acknowledges them, so a reconnect costs one indexed range read instead of a full inbox reload.
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class PendingDeliveryService {
+    PendingDeliveryRepository pendingDeliveryRepository;
+    ChatMessageRepository chatMessageRepository;
+    ChatMessageHydrator chatMessageHydrator;
+    MongoTemplate mongoTemplate;
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${chat.catch-up.max-messages:500}")
+    int maxMessages;
+
+    /**
+     * Record the given messages for their offline owners with one unordered bulk write.
+     * Recording a message that is already pending for the owner does nothing, so redelivered events are harmless.
+     */
+    public void recordAll(Collection<PendingDelivery> deliveries) {
+        if (deliveries.isEmpty()) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PendingDelivery.class);
+        for (PendingDelivery delivery : deliveries) {
+            bulk.upsert(
+                    new Query(where("_id").is(PendingDelivery.idOf(delivery.getOwnerId(), delivery.getMessageId()))),
+                    new Update()
+                            .setOnInsert("ownerId", delivery.getOwnerId())
+                            .setOnInsert("conversationId", delivery.getConversationId())
+                            .setOnInsert("messageId", delivery.getMessageId())
+                            .setOnInsert("createdAt", delivery.getCreatedAt())
+                            .setOnInsert("recordedAt", now));
+        }
+        bulk.execute();
+        meterRegistry.counter("chat.pending_delivery.recorded").increment(deliveries.size());
+    }
+
+    /**
+     * The oldest pending messages of a user, hydrated for that user.
+     * Messages deleted in the meantime are skipped and acknowledged right away.
+     */
+    public CatchUpResponse catchUp(String ownerId) {
+        List<PendingDelivery> pending = pendingDeliveryRepository.findByOwnerIdOrderByCreatedAtAsc(
+                ownerId, PageRequest.of(0, maxMessages + 1));
+        boolean hasMore = pending.size() > maxMessages;
+        if (hasMore) {
+            pending = pending.subList(0, maxMessages);
+        }
+        if (pending.isEmpty()) {
+            return CatchUpResponse.builder().messages(List.of()).hasMore(false).build();
+        }
+
+        List<String> messageIds = pending.stream().map(PendingDelivery::getMessageId).toList();
+        Map<String, ChatMessage> messages = new HashMap<>();
+        chatMessageRepository.findAllById(messageIds).forEach(message -> messages.put(message.getId(), message));
+
+        List<String> missing = messageIds.stream().filter(id -> !messages.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            pendingDeliveryRepository.deleteByOwnerIdAndMessageIdIn(ownerId, missing);
+        }
+
+        List<ChatMessage> ordered = messageIds.stream()
+                .map(messages::get)
+                .filter(Objects::nonNull)
+                .toList();
+        UserDetailIdentityMap identityMap = chatMessageHydrator.newIdentityMap();
+        chatMessageHydrator.preloadSenders(ordered, identityMap);
+        List<ChatMessageResponse> responses = ordered.stream()
+                .map(message -> chatMessageHydrator.toResponse(message, identityMap, ownerId))
+                .toList();
+
+        meterRegistry.summary("chat.catch_up.messages").record(responses.size());
+        log.info("Catching up user {} with {} missed message(s), more pending: {}", ownerId, responses.size(), hasMore);
+        return CatchUpResponse.builder()
+                .messages(responses)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    public void acknowledge(String ownerId, Collection<String> messageIds) {
+        if (messageIds == null || messageIds.isEmpty()) {
+            return;
+        }
+        pendingDeliveryRepository.deleteByOwnerIdAndMessageIdIn(ownerId, messageIds);
+    }
+}
@@ -0,0 +1,12 @@
+package com.hehe.thesocial.service.presence;
+
+import lombok.Value;
+
+/**
+ * A user opened their first or closed their last WebSocket session on this node
+ */
+@Value
+public class PresenceChangedEvent {
+    String userDetailId;
+    boolean online;
+}
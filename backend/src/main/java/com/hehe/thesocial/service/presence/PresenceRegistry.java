@@ -0,0 +1,135 @@
+package com.hehe.thesocial.service.presence;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Who is connected to this node, keyed by userDetailId.
+ * A user stays online while at least one of their STOMP sessions is open. Sessions that stop sending anything,
+ * heartbeats included, for longer than the session timeout are expired, which covers connections that vanished
+ * without a disconnect frame. Both maps are ConcurrentHashMaps, so updates only contend per bin and readers never
+ * block. A {@link PresenceChangedEvent} is published whenever a user comes online or goes offline on this node.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceRegistry {
+    MeterRegistry meterRegistry;
+    ApplicationEventPublisher eventPublisher;
+
+    Map<String, SessionPresence> sessions = new ConcurrentHashMap<>();
+    Map<String, Integer> sessionCounts = new ConcurrentHashMap<>();
+    ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "presence-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @NonFinal
+    @Value("${chat.presence.session-timeout:60s}")
+    Duration sessionTimeout;
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("chat.presence.online_users", sessionCounts, Map::size)
+                .description("Users with at least one WebSocket session on this node")
+                .register(meterRegistry);
+        Gauge.builder("chat.presence.sessions", sessions, Map::size)
+                .description("Open WebSocket sessions on this node")
+                .register(meterRegistry);
+
+        if (!sessionTimeout.isZero()) {
+            long period = Math.max(1, sessionTimeout.toMillis() / 3);
+            sweeper.scheduleWithFixedDelay(this::expireStaleSessions, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    public void connect(String sessionId, String userDetailId) {
+        if (sessions.putIfAbsent(sessionId, new SessionPresence(userDetailId, System.currentTimeMillis())) == null
+                && sessionCounts.merge(userDetailId, 1, Integer::sum) == 1) {
+            eventPublisher.publishEvent(new PresenceChangedEvent(userDetailId, true));
+        }
+    }
+
+    public void disconnect(String sessionId) {
+        SessionPresence session = sessions.remove(sessionId);
+        if (session != null) {
+            // Dropping to zero removes the user, so the key set is exactly the online users
+            if (sessionCounts.computeIfPresent(session.userDetailId, (id, count) -> count > 1 ? count - 1 : null) == null) {
+                eventPublisher.publishEvent(new PresenceChangedEvent(session.userDetailId, false));
+            }
+        }
+    }
+
+    /**
+     * Record activity on a session, any inbound frame including a heartbeat counts
+     */
+    public void touch(String sessionId) {
+        SessionPresence session = sessions.get(sessionId);
+        if (session != null) {
+            session.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isOnline(String userDetailId) {
+        return userDetailId != null && sessionCounts.containsKey(userDetailId);
+    }
+
+    public int sessionCount(String userDetailId) {
+        return sessionCounts.getOrDefault(userDetailId, 0);
+    }
+
+    /**
+     * Point-in-time copy of the session count per online user
+     */
+    public Map<String, Integer> snapshot() {
+        return Map.copyOf(sessionCounts);
+    }
+
+    public int totalSessions() {
+        return sessions.size();
+    }
+
+    void expireStaleSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTimeout.toMillis();
+        sessions.forEach((sessionId, session) -> {
+            if (session.lastSeen < cutoff) {
+                log.info("Expiring silent WebSocket session {} of user {}", sessionId, session.userDetailId);
+                disconnect(sessionId);
+            }
+        });
+    }
+
+    private static final class SessionPresence {
+        final String userDetailId;
+        volatile long lastSeen;
+
+        SessionPresence(String userDetailId, long lastSeen) {
+            this.userDetailId = userDetailId;
+            this.lastSeen = lastSeen;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.hehe.thesocial.service.role;
+
+import com.hehe.thesocial.entity.Permission;
+import com.hehe.thesocial.entity.Role;
+import com.hehe.thesocial.repository.RoleRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Permissions of every role, so tokens only carry role names and authorization never queries Mongo.
+ * Each reload publishes a new immutable snapshot under the next version. Role edits on this instance reload it right
+ * away, edits made on other instances are picked up by the periodic refresh.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class RolePermissionCache {
+    RoleRepository roleRepository;
+    MeterRegistry meterRegistry;
+
+    AtomicLong version = new AtomicLong();
+    ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "role-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @NonFinal
+    volatile Map<String, Set<String>> permissionsByRole = Map.of();
+
+    @NonFinal
+    @Value("${security.role-cache.refresh-interval:60s}")
+    Duration refreshInterval;
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("auth.role_cache.version", version, AtomicLong::get)
+                .description("Reloads of the role to permissions cache")
+                .register(meterRegistry);
+        reload();
+        refresher.scheduleWithFixedDelay(this::reload, refreshInterval.toMillis(), refreshInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        refresher.shutdownNow();
+    }
+
+    public Set<String> permissionsOf(String roleName) {
+        return permissionsByRole.getOrDefault(roleName, Set.of());
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Reload after a role or its permissions changed
+     */
+    public void invalidate() {
+        reload();
+    }
+
+    synchronized void reload() {
+        try {
+            Map<String, Set<String>> permissions = new HashMap<>();
+            for (Role role : roleRepository.findAll()) {
+                permissions.put(role.getRoleName(), role.getPermissions() == null
+                        ? Set.of()
+                        : role.getPermissions().stream()
+                                .map(Permission::getPermission)
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toUnmodifiableSet()));
+            }
+            permissionsByRole = Map.copyOf(permissions);
+            log.debug("Role cache version {} holds {} role(s)", version.incrementAndGet(), permissions.size());
+        } catch (Exception e) {
+            log.warn("Failed to reload role permissions, keeping version {}: {}", version.get(), e.getMessage());
+        }
+    }
+}
@@ -25,6 +25,7 @@ public class RoleServiceImpl implements RoleService {
     RoleRepository roleRepository;
     PermissionRepository permissionRepository;
     RoleMapper roleMapper;
+    RolePermissionCache rolePermissionCache;
 
     @Override
     public Page<RoleResponse> findAllRolesByPage(Pageable pageable) {
@@ -44,6 +45,7 @@ public class RoleServiceImpl implements RoleService {
     public RoleResponse createRole(RoleRequest request) {
         Role role = roleMapper.toRole(request);
         role = roleRepository.save(role);
+        rolePermissionCache.invalidate();
         return roleMapper.toRoleResponse(role);
     }
 
@@ -57,6 +59,7 @@ public class RoleServiceImpl implements RoleService {
         Role role = roleMapper.toRole(request);
         role.setId(id); // Ensure we're updating the correct role
         role = roleRepository.save(role);
+        rolePermissionCache.invalidate();
 
         return roleMapper.toRoleResponse(role);
     }
@@ -68,6 +71,7 @@ public class RoleServiceImpl implements RoleService {
             throw new AppException(ErrorCode.USER_NOT_FOUND);
         }
         roleRepository.deleteById(id);
+        rolePermissionCache.invalidate();
     }
 
     @Transactional
@@ -81,6 +85,7 @@ public class RoleServiceImpl implements RoleService {
 
         role.getPermissions().add(permission);
         role = roleRepository.save(role);
+        rolePermissionCache.invalidate();
 
         return roleMapper.toRoleResponse(role);
     }
@@ -106,6 +111,7 @@ public class RoleServiceImpl implements RoleService {
                 .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
         role.getPermissions().remove(permission);
         role = roleRepository.save(role);
+        rolePermissionCache.invalidate();
 
         return roleMapper.toRoleResponse(role);
     }
@@ -13,6 +13,7 @@ import com.hehe.thesocial.mapper.user.UserMapper;
 import com.hehe.thesocial.repository.RoleRepository;
 import com.hehe.thesocial.repository.UserDetailRepository;
 import com.hehe.thesocial.repository.UserRepository;
+import com.hehe.thesocial.service.userDetail.UserDetailIdCache;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -34,6 +35,7 @@ public class UserServiceImpl implements UserService {
     UserDetailRepository userDetailRepository;
     RoleRepository roleRepository;
     PasswordEncoder passwordEncoder;
+    UserDetailIdCache userDetailIdCache;
 
     @Override
     public Page<UserResponse> findAllUserBypage(Pageable pageable) {
@@ -106,6 +108,7 @@ public class UserServiceImpl implements UserService {
             throw new RuntimeException(new AppException(ErrorCode.USER_NOT_FOUND));
         }
         userRepository.deleteById(id);
+        userDetailIdCache.evict(id);
     }
 
 
@@ -0,0 +1,54 @@
+package com.hehe.thesocial.service.userDetail;
+
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.repository.UserDetailRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded userId to userDetailId lookup for the WebSocket handshake, so reconnects of known users skip Mongo.
+ * The mapping never changes while the profile exists, entries are evicted when the profile or user is deleted.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class UserDetailIdCache {
+    static int CAPACITY = 10_000;
+
+    UserDetailRepository userDetailRepository;
+    MeterRegistry meterRegistry;
+
+    // Access ordered, so the least recently connected users are dropped first
+    Map<String, String> userDetailIds = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > CAPACITY;
+                }
+            });
+
+    public Optional<String> resolve(String userId) {
+        String cached = userDetailIds.get(userId);
+        if (cached != null) {
+            meterRegistry.counter("chat.handshake.principal_cache", "result", "hit").increment();
+            return Optional.of(cached);
+        }
+
+        meterRegistry.counter("chat.handshake.principal_cache", "result", "miss").increment();
+        Optional<String> userDetailId = userDetailRepository.findIdByUserId(userId).map(UserDetail::getId);
+        userDetailId.ifPresent(id -> userDetailIds.put(userId, id));
+        return userDetailId;
+    }
+
+    public void evict(String userId) {
+        userDetailIds.remove(userId);
+    }
+}
@@ -38,6 +38,7 @@ public class UserDetailServiceImpl implements UserDetailService {
     FileService fileService;
     FileRepository fileRepository;
     UserRepository userRepository;
+    UserDetailIdCache userDetailIdCache;
 
     @Transactional
     public UserDetailResponse createUserDetail(UserDetailCreateRequest request) {
@@ -183,6 +184,7 @@ public class UserDetailServiceImpl implements UserDetailService {
         }
 
         userDetailRepository.delete(userDetail);
+        userDetailIdCache.evict(userDetail.getUser().getId());
     }
 
     @Transactional
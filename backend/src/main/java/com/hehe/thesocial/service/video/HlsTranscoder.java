@@ -0,0 +1,160 @@
+package com.hehe.thesocial.service.video;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameRecorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Transcodes a video into an HLS ladder: H.264/AAC renditions in fixed length segments plus a master playlist.
+ * The source is decoded once and every decoded frame is encoded into all renditions.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HlsTranscoder {
+    static final String MASTER_PLAYLIST = "master.m3u8";
+    static final List<Rendition> LADDER = List.of(
+            new Rendition("240p", 240, 400_000),
+            new Rendition("480p", 480, 1_000_000),
+            new Rendition("720p", 720, 2_500_000));
+
+    @NonFinal
+    @Value("${video.transcode.segment-seconds:4}")
+    int segmentSeconds;
+
+    @NonFinal
+    @Value("${video.transcode.audio-bitrate:96000}")
+    int audioBitrate;
+
+    /**
+     * Write outputDir/master.m3u8 and one directory per rendition, renditions above the source height are skipped
+     *
+     * @param progress receives the share of the source transcoded so far, between 0 and 1
+     * @return the renditions that were written
+     */
+    public List<Rendition> transcode(Path source, Path outputDir, DoubleConsumer progress) throws IOException {
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(source.toFile())) {
+            grabber.start();
+            int sourceWidth = grabber.getImageWidth();
+            int sourceHeight = grabber.getImageHeight();
+            if (sourceWidth <= 0 || sourceHeight <= 0) {
+                throw new IOException(source.getFileName() + " has no video stream");
+            }
+            double frameRate = grabber.getFrameRate() > 0 ? grabber.getFrameRate() : 30;
+            long length = grabber.getLengthInTime();
+
+            List<Rendition> renditions = ladderFor(sourceHeight);
+            List<FFmpegFrameRecorder> recorders = new ArrayList<>();
+            try {
+                for (Rendition rendition : renditions) {
+                    Path directory = Files.createDirectories(outputDir.resolve(rendition.name()));
+                    FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(directory.resolve("index.m3u8").toString(),
+                            rendition.widthFor(sourceWidth, sourceHeight), rendition.height(),
+                            grabber.getAudioChannels());
+                    recorder.setFormat("hls");
+                    recorder.setOption("hls_time", String.valueOf(segmentSeconds));
+                    recorder.setOption("hls_playlist_type", "vod");
+                    recorder.setOption("hls_segment_filename", directory.resolve("segment_%03d.ts").toString());
+                    recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+                    recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+                    recorder.setFrameRate(frameRate);
+                    // A keyframe at every segment boundary so each segment can be decoded on its own
+                    recorder.setGopSize((int) Math.round(frameRate * segmentSeconds));
+                    recorder.setVideoBitrate(rendition.videoBitrate());
+                    if (grabber.getAudioChannels() > 0) {
+                        recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+                        recorder.setSampleRate(grabber.getSampleRate());
+                        recorder.setAudioBitrate(audioBitrate);
+                    }
+                    recorders.add(recorder);
+                    recorder.start();
+                }
+
+                Frame frame;
+                while ((frame = grabber.grabFrame(true, true, true, false)) != null) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Transcoding of " + source.getFileName() + " was interrupted");
+                    }
+                    if (frame.image == null && frame.samples == null) {
+                        continue;
+                    }
+                    for (FFmpegFrameRecorder recorder : recorders) {
+                        if (frame.image != null) {
+                            // Follows the source clock so variable frame rate input keeps its timing
+                            recorder.setTimestamp(Math.max(frame.timestamp, recorder.getTimestamp()));
+                        }
+                        recorder.record(frame);
+                    }
+                    if (length > 0) {
+                        progress.accept(Math.min(1.0, (double) frame.timestamp / length));
+                    }
+                }
+                for (FFmpegFrameRecorder recorder : recorders) {
+                    recorder.stop();
+                }
+            } finally {
+                for (FFmpegFrameRecorder recorder : recorders) {
+                    recorder.release();
+                }
+            }
+
+            writeMasterPlaylist(outputDir, renditions, sourceWidth, sourceHeight, grabber.getAudioChannels() > 0);
+            return renditions;
+        } catch (FrameGrabber.Exception | FrameRecorder.Exception e) {
+            throw new IOException("Failed to transcode " + source.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rungs of the ladder no taller than the source, a source below the lowest rung keeps its own height
+     */
+    static List<Rendition> ladderFor(int sourceHeight) {
+        List<Rendition> renditions = LADDER.stream()
+                .filter(rendition -> rendition.height() <= sourceHeight)
+                .toList();
+        if (renditions.isEmpty()) {
+            Rendition lowest = LADDER.get(0);
+            return List.of(new Rendition(lowest.name(), sourceHeight & ~1, lowest.videoBitrate()));
+        }
+        return renditions;
+    }
+
+    private void writeMasterPlaylist(Path outputDir, List<Rendition> renditions, int sourceWidth, int sourceHeight,
+                                     boolean audio) throws IOException {
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+        for (Rendition rendition : renditions) {
+            int bandwidth = rendition.videoBitrate() + (audio ? audioBitrate : 0);
+            playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth)
+                    .append(",RESOLUTION=").append(rendition.widthFor(sourceWidth, sourceHeight))
+                    .append('x').append(rendition.height()).append('\n')
+                    .append(rendition.name()).append("/index.m3u8\n");
+        }
+        Files.writeString(outputDir.resolve(MASTER_PLAYLIST), playlist);
+    }
+
+    /**
+     * One rung of the ladder, the width follows the source aspect ratio
+     */
+    public record Rendition(String name, int height, int videoBitrate) {
+        int widthFor(int sourceWidth, int sourceHeight) {
+            // H.264 with 4:2:0 chroma needs even dimensions
+            return Math.max(2, (int) Math.round((double) sourceWidth * height / sourceHeight) & ~1);
+        }
+    }
+}
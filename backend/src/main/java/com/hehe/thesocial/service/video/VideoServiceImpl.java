@@ -10,6 +10,7 @@ import com.hehe.thesocial.entity.UserDetail;
 import com.hehe.thesocial.entity.Video;
 import com.hehe.thesocial.mapper.file.FileMapper;
 import com.hehe.thesocial.entity.HashTag;
+import com.hehe.thesocial.entity.enums.TranscodeStatus;
 import com.hehe.thesocial.repository.FileRepository;
 import com.hehe.thesocial.repository.HashTagRepository;
 import com.hehe.thesocial.repository.MetaDataRepository;
@@ -34,6 +35,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
@@ -49,6 +51,7 @@ public class VideoServiceImpl implements VideoService{
     final UserDetailRepository userDetailRepository;
     final MetaDataRepository metaDataRepository;
     final HashTagRepository hashTagRepository;
+    final VideoThumbnailService videoThumbnailService;
     
     @Value("${file.upload-dir:uploads}")
     String uploadDir;
@@ -150,11 +153,16 @@ public class VideoServiceImpl implements VideoService{
                 .description(request.getDescription() != null ? request.getDescription() : "")
                 .metaData(metaData)
                 .hashTags(hashTags)
+                .transcodeStatus(TranscodeStatus.PENDING)
+                .transcodeNextAttemptAt(Instant.now())
                 .build();
 
         video = videoRepository.save(video);
         log.info("Video entity created with ID: {} including MetaData", video.getId());
 
+        // Duration, dimensions and a missing thumbnail are filled in from the file after the response
+        videoThumbnailService.schedule(video.getId());
+
         // Convert to FileResponse
         FileResponse videoFileResponse = fileMapper.toFileResponseFromVideo(video);
         
@@ -0,0 +1,143 @@
+package com.hehe.thesocial.service.video;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads duration and dimensions of a stored video with FFmpeg and renders a JPEG thumbnail from one of its frames
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class VideoThumbnailExtractor {
+    // Share of the duration at which candidate frames are taken, the opening frames are often black or a fade
+    static final double[] CANDIDATE_POSITIONS = {0.1, 0.3, 0.5};
+    // Luma variance above which a frame has enough detail to stop looking further
+    static final double DETAILED_VARIANCE = 400;
+
+    @NonFinal
+    @Value("${video.thumbnail.max-width:480}")
+    int maxWidth;
+
+    @NonFinal
+    @Value("${video.thumbnail.quality:0.8}")
+    float quality;
+
+    /**
+     * Probe the video and, when thumbnail is not null, write the most detailed candidate frame there
+     */
+    public Probe extract(Path video, Path thumbnail) throws IOException {
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(video.toFile());
+             Java2DFrameConverter converter = new Java2DFrameConverter()) {
+            grabber.start();
+            double duration = Math.max(grabber.getLengthInTime(), 0) / 1_000_000.0;
+            int width = grabber.getImageWidth();
+            int height = grabber.getImageHeight();
+            if (thumbnail == null) {
+                return new Probe(duration, width, height, 0, 0);
+            }
+
+            BufferedImage best = null;
+            double bestVariance = -1;
+            for (double position : CANDIDATE_POSITIONS) {
+                if (duration > 0) {
+                    grabber.setTimestamp((long) (duration * position * 1_000_000));
+                }
+                Frame frame = grabber.grabImage();
+                if (frame == null) {
+                    continue;
+                }
+                // The converter reuses its buffer, so the candidate is copied while it is scaled down
+                BufferedImage candidate = scaled(converter.convert(frame));
+                double variance = lumaVariance(candidate);
+                if (variance > bestVariance) {
+                    best = candidate;
+                    bestVariance = variance;
+                }
+                if (variance >= DETAILED_VARIANCE || duration <= 0) {
+                    break;
+                }
+            }
+            if (best == null) {
+                throw new IOException("No video frame could be decoded from " + video.getFileName());
+            }
+
+            writeJpeg(best, thumbnail);
+            return new Probe(duration, width, height, best.getWidth(), best.getHeight());
+        } catch (FrameGrabber.Exception e) {
+            throw new IOException("Failed to read " + video.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private BufferedImage scaled(BufferedImage image) {
+        int width = Math.min(image.getWidth(), maxWidth);
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+
+    /**
+     * Variance of the luma over a sparse grid, flat frames such as black screens and fades score close to zero
+     */
+    static double lumaVariance(BufferedImage image) {
+        int stepX = Math.max(1, image.getWidth() / 32);
+        int stepY = Math.max(1, image.getHeight() / 32);
+        double sum = 0;
+        double squares = 0;
+        int samples = 0;
+        for (int y = 0; y < image.getHeight(); y += stepY) {
+            for (int x = 0; x < image.getWidth(); x += stepX) {
+                int rgb = image.getRGB(x, y);
+                double luma = 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+                sum += luma;
+                squares += luma * luma;
+                samples++;
+            }
+        }
+        double mean = sum / samples;
+        return squares / samples - mean * mean;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (OutputStream file = Files.newOutputStream(target);
+             ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Duration in seconds and dimensions of the video, thumbnail dimensions are 0 when none was written
+     */
+    public record Probe(double duration, int width, int height, int thumbnailWidth, int thumbnailHeight) {
+    }
+}
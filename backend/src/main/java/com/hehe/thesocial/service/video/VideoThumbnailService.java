@@ -0,0 +1,219 @@
+package com.hehe.thesocial.service.video;
+
+import com.hehe.thesocial.dto.event.VideoProcessedEvent;
+import com.hehe.thesocial.entity.FileDocument;
+import com.hehe.thesocial.entity.Video;
+import com.hehe.thesocial.repository.FileRepository;
+import com.hehe.thesocial.repository.VideoRepository;
+import com.hehe.thesocial.service.cluster.ClusterUserMessaging;
+import com.hehe.thesocial.service.file.MediaFileServer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Probes uploaded videos in the background: fills in duration and dimensions, renders a thumbnail when the
+ * uploader did not send one and tells the uploader over /queue/video-updates. Uploads return before any of this
+ * runs. When the queue is full the job is dropped and the video keeps what the client sent.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class VideoThumbnailService {
+    static String DESTINATION = "/queue/video-updates";
+
+    VideoRepository videoRepository;
+    FileRepository fileRepository;
+    MongoTemplate mongoTemplate;
+    VideoThumbnailExtractor videoThumbnailExtractor;
+    ClusterUserMessaging clusterUserMessaging;
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${video.thumbnail.threads:2}")
+    int threads;
+
+    @NonFinal
+    @Value("${video.thumbnail.queue-capacity:100}")
+    int queueCapacity;
+
+    @NonFinal
+    @Value("${file.upload-dir:uploads}")
+    String uploadDir;
+
+    @NonFinal
+    @Value("${server.host}")
+    String serverHost;
+
+    @NonFinal
+    @Value("${server.port:8082}")
+    String serverPort;
+
+    @NonFinal
+    @Value("${server.servlet.context-path:/api/v1}")
+    String contextPath;
+
+    @NonFinal
+    ThreadPoolExecutor executor;
+
+    @NonFinal
+    Timer processing;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "video-thumbnail-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, pool) -> {
+                    meterRegistry.counter("video.thumbnail.jobs", "outcome", "dropped").increment();
+                    log.warn("Video thumbnail queue is full, skipping a job");
+                });
+        Gauge.builder("video.thumbnail.queued", executor, pool -> pool.getQueue().size())
+                .description("Uploaded videos waiting to be probed")
+                .register(meterRegistry);
+        processing = Timer.builder("video.thumbnail.duration")
+                .description("Time to probe a video and render its thumbnail")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue the video for probing, after the surrounding transaction commits when there is one
+     */
+    public void schedule(String videoId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    executor.execute(() -> process(videoId));
+                }
+            });
+        } else {
+            executor.execute(() -> process(videoId));
+        }
+    }
+
+    void process(String videoId) {
+        Video video = videoRepository.findById(videoId).orElse(null);
+        if (video == null || video.getFile() == null) {
+            return;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Path thumbnailPath = null;
+        try {
+            // Public URLs end in .../files/{uploader}/{stored name}
+            String[] parts = video.getFile().getUrl().split("/");
+            String uploader = parts[parts.length - 2];
+            Path source = Paths.get(uploadDir, uploader, parts[parts.length - 1]);
+
+            // A thumbnail chosen by the uploader is kept, the video is then only probed
+            String thumbnailName = null;
+            if (video.getThumbnail() == null) {
+                Path thumbnailDir = Paths.get(uploadDir, "thumbnailImage", uploader);
+                Files.createDirectories(thumbnailDir);
+                thumbnailName = UUID.randomUUID() + ".jpg";
+                thumbnailPath = thumbnailDir.resolve(thumbnailName);
+            }
+
+            VideoThumbnailExtractor.Probe probe = videoThumbnailExtractor.extract(source, thumbnailPath);
+
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(video.getFile().getId())),
+                    new Update().set("width", probe.width()).set("height", probe.height()), FileDocument.class);
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(videoId)),
+                    new Update().set("duration", probe.duration()), Video.class);
+
+            String thumbnailUrl = video.getThumbnail() != null ? video.getThumbnail().getUrl() : null;
+            if (thumbnailPath != null) {
+                FileDocument thumbnail = saveThumbnail(uploader, thumbnailName, thumbnailPath, probe);
+                // Only set while the video still has no thumbnail, an edit may have added one meanwhile
+                boolean attached = mongoTemplate.updateFirst(
+                        Query.query(Criteria.where("_id").is(videoId).and("thumb_url").isNull()),
+                        new Update().set("thumb_url", thumbnail), Video.class).getModifiedCount() > 0;
+                if (attached) {
+                    thumbnailUrl = thumbnail.getUrl();
+                } else {
+                    fileRepository.deleteById(thumbnail.getId());
+                    Files.deleteIfExists(thumbnailPath);
+                }
+            }
+            meterRegistry.counter("video.thumbnail.jobs", "outcome", "processed").increment();
+
+            if (video.getUploader() != null) {
+                clusterUserMessaging.sendToUsers(List.of(video.getUploader().getId()), DESTINATION,
+                        VideoProcessedEvent.builder()
+                                .videoId(videoId)
+                                .thumbnailUrl(thumbnailUrl)
+                                .duration(probe.duration())
+                                .width(probe.width())
+                                .height(probe.height())
+                                .build());
+            }
+        } catch (Exception e) {
+            meterRegistry.counter("video.thumbnail.jobs", "outcome", "failed").increment();
+            log.warn("Failed to probe video {}: {}", videoId, e.getMessage());
+            if (thumbnailPath != null) {
+                try {
+                    Files.deleteIfExists(thumbnailPath);
+                } catch (IOException ignored) {
+                    // Nothing references the partial thumbnail, it is only wasted space
+                }
+            }
+        } finally {
+            sample.stop(processing);
+        }
+    }
+
+    private FileDocument saveThumbnail(String uploader, String thumbnailName, Path thumbnailPath,
+                                       VideoThumbnailExtractor.Probe probe) throws IOException {
+        long size = Files.size(thumbnailPath);
+        String host = (serverHost != null && !serverHost.isEmpty()) ? serverHost : "172.20.82.76";
+        return fileRepository.save(FileDocument.builder()
+                .fileName(thumbnailName)
+                .size(size)
+                .url("http://" + host + ":" + serverPort + contextPath
+                        + "/files/thumbnailImage/" + uploader + "/" + thumbnailName)
+                .format("jpg")
+                .resourceType("image")
+                .width(probe.thumbnailWidth())
+                .height(probe.thumbnailHeight())
+                .etag(MediaFileServer.etagOf(thumbnailName, size))
+                .build());
+    }
+}
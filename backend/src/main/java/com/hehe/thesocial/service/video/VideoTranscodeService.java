@@ -0,0 +1,316 @@
+package com.hehe.thesocial.service.video;
+
+import com.hehe.thesocial.entity.Video;
+import com.hehe.thesocial.entity.enums.TranscodeStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Transcodes uploaded videos into HLS. The videos collection is the queue: uploads start as PENDING, a worker
+ * claims a video by moving it to PROCESSING under a lease it renews on a timer while the job runs, and a failed
+ * attempt goes back to PENDING with a growing delay until max-attempts is reached. Jobs survive restarts, and a video
+ * whose worker died is claimed again once its lease runs out, or marked FAILED if that was its last attempt, so a
+ * source that crashes the worker is not retried forever. The attempt number taken by the claim is the claim token:
+ * every later write of the job matches on it, so a worker whose video was claimed again changes nothing.
+ * Each attempt writes its own directory and hls_url points at it only once it is READY, so the immutable caching of
+ * playlists and segments never serves a mix of two attempts.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Slf4j
+public class VideoTranscodeService {
+    static String QUEUE_INDEX = "transcode_queue_idx";
+    // Progress is written to the video only in steps of this many percent
+    static int PROGRESS_STEP = 5;
+
+    MongoTemplate mongoTemplate;
+    HlsTranscoder hlsTranscoder;
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${video.transcode.workers:1}")
+    int workers;
+
+    @NonFinal
+    @Value("${video.transcode.poll-interval:10s}")
+    Duration pollInterval;
+
+    @NonFinal
+    @Value("${video.transcode.max-attempts:3}")
+    int maxAttempts;
+
+    @NonFinal
+    @Value("${video.transcode.retry-backoff:1m}")
+    Duration retryBackoff;
+
+    @NonFinal
+    @Value("${video.transcode.lease:5m}")
+    Duration lease;
+
+    @NonFinal
+    @Value("${file.upload-dir:uploads}")
+    String uploadDir;
+
+    @NonFinal
+    @Value("${server.host}")
+    String serverHost;
+
+    @NonFinal
+    @Value("${server.port:8082}")
+    String serverPort;
+
+    @NonFinal
+    @Value("${server.servlet.context-path:/api/v1}")
+    String contextPath;
+
+    @NonFinal
+    ScheduledExecutorService scheduler;
+
+    @NonFinal
+    ScheduledExecutorService leaseRenewer;
+
+    @NonFinal
+    Timer transcoding;
+
+    @PostConstruct
+    void start() {
+        transcoding = Timer.builder("video.transcode.duration")
+                .description("Time to transcode one video into its HLS ladder")
+                .register(meterRegistry);
+        ensureQueueIndex();
+        AtomicInteger threadNumber = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "video-transcode-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            scheduler.scheduleWithFixedDelay(this::drain, pollInterval.toMillis(), pollInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+        leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "video-transcode-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        // An interrupted job stays PROCESSING and is claimed again when its lease runs out
+        scheduler.shutdownNow();
+        leaseRenewer.shutdownNow();
+    }
+
+    /**
+     * Transcode queued videos until none is due
+     */
+    void drain() {
+        try {
+            failAbandoned();
+            Video video;
+            while (!Thread.currentThread().isInterrupted() && (video = claim()) != null) {
+                transcode(video);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to poll the transcoding queue: {}", e.getMessage());
+        }
+    }
+
+    private Video claim() {
+        Instant now = Instant.now();
+        Query due = Query.query(new Criteria().orOperator(
+                        Criteria.where("transcode_status").is(TranscodeStatus.PENDING)
+                                .and("transcode_next_attempt_at").lte(now),
+                        Criteria.where("transcode_status").is(TranscodeStatus.PROCESSING)
+                                .and("transcode_lease_until").lt(now)
+                                .and("transcode_attempts").lt(maxAttempts)))
+                .with(Sort.by("transcode_next_attempt_at"));
+        return mongoTemplate.findAndModify(due, new Update()
+                        .set("transcode_status", TranscodeStatus.PROCESSING)
+                        .set("transcode_lease_until", now.plus(lease))
+                        .set("transcode_progress", 0)
+                        .inc("transcode_attempts", 1),
+                FindAndModifyOptions.options().returnNew(true), Video.class);
+    }
+
+    /**
+     * Give up on videos whose worker died during the last allowed attempt, claim never picks those up again
+     */
+    private void failAbandoned() {
+        long failed = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("transcode_status").is(TranscodeStatus.PROCESSING)
+                        .and("transcode_lease_until").lt(Instant.now())
+                        .and("transcode_attempts").gte(maxAttempts)),
+                new Update()
+                        .set("transcode_status", TranscodeStatus.FAILED)
+                        .set("transcode_error", "The transcoding worker stopped during the last attempt")
+                        .unset("transcode_lease_until"),
+                Video.class).getModifiedCount();
+        if (failed > 0) {
+            meterRegistry.counter("video.transcode.jobs", "outcome", "failed").increment(failed);
+            log.error("Gave up on {} videos whose worker stopped during the last attempt, serving the originals",
+                    failed);
+        }
+    }
+
+    void transcode(Video video) {
+        String videoId = video.getId();
+        String attempt = String.valueOf(video.getTranscodeAttempts());
+        Path output = Paths.get(uploadDir, "hls", videoId, attempt);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // Renewed independently of progress, which can stall on a long segment or never come for an unknown length
+        long renewEvery = Math.max(1, lease.toMillis() / 3);
+        ScheduledFuture<?> renewal = leaseRenewer.scheduleAtFixedRate(() -> renewLease(video), renewEvery, renewEvery,
+                TimeUnit.MILLISECONDS);
+        try {
+            // Public URLs end in .../files/{uploader}/{stored name}
+            String[] parts = video.getFile().getUrl().split("/");
+            Path source = Paths.get(uploadDir, parts[parts.length - 2], parts[parts.length - 1]);
+
+            // Whatever an earlier run of this attempt left behind is not reused
+            FileSystemUtils.deleteRecursively(output);
+            AtomicInteger reported = new AtomicInteger();
+            hlsTranscoder.transcode(source, output, fraction -> reportProgress(video, fraction, reported));
+
+            String host = (serverHost != null && !serverHost.isEmpty()) ? serverHost : "172.20.82.76";
+            String hlsUrl = "http://" + host + ":" + serverPort + contextPath
+                    + "/files/hls/" + videoId + "/" + attempt + "/" + HlsTranscoder.MASTER_PLAYLIST;
+            boolean owned = mongoTemplate.updateFirst(claimed(video), new Update()
+                    .set("transcode_status", TranscodeStatus.READY)
+                    .set("transcode_progress", 100)
+                    .set("hls_url", hlsUrl)
+                    .unset("transcode_lease_until")
+                    .unset("transcode_error"), Video.class).getModifiedCount() > 0;
+            if (!owned) {
+                log.warn("Video {} was claimed again while attempt {} ran, dropping its output", videoId, attempt);
+                FileSystemUtils.deleteRecursively(output);
+                return;
+            }
+            removeOtherAttempts(output);
+            meterRegistry.counter("video.transcode.jobs", "outcome", "ready").increment();
+            log.info("Transcoded video {} to {}", videoId, hlsUrl);
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+            log.info("Transcoding of video {} stopped, it is retried once its lease expires", videoId);
+        } catch (Exception e) {
+            fail(video, output, e);
+        } finally {
+            renewal.cancel(false);
+            sample.stop(transcoding);
+        }
+    }
+
+    /**
+     * The video as long as it is still claimed by the attempt that was handed to this worker
+     */
+    private static Query claimed(Video video) {
+        return Query.query(Criteria.where("_id").is(video.getId())
+                .and("transcode_status").is(TranscodeStatus.PROCESSING)
+                .and("transcode_attempts").is(video.getTranscodeAttempts()));
+    }
+
+    private void renewLease(Video video) {
+        try {
+            if (mongoTemplate.updateFirst(claimed(video),
+                    new Update().set("transcode_lease_until", Instant.now().plus(lease)),
+                    Video.class).getModifiedCount() == 0) {
+                log.warn("Lost the claim on video {} during attempt {}", video.getId(), video.getTranscodeAttempts());
+            }
+        } catch (Exception e) {
+            log.warn("Failed to renew the transcoding lease of video {}: {}", video.getId(), e.getMessage());
+        }
+    }
+
+    private void reportProgress(Video video, double fraction, AtomicInteger reported) {
+        int percent = (int) (fraction * 100);
+        if (percent < 100 && percent >= reported.get() + PROGRESS_STEP) {
+            reported.set(percent);
+            mongoTemplate.updateFirst(claimed(video), new Update().set("transcode_progress", percent), Video.class);
+        }
+    }
+
+    /**
+     * Drop the directories of earlier attempts once this one is served, best effort
+     */
+    private void removeOtherAttempts(Path output) {
+        try (Stream<Path> attempts = Files.list(output.getParent())) {
+            for (Path other : attempts.filter(path -> !path.equals(output)).toList()) {
+                FileSystemUtils.deleteRecursively(other);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to remove earlier HLS attempts next to {}: {}", output, e.getMessage());
+        }
+    }
+
+    private void fail(Video video, Path output, Exception cause) {
+        try {
+            FileSystemUtils.deleteRecursively(output);
+        } catch (IOException e) {
+            log.warn("Failed to remove partial HLS output {}: {}", output, e.getMessage());
+        }
+
+        // The claim already counted this attempt
+        int attempts = video.getTranscodeAttempts();
+        Update update = new Update()
+                .set("transcode_error", cause.getMessage())
+                .unset("transcode_lease_until");
+        if (attempts < maxAttempts) {
+            Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 16));
+            update.set("transcode_status", TranscodeStatus.PENDING)
+                    .set("transcode_next_attempt_at", Instant.now().plus(delay));
+            meterRegistry.counter("video.transcode.jobs", "outcome", "retried").increment();
+            log.warn("Transcoding video {} failed on attempt {}, retrying in {}: {}",
+                    video.getId(), attempts, delay, cause.getMessage());
+        } else {
+            update.set("transcode_status", TranscodeStatus.FAILED);
+            meterRegistry.counter("video.transcode.jobs", "outcome", "failed").increment();
+            log.error("Transcoding video {} failed after {} attempts, serving the original: {}",
+                    video.getId(), attempts, cause.getMessage());
+        }
+        mongoTemplate.updateFirst(claimed(video), update, Video.class);
+    }
+
+    private void ensureQueueIndex() {
+        try {
+            mongoTemplate.indexOps(Video.class).ensureIndex(new Index()
+                    .on("transcode_status", Sort.Direction.ASC)
+                    .on("transcode_next_attempt_at", Sort.Direction.ASC)
+                    .named(QUEUE_INDEX));
+        } catch (Exception e) {
+            log.warn("Could not create the transcoding queue index on videos: {}", e.getMessage());
+        }
+    }
+}
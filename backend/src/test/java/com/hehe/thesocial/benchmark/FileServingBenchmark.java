@@ -0,0 +1,149 @@
+package com.hehe.thesocial.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.StreamUtils;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of writing a stored file to a client socket (loopback, drained by a background thread).
+ * {@code heapCopy} is the previous UrlResource path: the file is read through a heap buffer and copied into the
+ * socket stream. {@code transferToSocket} is what MediaFileServer gets from Tomcat's sendfile, and
+ * {@code transferToStream} is its fallback when sendfile is unavailable, transferTo into the servlet output stream.
+ * Each operation serves the whole file, so throughput in ops/s times {@code fileMegabytes} is MB/s, and
+ * gc.alloc.rate.norm times 1024 / {@code fileMegabytes} is the heap allocated per GB served.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.hehe.thesocial.benchmark.FileServingBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileServingBenchmark {
+    @Param({"64"})
+    int fileMegabytes;
+
+    Path file;
+    ServerSocketChannel server;
+    SocketChannel client;
+    Thread drain;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Files.createTempFile("serving-benchmark", ".mp4");
+        byte[] chunk = new byte[1024 * 1024];
+        ThreadLocalRandom.current().nextBytes(chunk);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < fileMegabytes; i++) {
+                out.write(chunk);
+            }
+        }
+        // Page cache warm, so the benchmark measures the copy rather than the disk
+        try (InputStream in = Files.newInputStream(file)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel peer = server.accept();
+        drain = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+            try {
+                while (peer.read(buffer.clear()) >= 0) {
+                    // discard
+                }
+            } catch (Exception ignored) {
+                // closed at tear down
+            }
+        }, "socket-drain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+        drain.join(1000);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long heapCopy() throws Exception {
+        try (InputStream in = Files.newInputStream(file)) {
+            return StreamUtils.copy(in, Channels.newOutputStream(client));
+        }
+    }
+
+    @Benchmark
+    public long transferToSocket() throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return transfer(channel, client);
+        }
+    }
+
+    @Benchmark
+    public long transferToStream() throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return transfer(channel, Channels.newChannel(Channels.newOutputStream(client)));
+        }
+    }
+
+    private static long transfer(FileChannel channel, WritableByteChannel target) throws Exception {
+        long position = 0;
+        long size = channel.size();
+        while (position < size) {
+            position += channel.transferTo(position, size - position, target);
+        }
+        return position;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // exec:java runs in Maven's JVM, the forked benchmark JVM needs the test classpath instead of Maven's
+        if (Thread.currentThread().getContextClassLoader() instanceof URLClassLoader classLoader) {
+            System.setProperty("java.class.path", Arrays.stream(classLoader.getURLs())
+                    .map(url -> new File(URI.create(url.toString())).getPath())
+                    .collect(Collectors.joining(File.pathSeparator)));
+        }
+        new Runner(new OptionsBuilder()
+                .include(FileServingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
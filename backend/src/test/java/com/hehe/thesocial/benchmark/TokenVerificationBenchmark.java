@@ -0,0 +1,134 @@
+package com.hehe.thesocial.benchmark;
+
+import com.hehe.thesocial.config.CustomJwtDecoder;
+import com.hehe.thesocial.repository.InvalidTokenRepository;
+import com.hehe.thesocial.service.authentication.TokenRevocationList;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Per-request cost of authenticating a bearer token.
+ * {@code legacy} is the previous path: introspection (MAC check and an invalid_tokens lookup) followed by a second MAC
+ * check in a NimbusJwtDecoder. {@code singlePass} is the current CustomJwtDecoder with the in-memory revocation list.
+ * The Mongo lookup is simulated by parking for {@code lookupMicros}, 0 isolates the CPU cost.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.hehe.thesocial.benchmark.TokenVerificationBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenVerificationBenchmark {
+    static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret-benchmark-secret";
+
+    @Param({"0", "300"})
+    long lookupMicros;
+
+    String token;
+    InvalidTokenRepository invalidTokenRepository;
+    CustomJwtDecoder customJwtDecoder;
+
+    @Setup
+    public void setUp() throws Exception {
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.HS512), new JWTClaimsSet.Builder()
+                .subject("user-1")
+                .issueTime(new Date())
+                .expirationTime(Date.from(Instant.now().plusSeconds(3600)))
+                .jwtID(UUID.randomUUID().toString())
+                .claim("scope", "ROLE_USER")
+                .build());
+        signedJWT.sign(new MACSigner(SECRET.getBytes()));
+        token = signedJWT.serialize();
+
+        invalidTokenRepository = (InvalidTokenRepository) Proxy.newProxyInstance(
+                InvalidTokenRepository.class.getClassLoader(),
+                new Class<?>[]{InvalidTokenRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "existsById" -> {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(lookupMicros));
+                        yield false;
+                    }
+                    case "findByExpireAtAfter", "findByRevokedAtAfter" -> List.of();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+
+        TokenRevocationList tokenRevocationList = new TokenRevocationList(invalidTokenRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenRevocationList, "refreshInterval", Duration.ofHours(1));
+        ReflectionTestUtils.invokeMethod(tokenRevocationList, "refresh");
+
+        customJwtDecoder = new CustomJwtDecoder(tokenRevocationList);
+        ReflectionTestUtils.setField(customJwtDecoder, "JWT_SECRET", SECRET);
+        ReflectionTestUtils.invokeMethod(customJwtDecoder, "init");
+    }
+
+    @Benchmark
+    public Jwt legacy() throws Exception {
+        SignedJWT signedJWT = SignedJWT.parse(token);
+        if (!signedJWT.verify(new MACVerifier(SECRET.getBytes()))
+                || signedJWT.getJWTClaimsSet().getExpirationTime().before(new Date())
+                || invalidTokenRepository.existsById(signedJWT.getJWTClaimsSet().getJWTID())) {
+            throw new IllegalStateException("token rejected");
+        }
+        NimbusJwtDecoder decoder = NimbusJwtDecoder.withSecretKey(new SecretKeySpec(SECRET.getBytes(), "HS512"))
+                .macAlgorithm(MacAlgorithm.HS512)
+                .build();
+        return decoder.decode(token);
+    }
+
+    @Benchmark
+    public Jwt singlePass() {
+        return customJwtDecoder.decode(token);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // exec:java runs in Maven's JVM, the forked benchmark JVM needs the test classpath instead of Maven's
+        if (Thread.currentThread().getContextClassLoader() instanceof URLClassLoader classLoader) {
+            System.setProperty("java.class.path", Arrays.stream(classLoader.getURLs())
+                    .map(url -> new File(URI.create(url.toString())).getPath())
+                    .collect(Collectors.joining(File.pathSeparator)));
+        }
+        new Runner(new OptionsBuilder()
+                .include(TokenVerificationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
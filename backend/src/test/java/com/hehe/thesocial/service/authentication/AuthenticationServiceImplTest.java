@@ -0,0 +1,146 @@
+package com.hehe.thesocial.service.authentication;
+
+import com.hehe.thesocial.dto.request.auth.AuthenticateRequest;
+import com.hehe.thesocial.dto.request.auth.LogoutRequest;
+import com.hehe.thesocial.entity.InvalidToken;
+import com.hehe.thesocial.entity.User;
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.exception.ErrorCode;
+import com.hehe.thesocial.repository.InvalidTokenRepository;
+import com.hehe.thesocial.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuthenticationServiceImplTest {
+    static final String PASSWORD = "secret-password";
+
+    UserRepository userRepository;
+    MongoTemplate mongoTemplate;
+    PasswordEncoder passwordEncoder;
+    LoginExecutor loginExecutor;
+    InvalidTokenRepository invalidTokenRepository;
+    AuthenticationServiceImpl authenticationService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        AdaptiveBCryptPasswordEncoder bcrypt = new AdaptiveBCryptPasswordEncoder(5);
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+        delegating.setDefaultPasswordEncoderForMatches(bcrypt);
+        passwordEncoder = delegating;
+
+        loginExecutor = new LoginExecutor(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(loginExecutor, "poolSize", 1);
+        ReflectionTestUtils.setField(loginExecutor, "queueCapacity", 1);
+        loginExecutor.start();
+
+        invalidTokenRepository = mock(InvalidTokenRepository.class);
+        authenticationService = new AuthenticationServiceImpl(userRepository, passwordEncoder,
+                invalidTokenRepository, mock(TokenRevocationList.class), loginExecutor, mongoTemplate);
+        ReflectionTestUtils.setField(authenticationService, "JWT_DURATION", 3600L);
+        ReflectionTestUtils.setField(authenticationService, "JWT_REFRESH_DURATION", 3600L);
+        ReflectionTestUtils.setField(authenticationService, "JWT_SECRET", "s".repeat(64));
+    }
+
+    @AfterEach
+    void tearDown() {
+        loginExecutor.stop();
+    }
+
+    @Test
+    void authenticate_rehashesLegacyPasswordOnceAtTheTargetCost() throws Exception {
+        String legacyHash = new BCryptPasswordEncoder(4).encode(PASSWORD);
+        User user = user(legacyHash);
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user));
+
+        assertNotNull(authenticationService.authenticateAsync(request()).get(10, TimeUnit.SECONDS).getToken());
+
+        Update update = (Update) mockingDetails(mongoTemplate).getInvocations().iterator().next().getArgument(1);
+        String rehashed = (String) update.getUpdateObject().get("$set", Document.class).get("password");
+        assertTrue(rehashed.startsWith("{bcrypt}$2a$05$"));
+        assertTrue(passwordEncoder.matches(PASSWORD, rehashed));
+        assertFalse(passwordEncoder.upgradeEncoding(rehashed));
+
+        // Already at the target cost, nothing more to write
+        user.setPassword(rehashed);
+        authenticationService.authenticate(request());
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(User.class));
+    }
+
+    @Test
+    void authenticateAsync_rejectsAttemptsBeyondTheLoginQueue() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(userRepository.findByUsername("alice")).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return Optional.of(user(passwordEncoder.encode(PASSWORD)));
+        });
+
+        var running = authenticationService.authenticateAsync(request());
+        var queued = authenticationService.authenticateAsync(request());
+        AppException rejected = assertThrows(AppException.class,
+                () -> authenticationService.authenticateAsync(request()));
+        assertEquals(ErrorCode.TOO_MANY_LOGIN_ATTEMPTS, rejected.getErrorCode());
+
+        release.countDown();
+        assertNotNull(running.get(10, TimeUnit.SECONDS).getToken());
+        assertNotNull(queued.get(10, TimeUnit.SECONDS).getToken());
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(User.class));
+    }
+
+    @Test
+    void logout_storesTheRevocationSoOtherInstancesFindItOnTheirNextRefresh() {
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user(passwordEncoder.encode(PASSWORD))));
+        String token = authenticationService.authenticate(request()).getToken();
+        Date before = new Date(System.currentTimeMillis() - 1);
+
+        authenticationService.logout(LogoutRequest.builder().token(token).build());
+
+        ArgumentCaptor<InvalidToken> saved = ArgumentCaptor.forClass(InvalidToken.class);
+        verify(invalidTokenRepository).save(saved.capture());
+        // TokenRevocationList.refresh reads new revocations by revoked_at
+        assertNotNull(saved.getValue().getRevokedAt());
+        assertTrue(saved.getValue().getRevokedAt().after(before));
+    }
+
+    private static User user(String passwordHash) {
+        User user = User.builder().id("user-1").username("alice").password(passwordHash).roles(new HashSet<>()).build();
+        user.setEnable(true);
+        return user;
+    }
+
+    private static AuthenticateRequest request() {
+        return AuthenticateRequest.builder().username("alice").password(PASSWORD).build();
+    }
+}
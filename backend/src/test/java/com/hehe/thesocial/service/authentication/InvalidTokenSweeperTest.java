@@ -0,0 +1,43 @@
+package com.hehe.thesocial.service.authentication;
+
+import com.hehe.thesocial.repository.InvalidTokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InvalidTokenSweeperTest {
+
+    @Test
+    void sweep_deletesTokensPastTheirRefreshWindowAndReportsWhatIsLeft() {
+        InvalidTokenRepository invalidTokenRepository = mock(InvalidTokenRepository.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        InvalidTokenSweeper sweeper = new InvalidTokenSweeper(invalidTokenRepository, mock(MongoTemplate.class), meterRegistry);
+        ReflectionTestUtils.setField(sweeper, "refreshableSeconds", 3600L);
+        ReflectionTestUtils.setField(sweeper, "sweepInterval", Duration.ofHours(1));
+        when(invalidTokenRepository.deleteByExpireAtBefore(any())).thenReturn(7L);
+        when(invalidTokenRepository.count()).thenReturn(42L);
+
+        sweeper.sweep();
+
+        ArgumentCaptor<Date> cutoff = ArgumentCaptor.forClass(Date.class);
+        verify(invalidTokenRepository).deleteByExpireAtBefore(cutoff.capture());
+        long expectedCutoff = Instant.now().minusSeconds(3600).toEpochMilli();
+        assertTrue(Math.abs(cutoff.getValue().getTime() - expectedCutoff) < 5_000);
+        assertEquals(7.0, meterRegistry.get("auth.invalid_tokens.swept").counter().count());
+        assertEquals(42L, ((AtomicLong) ReflectionTestUtils.getField(sweeper, "storedTokens")).get());
+    }
+}
@@ -0,0 +1,73 @@
+package com.hehe.thesocial.service.authentication;
+
+import com.hehe.thesocial.entity.InvalidToken;
+import com.hehe.thesocial.repository.InvalidTokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenRevocationListTest {
+    InvalidTokenRepository invalidTokenRepository;
+    TokenRevocationList tokenRevocationList;
+    // Revocations persisted by other instances
+    List<InvalidToken> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        invalidTokenRepository = mock(InvalidTokenRepository.class);
+        tokenRevocationList = new TokenRevocationList(invalidTokenRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(tokenRevocationList, "refreshableSeconds", 60L);
+        // Answers like the query does, so a revocation without revoked_at is never picked up
+        when(invalidTokenRepository.findByRevokedAtAfter(any())).thenAnswer(invocation -> stored.stream()
+                .filter(token -> token.getRevokedAt() != null
+                        && token.getRevokedAt().after(invocation.getArgument(0)))
+                .toList());
+    }
+
+    @Test
+    void isRevoked_answersFromMemoryOnceLoadedAndPicksUpNewRevocations() {
+        Date inAnHour = Date.from(Instant.now().plusSeconds(3600));
+        when(invalidTokenRepository.findByExpireAtAfter(any()))
+                .thenReturn(List.of(InvalidToken.builder().id("jti-loaded").expireAt(inAnHour).build()));
+        tokenRevocationList.refresh();
+
+        assertTrue(tokenRevocationList.isRevoked("jti-loaded"));
+        assertFalse(tokenRevocationList.isRevoked("jti-valid"));
+        verify(invalidTokenRepository, never()).existsById(any());
+
+        // Revoked on another instance
+        stored.add(InvalidToken.builder().id("jti-remote").expireAt(inAnHour).revokedAt(new Date()).build());
+        tokenRevocationList.refresh();
+        assertTrue(tokenRevocationList.isRevoked("jti-remote"));
+
+        tokenRevocationList.revoke("jti-local", inAnHour);
+        assertTrue(tokenRevocationList.isRevoked("jti-local"));
+    }
+
+    @Test
+    void refresh_dropsTokensThatCanNoLongerBeRefreshed() {
+        when(invalidTokenRepository.findByExpireAtAfter(any())).thenReturn(List.of());
+        tokenRevocationList.refresh();
+
+        tokenRevocationList.revoke("jti-expired", Date.from(Instant.now().minusSeconds(120)));
+        tokenRevocationList.revoke("jti-refreshable", Date.from(Instant.now().minusSeconds(30)));
+        tokenRevocationList.refresh();
+
+        assertFalse(tokenRevocationList.isRevoked("jti-expired"));
+        assertTrue(tokenRevocationList.isRevoked("jti-refreshable"));
+    }
+}
@@ -0,0 +1,294 @@
+package com.hehe.thesocial.service.chatMessage;
+
+import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.dto.response.chat.ChatMessageSliceResponse;
+import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.FileDocument;
+import com.hehe.thesocial.entity.InboxEntry;
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.dto.event.ReadStatusEventDTO;
+import com.hehe.thesocial.entity.enums.ConversationType;
+import com.hehe.thesocial.entity.enums.ReadReceiptMode;
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.mapper.chatMessage.ChatMessageMapper;
+import com.hehe.thesocial.mapper.chatMessage.ChatMessageMapperImpl;
+import com.hehe.thesocial.repository.ChatMessageRepository;
+import com.hehe.thesocial.repository.ConversationRepository;
+import com.hehe.thesocial.repository.UserDetailRepository;
+import com.hehe.thesocial.service.inbox.InboxService;
+import com.hehe.thesocial.service.kafka.KafkaProducer;
+import com.hehe.thesocial.service.kafka.ReadStatusCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatMessageServiceImplTest {
+    static final String CONVERSATION_ID = "conversation-1";
+    static final String CURRENT_USER_ID = "user-1";
+    static final String CURRENT_USER_DETAIL_ID = "detail-0";
+    static final int SENDER_COUNT = 5;
+
+    ChatMessageRepository chatMessageRepository;
+    UserDetailRepository userDetailRepository;
+    ConversationRepository conversationRepository;
+    InboxService inboxService;
+    ReadStatusCoalescer readStatusCoalescer;
+    ChatMessageServiceImpl chatMessageService;
+    List<UserDetail> participants;
+
+    @BeforeEach
+    void setUp() {
+        chatMessageRepository = mock(ChatMessageRepository.class);
+        userDetailRepository = mock(UserDetailRepository.class);
+        conversationRepository = mock(ConversationRepository.class);
+        inboxService = mock(InboxService.class);
+        readStatusCoalescer = mock(ReadStatusCoalescer.class);
+
+        ChatMessageMapper chatMessageMapper = new ChatMessageMapperImpl();
+        chatMessageService = new ChatMessageServiceImpl(
+                chatMessageRepository,
+                chatMessageMapper,
+                mock(KafkaProducer.class),
+                readStatusCoalescer,
+                userDetailRepository,
+                conversationRepository,
+                new ChatMessageHydrator(chatMessageMapper, userDetailRepository),
+                inboxService,
+                new ChatSendDispatcher(new SimpleMeterRegistry()));
+
+        participants = IntStream.range(0, SENDER_COUNT)
+                .mapToObj(i -> UserDetail.builder()
+                        .id("detail-" + i)
+                        .avatar(FileDocument.builder().id("avatar-" + i).build())
+                        .build())
+                .toList();
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(CURRENT_USER_ID, null));
+        when(userDetailRepository.findByUserId(CURRENT_USER_ID)).thenReturn(Optional.of(participants.get(0)));
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(Conversation.builder()
+                .conversationId(CONVERSATION_ID)
+                .conversationType(ConversationType.GROUP)
+                .userDetails(Set.copyOf(participants))
+                .build()));
+        when(userDetailRepository.findByIdIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            return participants.stream().filter(p -> ids.contains(p.getId())).toList();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 20, 50, 200})
+    void getAllChatMessageByConversationId_resolvesSendersWithOneQueryPerPage(int pageSize) {
+        List<ChatMessage> messages = IntStream.range(0, pageSize)
+                .mapToObj(i -> message("message-" + i, "detail-" + (i % SENDER_COUNT)))
+                .toList();
+        PageRequest pageable = PageRequest.of(0, pageSize);
+        when(chatMessageRepository.findAllByConversationId(eq(CONVERSATION_ID), any()))
+                .thenReturn(new PageImpl<>(messages, pageable, pageSize));
+
+        Page<ChatMessageResponse> page = chatMessageService.getAllChatMessageByConversationId(CONVERSATION_ID, pageable);
+
+        assertEquals(pageSize, page.getNumberOfElements());
+        verify(userDetailRepository, times(1)).findByIdIn(anyCollection());
+        verify(userDetailRepository, never()).findById(anyString());
+        verify(userDetailRepository, never()).findAllById(any());
+        verify(chatMessageRepository, times(1)).findAllByConversationId(eq(CONVERSATION_ID), any());
+    }
+
+    @Test
+    void getAllChatMessageByConversationId_populatesAvatarAndReadStatus() {
+        ChatMessage own = message("message-own", CURRENT_USER_DETAIL_ID);
+        ChatMessage read = message("message-read", "detail-1");
+        read.getReadParticipantsId().add(CURRENT_USER_DETAIL_ID);
+        ChatMessage unknownSender = message("message-unknown", "detail-missing");
+        PageRequest pageable = PageRequest.of(0, 20);
+        when(chatMessageRepository.findAllByConversationId(eq(CONVERSATION_ID), any()))
+                .thenReturn(new PageImpl<>(List.of(own, read, unknownSender), pageable, 3));
+
+        List<ChatMessageResponse> responses = chatMessageService
+                .getAllChatMessageByConversationId(CONVERSATION_ID, pageable)
+                .getContent();
+
+        assertEquals("me", responses.get(0).getSender());
+        assertEquals("avatar-0", responses.get(0).getAvatar().getId());
+        assertFalse(responses.get(0).getIsReadByCurrentUser());
+
+        assertEquals("other", responses.get(1).getSender());
+        assertEquals("avatar-1", responses.get(1).getAvatar().getId());
+        assertTrue(responses.get(1).getIsReadByCurrentUser());
+        assertEquals(1, responses.get(1).getReadCount());
+
+        assertEquals("other", responses.get(2).getSender());
+        assertNull(responses.get(2).getAvatar());
+        verify(userDetailRepository, times(1)).findByIdIn(anyCollection());
+    }
+
+    @Test
+    void getChatMessagesBefore_pagesByCursorWithoutCounting() {
+        LocalDateTime now = LocalDateTime.of(2024, 5, 1, 12, 0);
+        List<ChatMessage> firstSlice = List.of(
+                message("message-3", "detail-1", now.minusMinutes(1)),
+                message("message-2", "detail-2", now.minusMinutes(2)));
+        when(chatMessageRepository.findSliceByConversationId(eq(CONVERSATION_ID), any()))
+                .thenReturn(new SliceImpl<>(firstSlice, PageRequest.of(0, 2), true));
+
+        ChatMessageSliceResponse first = chatMessageService.getChatMessagesBefore(CONVERSATION_ID, null, 2);
+
+        assertEquals(2, first.getSize());
+        assertTrue(first.getHasNext());
+        assertEquals(now.minusMinutes(2) + ",message-2", first.getNextCursor());
+
+        when(chatMessageRepository.findSliceByConversationIdBefore(
+                eq(CONVERSATION_ID), eq(now.minusMinutes(2)), eq("message-2"), any()))
+                .thenReturn(new SliceImpl<>(List.of(message("message-1", "detail-1", now.minusMinutes(3))),
+                        PageRequest.of(0, 2), false));
+
+        ChatMessageSliceResponse second = chatMessageService
+                .getChatMessagesBefore(CONVERSATION_ID, first.getNextCursor(), 2);
+
+        assertEquals("message-1", second.getContent().get(0).getId());
+        assertFalse(second.getHasNext());
+        assertNull(second.getNextCursor());
+        verify(chatMessageRepository, never()).findAllByConversationId(anyString(), any());
+    }
+
+    @Test
+    void getChatMessagesBefore_rejectsMalformedCursor() {
+        assertThrows(AppException.class,
+                () -> chatMessageService.getChatMessagesBefore(CONVERSATION_ID, "not-a-cursor", 20));
+        assertThrows(AppException.class,
+                () -> chatMessageService.getChatMessagesBefore(CONVERSATION_ID, "yesterday,message-1", 20));
+    }
+
+    @Test
+    void markConversationMessagesAsRead_advancesWatermarkWithSingleBulkUpdate() {
+        LocalDateTime previousWatermark = LocalDateTime.of(2024, 5, 1, 12, 0);
+        ChatMessage newest = message("message-3", "detail-1", previousWatermark.plusMinutes(3));
+        List<ChatMessage> unread = List.of(
+                message("message-2", "detail-1", previousWatermark.plusMinutes(2)),
+                message("message-1", "detail-2", previousWatermark.plusMinutes(1)));
+        when(chatMessageRepository.findFirstByConversationIdOrderByCreatedAtDesc(CONVERSATION_ID))
+                .thenReturn(Optional.of(newest));
+        when(inboxService.getEntry(CURRENT_USER_DETAIL_ID, CONVERSATION_ID)).thenReturn(Optional.of(InboxEntry.builder()
+                .ownerId(CURRENT_USER_DETAIL_ID)
+                .conversationId(CONVERSATION_ID)
+                .lastReadAt(previousWatermark)
+                .build()));
+        when(chatMessageRepository.findUnreadBetween(
+                CONVERSATION_ID, CURRENT_USER_DETAIL_ID, previousWatermark, newest.getCreatedAt()))
+                .thenReturn(unread);
+
+        chatMessageService.markConversationMessagesAsRead(CONVERSATION_ID);
+
+        verify(inboxService).advanceReadWatermark(CONVERSATION_ID, CURRENT_USER_DETAIL_ID, newest);
+        verify(chatMessageRepository, times(1)).markReadBetween(
+                CONVERSATION_ID, CURRENT_USER_DETAIL_ID, previousWatermark, newest.getCreatedAt());
+        verify(chatMessageRepository, never()).saveAll(any());
+        verify(readStatusCoalescer, times(unread.size())).submit(any());
+    }
+
+    @Test
+    void markConversationMessagesAsRead_inWatermarkModeSendsOneEventAndWritesNoMessages() {
+        ReflectionTestUtils.setField(chatMessageService, "readReceiptMode", ReadReceiptMode.WATERMARK);
+        LocalDateTime now = LocalDateTime.of(2024, 5, 1, 12, 0);
+        ChatMessage newest = message("message-3", "detail-1", now);
+        when(chatMessageRepository.findFirstByConversationIdOrderByCreatedAtDesc(CONVERSATION_ID))
+                .thenReturn(Optional.of(newest));
+        when(inboxService.advanceReadWatermark(CONVERSATION_ID, CURRENT_USER_DETAIL_ID, newest)).thenReturn(true);
+        when(inboxService.getReadWatermarks(CONVERSATION_ID)).thenReturn(Map.of(
+                CURRENT_USER_DETAIL_ID, now,
+                "detail-1", now,
+                "detail-2", now.minusMinutes(5)));
+
+        chatMessageService.markConversationMessagesAsRead(CONVERSATION_ID);
+
+        ArgumentCaptor<ReadStatusEventDTO> event = ArgumentCaptor.forClass(ReadStatusEventDTO.class);
+        verify(readStatusCoalescer, times(1)).submit(event.capture());
+        assertEquals(now, event.getValue().getReadUpTo());
+        // Watermark events carry no per-message receipts
+        assertNull(event.getValue().getReadParticipantsId());
+        verify(chatMessageRepository, never()).markReadBetween(any(), any(), any(), any());
+        verify(chatMessageRepository, never()).saveAll(any());
+        verify(chatMessageRepository, never()).save(any());
+    }
+
+    @Test
+    void getAllChatMessageByConversationId_inWatermarkModeDerivesReaders() {
+        ReflectionTestUtils.setField(chatMessageService, "readReceiptMode", ReadReceiptMode.WATERMARK);
+        LocalDateTime now = LocalDateTime.of(2024, 5, 1, 12, 0);
+        ChatMessage older = message("message-1", "detail-1", now.minusMinutes(10));
+        ChatMessage newer = message("message-2", "detail-1", now);
+        PageRequest pageable = PageRequest.of(0, 20);
+        when(chatMessageRepository.findAllByConversationId(eq(CONVERSATION_ID), any()))
+                .thenReturn(new PageImpl<>(List.of(newer, older), pageable, 2));
+        when(inboxService.getReadWatermarks(CONVERSATION_ID)).thenReturn(Map.of(
+                CURRENT_USER_DETAIL_ID, now.minusMinutes(5),
+                "detail-2", now));
+
+        List<ChatMessageResponse> responses = chatMessageService
+                .getAllChatMessageByConversationId(CONVERSATION_ID, pageable)
+                .getContent();
+
+        assertFalse(responses.get(0).getIsReadByCurrentUser());
+        assertEquals(1, responses.get(0).getReadCount());
+        assertTrue(responses.get(1).getIsReadByCurrentUser());
+        assertEquals(2, responses.get(1).getReadCount());
+        verify(inboxService, times(1)).getReadWatermarks(CONVERSATION_ID);
+    }
+
+    private ChatMessage message(String id, String senderId) {
+        return message(id, senderId, LocalDateTime.now());
+    }
+
+    private ChatMessage message(String id, String senderId, LocalDateTime createdAt) {
+        return ChatMessage.builder()
+                .id(id)
+                .conversationId(CONVERSATION_ID)
+                .senderId(senderId)
+                .message("hello")
+                .createdAt(createdAt)
+                .readParticipantsId(new ArrayList<>())
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.hehe.thesocial.service.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hehe.thesocial.service.presence.PresenceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Two backend nodes in separate application contexts sharing one Kafka broker
+ */
+@EmbeddedKafka(partitions = 1, topics = UserRouteTable.ROUTES_TOPIC)
+class ClusteredUserMessagingTest {
+
+    @Test
+    void sendToUsers_forwardsFramesToTheNodeHoldingTheSession(EmbeddedKafkaBroker broker) throws InterruptedException {
+        try (AnnotationConfigApplicationContext nodeA = startNode("node-a", broker);
+             AnnotationConfigApplicationContext nodeB = startNode("node-b", broker)) {
+            nodeA.getBean(PresenceRegistry.class).connect("session-a", "detail-a");
+            nodeB.getBean(PresenceRegistry.class).connect("session-b", "detail-b");
+
+            ClusterUserMessaging messagingA = nodeA.getBean(ClusterUserMessaging.class);
+            awaitTrue(() -> messagingA.isOnline("detail-b"), "route of detail-b never reached node-a");
+
+            messagingA.sendToUsers(List.of("detail-a", "detail-b", "detail-offline"), "/queue/chat",
+                    Map.of("message", "hello"));
+
+            SimpMessagingTemplate simpA = nodeA.getBean(SimpMessagingTemplate.class);
+            SimpMessagingTemplate simpB = nodeB.getBean(SimpMessagingTemplate.class);
+            verify(simpA).convertAndSendToUser(eq("detail-a"), eq("/queue/chat"), any(Object.class));
+            verify(simpB, timeout(10_000)).convertAndSendToUser(eq("detail-b"), eq("/queue/chat"),
+                    argThat((Object payload) -> payload instanceof JsonNode json
+                            && "hello".equals(json.path("message").asText())));
+            verify(simpA, never()).convertAndSendToUser(eq("detail-b"), anyString(), any(Object.class));
+            verify(simpB, never()).convertAndSendToUser(eq("detail-a"), anyString(), any(Object.class));
+            verify(simpA, never()).convertAndSendToUser(eq("detail-offline"), anyString(), any(Object.class));
+
+            nodeB.getBean(PresenceRegistry.class).disconnect("session-b");
+            awaitTrue(() -> !messagingA.isOnline("detail-b"), "detail-b still routed to node-b after disconnect");
+        }
+    }
+
+    private static AnnotationConfigApplicationContext startNode(String nodeId, EmbeddedKafkaBroker broker) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(new ApplicationConversionService());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("node", Map.of(
+                "chat.cluster.node-id", nodeId,
+                "chat.cluster.heartbeat-interval", "500ms",
+                "chat.presence.session-timeout", "0s",
+                "test.kafka.brokers", broker.getBrokersAsString())));
+        context.register(NodeConfig.class, PresenceRegistry.class, UserRouteTable.class, ClusterUserMessaging.class);
+        context.refresh();
+        return context;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, message);
+            Thread.sleep(50);
+        }
+    }
+
+    @Configuration
+    @EnableKafka
+    static class NodeConfig {
+        @Value("${test.kafka.brokers}")
+        String brokers;
+
+        @Bean
+        KafkaAdmin kafkaAdmin() {
+            return new KafkaAdmin(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, brokers));
+        }
+
+        @Bean
+        NewTopic nodeDeliveryTopic(UserRouteTable userRouteTable) {
+            return new NewTopic(UserRouteTable.deliveryTopicOf(userRouteTable.getNodeId()), 1, (short) 1);
+        }
+
+        @Bean
+        KafkaTemplate<String, Object> kafkaTemplate() {
+            return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of(
+                    ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers,
+                    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class)));
+        }
+
+        @Bean
+        ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory() {
+            ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+            factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(Map.of(
+                    ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers,
+                    ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+                    ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class,
+                    JsonDeserializer.TRUSTED_PACKAGES, "*")));
+            return factory;
+        }
+
+        @Bean
+        SimpMessagingTemplate simpMessagingTemplate() {
+            return mock(SimpMessagingTemplate.class);
+        }
+
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper().findAndRegisterModules();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.hehe.thesocial.service.cluster;
+
+import com.hehe.thesocial.dto.event.UserRouteEvent;
+import com.hehe.thesocial.service.presence.PresenceChangedEvent;
+import com.hehe.thesocial.service.presence.PresenceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class UserRouteTableTest {
+    KafkaTemplate<String, Object> kafkaTemplate;
+    PresenceRegistry presenceRegistry;
+    UserRouteTable userRouteTable;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        presenceRegistry = new PresenceRegistry(new SimpleMeterRegistry(), event -> { });
+        userRouteTable = new UserRouteTable(kafkaTemplate, presenceRegistry, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(userRouteTable, "nodeId", "node-a");
+        ReflectionTestUtils.setField(userRouteTable, "heartbeatInterval", Duration.ofSeconds(10));
+    }
+
+    @Test
+    void start_failsWithoutANodeId() {
+        ReflectionTestUtils.setField(userRouteTable, "nodeId", "");
+
+        assertThrows(IllegalStateException.class, userRouteTable::start);
+    }
+
+    @Test
+    void liveNodes_judgesHeartbeatsByLocalReceiveTimeNotTheSenderClock() {
+        // Replayed before this run's own heartbeat came back, even though the sender's clock runs far ahead
+        userRouteTable.onRoute(heartbeat("node-b", System.currentTimeMillis() + Duration.ofHours(1).toMillis()));
+        heartbeatReceivedAgo("node-b", Duration.ofSeconds(11));
+        assertEquals(Set.of(), userRouteTable.liveNodes());
+
+        userRouteTable.onRoute(heartbeat("node-a", System.currentTimeMillis()));
+        // Received live, even though the sender's clock runs far behind
+        userRouteTable.onRoute(heartbeat("node-b", System.currentTimeMillis() - Duration.ofHours(1).toMillis()));
+        assertEquals(Set.of("node-a", "node-b"), userRouteTable.liveNodes());
+    }
+
+    @Test
+    void onPresenceChanged_keepsTheRouteWhenAStaleOfflineEventArrivesLast() {
+        presenceRegistry.connect("session-2", "detail-1");
+
+        userRouteTable.onPresenceChanged(new PresenceChangedEvent("detail-1", false));
+
+        verify(kafkaTemplate).send(eq(UserRouteTable.ROUTES_TOPIC), eq("node-a/detail-1"), any(UserRouteEvent.class));
+        verify(kafkaTemplate, never()).send(eq(UserRouteTable.ROUTES_TOPIC), eq("node-a/detail-1"), isNull());
+    }
+
+    @Test
+    void onPresenceChanged_withdrawsTheRouteWhenAStaleOnlineEventArrivesLast() {
+        userRouteTable.onPresenceChanged(new PresenceChangedEvent("detail-1", true));
+
+        verify(kafkaTemplate).send(eq(UserRouteTable.ROUTES_TOPIC), eq("node-a/detail-1"), isNull());
+        verify(kafkaTemplate, never()).send(eq(UserRouteTable.ROUTES_TOPIC), eq("node-a/detail-1"),
+                any(UserRouteEvent.class));
+    }
+
+    private static ConsumerRecord<String, UserRouteEvent> heartbeat(String node, long timestamp) {
+        return new ConsumerRecord<>(UserRouteTable.ROUTES_TOPIC, 0, 0, node,
+                UserRouteEvent.builder().nodeId(node).timestamp(timestamp).build());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void heartbeatReceivedAgo(String node, Duration ago) {
+        Map<String, Long> nodeHeartbeats = (Map<String, Long>) ReflectionTestUtils.getField(userRouteTable,
+                "nodeHeartbeats");
+        nodeHeartbeats.computeIfPresent(node, (id, receivedAt) -> receivedAt - ago.toMillis());
+    }
+}
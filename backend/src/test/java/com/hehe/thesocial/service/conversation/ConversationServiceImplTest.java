@@ -0,0 +1,119 @@
+package com.hehe.thesocial.service.conversation;
+
+import com.hehe.thesocial.dto.response.conversation.ConversationResponse;
+import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.InboxEntry;
+import com.hehe.thesocial.entity.InboxLastMessage;
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.entity.enums.ConversationType;
+import com.hehe.thesocial.mapper.chatMessage.ChatMessageMapper;
+import com.hehe.thesocial.mapper.chatMessage.ChatMessageMapperImpl;
+import com.hehe.thesocial.mapper.conversation.ConversationMapper;
+import com.hehe.thesocial.repository.ConversationRepository;
+import com.hehe.thesocial.repository.FileRepository;
+import com.hehe.thesocial.repository.UserDetailRepository;
+import com.hehe.thesocial.repository.UserRepository;
+import com.hehe.thesocial.service.chatMessage.ChatMessageHydrator;
+import com.hehe.thesocial.service.inbox.InboxService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversationServiceImplTest {
+    static final String CURRENT_USER_ID = "user-1";
+
+    ConversationRepository conversationRepository;
+    UserDetailRepository userDetailRepository;
+    InboxService inboxService;
+    ConversationServiceImpl conversationService;
+    UserDetail me;
+    UserDetail friend;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(ConversationRepository.class);
+        userDetailRepository = mock(UserDetailRepository.class);
+        inboxService = mock(InboxService.class);
+
+        ChatMessageMapper chatMessageMapper = new ChatMessageMapperImpl();
+        conversationService = new ConversationServiceImpl(
+                conversationRepository,
+                Mappers.getMapper(ConversationMapper.class),
+                userDetailRepository,
+                mock(FileRepository.class),
+                mock(UserRepository.class),
+                new ChatMessageHydrator(chatMessageMapper, userDetailRepository),
+                inboxService);
+
+        me = UserDetail.builder().id("detail-me").displayName("Me").build();
+        friend = UserDetail.builder().id("detail-friend").displayName("Friend").build();
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(CURRENT_USER_ID, null));
+        when(userDetailRepository.findByUser(any())).thenReturn(Optional.of(me));
+        when(userDetailRepository.findByIdIn(anyCollection())).thenReturn(List.of(friend));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void getMyConversations_readsInboxProjection() {
+        Conversation direct = Conversation.builder()
+                .conversationId("conversation-1")
+                .conversationType(ConversationType.DIRECT)
+                .userDetails(Set.of(me, friend))
+                .build();
+        InboxEntry entry = InboxEntry.builder()
+                .ownerId(me.getId())
+                .conversationId(direct.getConversationId())
+                .unreadCount(3)
+                .lastActivityAt(LocalDateTime.now())
+                .lastMessage(InboxLastMessage.builder()
+                        .messageId("message-9")
+                        .senderId(friend.getId())
+                        .message("see you")
+                        .createdAt(LocalDateTime.now())
+                        .build())
+                .build();
+        PageRequest pageable = PageRequest.of(0, 20);
+        when(inboxService.getInbox(eq(me.getId()), any())).thenReturn(new PageImpl<>(List.of(entry), pageable, 1));
+        when(conversationRepository.findAllById(any())).thenReturn(List.of(direct));
+
+        Page<ConversationResponse> page = conversationService.getMyConversations(pageable);
+
+        ConversationResponse response = page.getContent().get(0);
+        assertEquals("Friend", response.getConversationName());
+        assertEquals(3, response.getUnreadCount());
+        assertTrue(response.getHasUnreadMessages());
+        assertEquals("message-9", response.getNewestChatMessage().getId());
+        assertEquals("other", response.getNewestChatMessage().getSender());
+        assertFalse(response.getNewestChatMessage().getIsReadByCurrentUser());
+
+        verify(conversationRepository, times(1)).findAllById(any());
+        verify(userDetailRepository, times(1)).findByIdIn(anyCollection());
+    }
+}
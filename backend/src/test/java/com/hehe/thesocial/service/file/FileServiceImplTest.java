@@ -0,0 +1,256 @@
+package com.hehe.thesocial.service.file;
+
+import com.hehe.thesocial.dto.response.file.FileResponse;
+import com.hehe.thesocial.entity.FileDocument;
+import com.hehe.thesocial.entity.StoredBlob;
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.exception.ErrorCode;
+import com.hehe.thesocial.mapper.file.FileMapperImpl;
+import com.hehe.thesocial.repository.FileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileServiceImplTest {
+    @TempDir
+    Path uploadDir;
+
+    Map<String, StoredBlob> blobs = new HashMap<>();
+    Map<String, FileDocument> documents = new HashMap<>();
+    SimpleMeterRegistry meterRegistry;
+    BlobStore blobStore;
+    FileIngestExecutor fileIngestExecutor;
+    FileRepository fileRepository;
+    FileServiceImpl fileService;
+
+    @BeforeEach
+    void setUp() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice", null));
+        meterRegistry = new SimpleMeterRegistry();
+        blobStore = new BlobStore(blobCollection(), meterRegistry);
+        ReflectionTestUtils.setField(blobStore, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(blobStore, "deduplicated", meterRegistry.counter("file.blobs.deduplicated"));
+
+        fileRepository = mock(FileRepository.class);
+        when(fileRepository.save(any(FileDocument.class))).thenAnswer(invocation -> {
+            FileDocument document = invocation.getArgument(0);
+            document.setId(UUID.randomUUID().toString());
+            documents.put(document.getId(), document);
+            return document;
+        });
+        when(fileRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(documents.get(invocation.<String>getArgument(0))));
+
+        when(fileRepository.insert(anyIterable())).thenAnswer(invocation -> {
+            List<FileDocument> inserted = new ArrayList<>();
+            invocation.<Iterable<FileDocument>>getArgument(0).forEach(document -> {
+                document.setId(UUID.randomUUID().toString());
+                documents.put(document.getId(), document);
+                inserted.add(document);
+            });
+            return inserted;
+        });
+
+        fileIngestExecutor = new FileIngestExecutor(meterRegistry);
+        ReflectionTestUtils.setField(fileIngestExecutor, "threads", 4);
+        ReflectionTestUtils.setField(fileIngestExecutor, "queueCapacity", 16);
+        fileIngestExecutor.start();
+
+        fileService = new FileServiceImpl(new FileMapperImpl(), fileRepository, blobStore, fileIngestExecutor);
+        ReflectionTestUtils.setField(fileService, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(fileService, "serverPort", "8082");
+        ReflectionTestUtils.setField(fileService, "contextPath", "/api/v1");
+        ReflectionTestUtils.setField(fileService, "serverHost", "localhost");
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        SecurityContextHolder.clearContext();
+        fileIngestExecutor.stop();
+    }
+
+    @Test
+    void storeFile_sharesIdenticalContentAndKeepsItUntilTheLastReferenceIsDeleted() throws Exception {
+        byte[] clip = "the same reposted clip".getBytes();
+        FileResponse first = fileService.storeFile(new MockMultipartFile("file", "clip.mp4", "video/mp4", clip));
+        FileResponse second = fileService.storeFile(new MockMultipartFile("file", "repost.mp4", "video/mp4", clip));
+
+        String digest = documents.get(first.getId()).getBlobId();
+        assertEquals(digest, documents.get(second.getId()).getBlobId());
+        assertEquals(2, blobs.get(digest).getRefCount());
+        Path blob = blobStore.pathOf(digest);
+        Path firstPath = publicPath(first);
+        Path secondPath = publicPath(second);
+        // Both public paths are links to the one stored copy
+        assertTrue(Files.isSameFile(blob, firstPath));
+        assertTrue(Files.isSameFile(blob, secondPath));
+        assertEquals(1, meterRegistry.counter("file.blobs.deduplicated").count());
+
+        fileService.deleteFile(first.getId());
+        assertFalse(Files.exists(firstPath));
+        assertEquals(new String(clip), Files.readString(secondPath));
+        assertEquals(1, blobs.get(digest).getRefCount());
+
+        fileService.deleteFile(second.getId());
+        assertFalse(Files.exists(blob));
+        assertFalse(blobs.containsKey(digest));
+    }
+
+    @Test
+    void storeFile_replacesAStoredBlobWhoseLengthDoesNotMatch() throws Exception {
+        byte[] clip = "the same reposted clip".getBytes();
+        FileResponse first = fileService.storeFile(new MockMultipartFile("file", "clip.mp4", "video/mp4", clip));
+        Path blob = blobStore.pathOf(documents.get(first.getId()).getBlobId());
+        Files.delete(publicPath(first));
+        Files.write(blob, Arrays.copyOf(clip, 4));
+
+        FileResponse second = fileService.storeFile(new MockMultipartFile("file", "repost.mp4", "video/mp4", clip));
+
+        assertEquals(new String(clip), Files.readString(blob));
+        assertEquals(new String(clip), Files.readString(publicPath(second)));
+        assertEquals(0, meterRegistry.counter("file.blobs.deduplicated").count());
+    }
+
+    @Test
+    void storeFiles_writesAllPartsConcurrentlyAndSavesThemWithOneInsert() {
+        // Every part blocks until all of them are being read, which only happens if they are written in parallel
+        CountDownLatch allReading = new CountDownLatch(4);
+        List<MultipartFile> parts = IntStream.range(0, 4)
+                .mapToObj(i -> (MultipartFile) new MockMultipartFile("images", "image-" + i + ".jpg", "image/jpeg",
+                        ("image " + i).getBytes()) {
+                    @Override
+                    public InputStream getInputStream() throws IOException {
+                        allReading.countDown();
+                        try {
+                            if (!allReading.await(5, TimeUnit.SECONDS)) {
+                                throw new IOException("parts were written one after another");
+                            }
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                        return super.getInputStream();
+                    }
+                })
+                .toList();
+
+        List<FileDocument> stored = fileService.storeFiles(parts);
+
+        assertEquals(List.of("image-0.jpg", "image-1.jpg", "image-2.jpg", "image-3.jpg"),
+                stored.stream().map(FileDocument::getFileName).toList());
+        stored.forEach(document -> assertTrue(Files.exists(publicPath(document.getUrl()))));
+        verify(fileRepository, times(1)).insert(anyIterable());
+        verify(fileRepository, never()).save(any(FileDocument.class));
+        verify(fileRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void storeFiles_removesWrittenPartsWhenOneFails() throws Exception {
+        MultipartFile broken = new MockMultipartFile("images", "broken.jpg", "image/jpeg", "broken".getBytes()) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw new IOException("client went away");
+            }
+        };
+        MultipartFile fine = new MockMultipartFile("images", "fine.jpg", "image/jpeg", "fine".getBytes());
+
+        AppException failure = assertThrows(AppException.class, () -> fileService.storeFiles(List.of(fine, broken)));
+
+        assertEquals(ErrorCode.ERROR_UPLOADING_FILE, failure.getErrorCode());
+        assertTrue(blobs.isEmpty());
+        try (Stream<Path> stored = Files.list(uploadDir.resolve("alice"))) {
+            assertEquals(0, stored.count());
+        }
+        verify(fileRepository, never()).insert(anyIterable());
+    }
+
+    @Test
+    void storeFiles_stillWritesOnceTheIngestPoolIsShutDown() throws Exception {
+        fileIngestExecutor.stop();
+
+        assertEquals("written", fileIngestExecutor.submit(() -> "written").get(5, TimeUnit.SECONDS));
+        List<FileDocument> stored = fileService.storeFiles(List.of(
+                new MockMultipartFile("images", "late.jpg", "image/jpeg", "late".getBytes())));
+        assertEquals(1, stored.size());
+    }
+
+    private Path publicPath(FileResponse response) {
+        return publicPath(response.getUrl());
+    }
+
+    private Path publicPath(String url) {
+        return uploadDir.resolve("alice").resolve(url.substring(url.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * Just enough of the blobs collection for the ref_count updates BlobStore makes
+     */
+    private MongoTemplate blobCollection() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(StoredBlob.class))).thenAnswer(invocation -> {
+            String digest = invocation.<Query>getArgument(0).getQueryObject().getString("_id");
+            Document update = invocation.<Update>getArgument(1).getUpdateObject();
+            FindAndModifyOptions options = invocation.getArgument(2);
+            StoredBlob blob = blobs.get(digest);
+            if (blob == null) {
+                if (!options.isUpsert()) {
+                    return null;
+                }
+                blob = StoredBlob.builder().id(digest)
+                        .size(((Number) update.get("$setOnInsert", Document.class).get("size")).longValue())
+                        .build();
+                blobs.put(digest, blob);
+            }
+            blob.setRefCount(blob.getRefCount()
+                    + ((Number) update.get("$inc", Document.class).get("ref_count")).longValue());
+            return blob;
+        });
+        when(mongoTemplate.remove(any(Query.class), eq(StoredBlob.class))).thenAnswer(invocation -> {
+            blobs.remove(invocation.<Query>getArgument(0).getQueryObject().getString("_id"));
+            return null;
+        });
+        return mongoTemplate;
+    }
+}
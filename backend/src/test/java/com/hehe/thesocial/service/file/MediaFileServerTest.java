@@ -0,0 +1,123 @@
+package com.hehe.thesocial.service.file;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaFileServerTest {
+    static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    @TempDir
+    Path uploadDir;
+
+    Path file;
+    String etag;
+    MediaFileServer mediaFileServer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.writeString(uploadDir.resolve("7f1c2d.mp4"), CONTENT);
+        etag = MediaFileServer.etagOf("7f1c2d.mp4", CONTENT.length());
+        mediaFileServer = new MediaFileServer(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(mediaFileServer, "maxAge", Duration.ofDays(365));
+        ReflectionTestUtils.setField(mediaFileServer, "sendfileThreshold", DataSize.ofKilobytes(48));
+    }
+
+    @Test
+    void serve_sendsWholeFileWithValidatorsAndAnswersConditionalGet() throws Exception {
+        MockHttpServletResponse response = serve(get());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals(etag, response.getHeader(HttpHeaders.ETAG));
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertTrue(response.getHeader(HttpHeaders.CACHE_CONTROL).contains("immutable"));
+
+        MockHttpServletRequest revalidation = get();
+        revalidation.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        MockHttpServletResponse notModified = serve(revalidation);
+        assertEquals(304, notModified.getStatus());
+        assertEquals(0, notModified.getContentAsByteArray().length);
+    }
+
+    @Test
+    void serve_answersSingleAndMultipleRanges() throws Exception {
+        MockHttpServletRequest single = get();
+        single.addHeader(HttpHeaders.RANGE, "bytes=10-15");
+        MockHttpServletResponse partial = serve(single);
+        assertEquals(206, partial.getStatus());
+        assertEquals("bytes 10-15/36", partial.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("abcdef", partial.getContentAsString());
+
+        MockHttpServletRequest multiple = get();
+        multiple.addHeader(HttpHeaders.RANGE, "bytes=0-1,-3");
+        MockHttpServletResponse multipart = serve(multiple);
+        assertEquals(206, multipart.getStatus());
+        assertTrue(multipart.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = multipart.getContentAsString();
+        assertTrue(body.contains("Content-Range: bytes 0-1/36\r\n\r\n01\r\n"));
+        assertTrue(body.contains("Content-Range: bytes 33-35/36\r\n\r\nxyz\r\n"));
+        assertEquals(body.getBytes(StandardCharsets.ISO_8859_1).length, multipart.getContentLengthLong());
+    }
+
+    @Test
+    void serve_ignoresStaleIfRangeAndRejectsUnsatisfiableRanges() throws Exception {
+        MockHttpServletRequest stale = get();
+        stale.addHeader(HttpHeaders.RANGE, "bytes=10-15");
+        stale.addHeader(HttpHeaders.IF_RANGE, "\"older-version\"");
+        MockHttpServletResponse full = serve(stale);
+        assertEquals(200, full.getStatus());
+        assertEquals(CONTENT, full.getContentAsString());
+
+        MockHttpServletRequest beyondEnd = get();
+        beyondEnd.addHeader(HttpHeaders.RANGE, "bytes=100-200");
+        MockHttpServletResponse unsatisfiable = serve(beyondEnd);
+        assertEquals(416, unsatisfiable.getStatus());
+        assertEquals("bytes */36", unsatisfiable.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void serve_handsLargeBodiesToSendfileWithoutWritingThem() throws Exception {
+        byte[] video = new byte[64 * 1024];
+        Path large = Files.write(uploadDir.resolve("large.mp4"), video);
+        MockHttpServletRequest request = get();
+        request.setAttribute(MediaFileServer.SENDFILE_SUPPORT, true);
+        request.addHeader(HttpHeaders.RANGE, "bytes=1024-");
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        mediaFileServer.serve(large, "video/mp4", request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals(video.length - 1024, response.getContentLengthLong());
+        assertEquals(large.toAbsolutePath().toString(), request.getAttribute(MediaFileServer.SENDFILE_FILENAME));
+        assertEquals(1024L, request.getAttribute(MediaFileServer.SENDFILE_START));
+        assertEquals((long) video.length, request.getAttribute(MediaFileServer.SENDFILE_END));
+        assertArrayEquals(new byte[0], response.getContentAsByteArray());
+        assertEquals("bytes 1024-65535/65536", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        mediaFileServer.serve(file, "video/mp4", request, response);
+        return response;
+    }
+
+    private static MockHttpServletRequest get() {
+        return new MockHttpServletRequest("GET", "/files/uploader/7f1c2d.mp4");
+    }
+}
@@ -0,0 +1,176 @@
+package com.hehe.thesocial.service.file;
+
+import com.hehe.thesocial.dto.request.file.UploadSessionRequest;
+import com.hehe.thesocial.entity.UploadSession;
+import com.hehe.thesocial.exception.AppException;
+import com.hehe.thesocial.exception.ErrorCode;
+import com.hehe.thesocial.repository.UploadSessionRepository;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ResumableUploadServiceTest {
+    @TempDir
+    Path uploadDir;
+
+    Map<String, UploadSession> sessions = new HashMap<>();
+    FileService fileService;
+    ResumableUploadService resumableUploadService;
+
+    @BeforeEach
+    void setUp() {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("alice", null));
+        UploadSessionRepository uploadSessionRepository = mock(UploadSessionRepository.class);
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> {
+            UploadSession session = invocation.getArgument(0);
+            sessions.put(session.getId(), session);
+            return session;
+        });
+        when(uploadSessionRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(sessions.get(invocation.<String>getArgument(0))));
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(UploadSession.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        fileService = mock(FileService.class);
+
+        resumableUploadService = new ResumableUploadService(uploadSessionRepository, mongoTemplate, fileService,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(resumableUploadService, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(resumableUploadService, "maxSize", DataSize.ofMegabytes(10));
+        ReflectionTestUtils.setField(resumableUploadService, "maxChunkSize", DataSize.ofKilobytes(320));
+        ReflectionTestUtils.setField(resumableUploadService, "sessionTtl", Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void upload_resumesAfterBrokenChunkAndCompletesWithTheSha256OfTheBytes() throws Exception {
+        byte[] video = new byte[600 * 1024];
+        ThreadLocalRandom.current().nextBytes(video);
+        String sessionId = resumableUploadService.create(new UploadSessionRequest("clip.mp4", video.length)).getId();
+
+        assertEquals(200 * 1024, resumableUploadService.writeChunk(sessionId, 0, 200 * 1024,
+                new ByteArrayInputStream(video, 0, 200 * 1024)).getOffset());
+
+        // The connection drops 100KB into the second chunk
+        long offset = resumableUploadService.writeChunk(sessionId, 200 * 1024, 256 * 1024,
+                brokenAfter(Arrays.copyOfRange(video, 200 * 1024, 300 * 1024))).getOffset();
+        assertEquals(300 * 1024, offset);
+        assertEquals(300 * 1024, resumableUploadService.status(sessionId).getOffset());
+
+        AppException behind = assertThrows(AppException.class, () -> resumableUploadService.writeChunk(sessionId,
+                200 * 1024, 100, new ByteArrayInputStream(new byte[100])));
+        assertEquals(ErrorCode.UPLOAD_OFFSET_MISMATCH, behind.getErrorCode());
+
+        resumableUploadService.writeChunk(sessionId, offset, video.length - offset,
+                new ByteArrayInputStream(video, (int) offset, video.length - (int) offset));
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(video));
+        Path part = uploadDir.resolve(".parts").resolve(sessionId + ".part");
+        assertArrayEquals(video, Files.readAllBytes(part));
+
+        resumableUploadService.complete(sessionId, sha256.toUpperCase());
+        verify(fileService).storeUploadedFile("alice", "clip.mp4", part, sha256);
+    }
+
+    @Test
+    void complete_rejectsIncompleteUploadsAndChecksumMismatches() {
+        String sessionId = resumableUploadService.create(new UploadSessionRequest("avatar.png", 4)).getId();
+        resumableUploadService.writeChunk(sessionId, 0, 2, new ByteArrayInputStream(new byte[]{1, 2}));
+
+        AppException incomplete = assertThrows(AppException.class,
+                () -> resumableUploadService.complete(sessionId, null));
+        assertEquals(ErrorCode.UPLOAD_INCOMPLETE, incomplete.getErrorCode());
+
+        resumableUploadService.writeChunk(sessionId, 2, 2, new ByteArrayInputStream(new byte[]{3, 4}));
+        AppException mismatch = assertThrows(AppException.class,
+                () -> resumableUploadService.complete(sessionId, "00"));
+        assertEquals(ErrorCode.UPLOAD_CHECKSUM_MISMATCH, mismatch.getErrorCode());
+        assertFalse(Files.exists(uploadDir.resolve(".parts").resolve(sessionId + ".part")));
+        verify(fileService, never()).storeUploadedFile(anyString(), anyString(), any(Path.class), anyString());
+    }
+
+    @Test
+    void complete_keepsTheChecksumWhenRetriedAfterAFailedStore() throws Exception {
+        byte[] bytes = {1, 2, 3, 4};
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        String sessionId = resumableUploadService.create(new UploadSessionRequest("avatar.png", 4)).getId();
+        resumableUploadService.writeChunk(sessionId, 0, 4, new ByteArrayInputStream(bytes));
+        when(fileService.storeUploadedFile(anyString(), anyString(), any(Path.class), anyString()))
+                .thenThrow(new AppException(ErrorCode.ERROR_UPLOADING_FILE))
+                .thenReturn(null);
+
+        assertThrows(AppException.class, () -> resumableUploadService.complete(sessionId, sha256));
+        resumableUploadService.complete(sessionId, sha256);
+
+        verify(fileService, times(2)).storeUploadedFile(eq("alice"), eq("avatar.png"), any(Path.class), eq(sha256));
+    }
+
+    @Test
+    void writeChunk_failsWhenNothingCouldBeWritten() throws Exception {
+        String sessionId = resumableUploadService.create(new UploadSessionRequest("avatar.png", 4)).getId();
+
+        AppException broken = assertThrows(AppException.class,
+                () -> resumableUploadService.writeChunk(sessionId, 0, 4, brokenAfter(new byte[0])));
+        assertEquals(ErrorCode.ERROR_UPLOADING_FILE, broken.getErrorCode());
+
+        Files.delete(uploadDir.resolve(".parts").resolve(sessionId + ".part"));
+        AppException elsewhere = assertThrows(AppException.class,
+                () -> resumableUploadService.writeChunk(sessionId, 0, 4, new ByteArrayInputStream(new byte[4])));
+        assertEquals(ErrorCode.UPLOAD_SESSION_NOT_FOUND, elsewhere.getErrorCode());
+        assertEquals(0, resumableUploadService.status(sessionId).getOffset());
+    }
+
+    private static InputStream brokenAfter(byte[] bytes) {
+        return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read < 0) {
+                    throw new IOException("Connection reset by peer");
+                }
+                return read;
+            }
+        };
+    }
+}
@@ -0,0 +1,119 @@
+package com.hehe.thesocial.service.inbox;
+
+import com.hehe.thesocial.entity.ChatMessage;
+import com.hehe.thesocial.entity.InboxEntry;
+import com.hehe.thesocial.repository.ChatMessageRepository;
+import com.hehe.thesocial.repository.InboxEntryRepository;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InboxServiceImplTest {
+    MongoTemplate mongoTemplate;
+    InboxServiceImpl inboxService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        inboxService = new InboxServiceImpl(mock(InboxEntryRepository.class), mock(ChatMessageRepository.class),
+                mongoTemplate);
+    }
+
+    @Test
+    void recordMessagesRead_lowersTheCounterOnlyByMessagesThatWereStillUnread() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(ChatMessage.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertEquals(1, inboxService.recordMessagesRead("conversation-1", "detail-1", List.of("m1", "m2", "m3")));
+
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(InboxEntry.class));
+        Document set = ((AggregationUpdate) update.getValue()).toPipeline(Aggregation.DEFAULT_CONTEXT).get(0);
+        assertEquals(new Document("$max", List.of(0, new Document("$subtract", List.of("$unread_count", 1L)))),
+                set.get("$set", Document.class).get("unreadCount"));
+    }
+
+    @Test
+    void recordMessagesRead_leavesTheCounterAloneOnReRead() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), eq(ChatMessage.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 0L, null));
+
+        assertEquals(0, inboxService.recordMessagesRead("conversation-1", "detail-1", List.of("m1")));
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(InboxEntry.class));
+    }
+
+    @Test
+    void recordMessage_onlyReplacesTheLastMessageWithANewerOne() {
+        BulkOperations bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, InboxEntry.class)).thenReturn(bulk);
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        ChatMessage message = ChatMessage.builder()
+                .id("m1")
+                .conversationId("conversation-1")
+                .senderId("detail-1")
+                .message("$hello")
+                .createdAt(LocalDateTime.of(2024, 1, 1, 12, 0))
+                .build();
+
+        inboxService.recordMessage(message, List.of("detail-1", "detail-2"));
+
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(bulk, times(2)).upsert(any(Query.class), updates.capture());
+        Document sender = setStages(updates.getAllValues().get(0));
+        Document recipient = setStages(updates.getAllValues().get(1));
+
+        List<?> condition = sender.get("lastMessage", Document.class).getList("$cond", Object.class);
+        assertEquals("$last_message.created_at", ((Document) condition.get(0)).getList("$lte", Object.class).get(0));
+        assertEquals("$hello", ((Document) condition.get(1)).get("$literal", Document.class).get("message"));
+        assertEquals("$last_message", condition.get(2));
+        assertEquals(List.of(new Document("$ifNull", List.of("$unread_count", 0)), 0),
+                sender.get("unreadCount", Document.class).get("$add"));
+        List<?> recipientAdd = recipient.get("unreadCount", Document.class).getList("$add", Object.class);
+        assertEquals(new Document("$ifNull", List.of("$unread_count", 0)), recipientAdd.get(0));
+        // Counted only when the recipient's read watermark is missing or older than the message
+        List<?> counted = ((Document) recipientAdd.get(1)).getList("$cond", Object.class);
+        List<?> unreadWhen = ((Document) counted.get(0)).getList("$or", Object.class);
+        assertEquals("$last_read_at", ((Document) unreadWhen.get(1)).getList("$lt", Object.class).get(0));
+        assertEquals(((Document) condition.get(0)).getList("$lte", Object.class).get(1),
+                ((Document) unreadWhen.get(1)).getList("$lt", Object.class).get(1));
+        assertEquals(List.of(1, 0), counted.subList(1, 3));
+    }
+
+    private static Document setStages(UpdateDefinition update) {
+        Document fields = new Document();
+        ((AggregationUpdate) update).toPipeline(Aggregation.DEFAULT_CONTEXT)
+                .forEach(stage -> fields.putAll(stage.get("$set", Document.class)));
+        return fields;
+    }
+}
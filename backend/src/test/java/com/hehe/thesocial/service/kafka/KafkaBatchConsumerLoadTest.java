@@ -0,0 +1,211 @@
+package com.hehe.thesocial.service.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hehe.thesocial.dto.event.ChatMessageEventDTO;
+import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.entity.Conversation;
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.entity.enums.EventType;
+import com.hehe.thesocial.repository.ConversationRepository;
+import com.hehe.thesocial.service.cluster.ClusterUserMessaging;
+import com.hehe.thesocial.service.cluster.UserRouteTable;
+import com.hehe.thesocial.service.messageDelivery.MessageDeliveryService;
+import com.hehe.thesocial.service.messageDelivery.PendingDeliveryService;
+import com.hehe.thesocial.service.presence.PresenceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Burst load against the batch listener: measures drain throughput and how many conversation lookups it costs
+ */
+@Slf4j
+@SpringJUnitConfig
+@EmbeddedKafka(partitions = 3, topics = {
+        "chat_messages", "chat_messages.retry-1", "chat_messages.retry-2", "chat_messages.retry-3",
+        "read_status_updates", "read_status_updates.retry-1", "read_status_updates.retry-2",
+        "read_status_updates.retry-3"})
+class KafkaBatchConsumerLoadTest {
+    static final int CONVERSATIONS = 20;
+    static final int RECORDS = 5_000;
+    static final Set<String> PARTICIPANTS = Set.of("detail-1", "detail-2");
+
+    static CountDownLatch chatFrames = new CountDownLatch(RECORDS * PARTICIPANTS.size());
+
+    @Autowired
+    KafkaProducer kafkaProducer;
+
+    @Autowired
+    ConversationRepository conversationRepository;
+
+    @Autowired
+    SimpleMeterRegistry meterRegistry;
+
+    @Test
+    void listenConversations_drainsBurstWithOneConversationLookupPerBatch() throws InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < RECORDS; i++) {
+            String conversationId = "conversation-" + (i % CONVERSATIONS);
+            // Published without participants so every batch has to resolve its conversations
+            kafkaProducer.sendMessage(ChatMessageEventDTO.builder()
+                    .response(ChatMessageResponse.builder()
+                            .id("message-" + i)
+                            .conversationId(conversationId)
+                            .message("burst " + i)
+                            .build())
+                    .eventType(EventType.MESSAGE_CREATE)
+                    .build());
+        }
+        long produced = System.nanoTime();
+        long lagAfterBurst = chatFrames.getCount() / PARTICIPANTS.size();
+
+        assertTrue(chatFrames.await(120, TimeUnit.SECONDS), "burst was not drained");
+        long drained = System.nanoTime();
+
+        double consumed = meterRegistry.counter("chat.kafka.consumed", "topic", "chat_messages").count();
+        double meanBatch = meterRegistry.summary("chat.kafka.batch.size", "topic", "chat_messages").mean();
+        long batches = meterRegistry.summary("chat.kafka.batch.size", "topic", "chat_messages").count();
+        log.info("Produced {} records in {} ms, lag after burst {} records, drained in {} ms ({} records/s), "
+                        + "{} batches of {} records on average",
+                RECORDS, TimeUnit.NANOSECONDS.toMillis(produced - start), lagAfterBurst,
+                TimeUnit.NANOSECONDS.toMillis(drained - start),
+                (long) (RECORDS / ((drained - start) / 1e9)), batches, String.format("%.1f", meanBatch));
+
+        assertEquals(RECORDS, (long) consumed);
+        assertTrue(batches < RECORDS / 10, "records were not consumed in batches");
+        verify(conversationRepository, atMost((int) batches)).findAllById(anyIterable());
+    }
+
+    @Configuration
+    @EnableKafka
+    static class Config {
+        @Bean
+        KafkaTemplate<String, Object> kafkaTemplate(EmbeddedKafkaBroker broker) {
+            return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of(
+                    ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class)));
+        }
+
+        @Bean
+        ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(EmbeddedKafkaBroker broker) {
+            ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+            factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(Map.of(
+                    ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                    ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
+                    ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+                    ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class,
+                    JsonDeserializer.TRUSTED_PACKAGES, "*")));
+            return factory;
+        }
+
+        @Bean
+        ConcurrentKafkaListenerContainerFactory<String, Object> retryKafkaListenerContainerFactory(
+                EmbeddedKafkaBroker broker) {
+            ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+            factory.setConsumerFactory(kafkaListenerContainerFactory(broker).getConsumerFactory());
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            return factory;
+        }
+
+        @Bean
+        KafkaProducer kafkaProducer(KafkaTemplate<String, Object> kafkaTemplate) {
+            return new KafkaProducer(kafkaTemplate);
+        }
+
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        ConversationRepository conversationRepository() {
+            ConversationRepository conversationRepository = mock(ConversationRepository.class);
+            Set<UserDetail> participants = PARTICIPANTS.stream()
+                    .map(id -> UserDetail.builder().id(id).build())
+                    .collect(Collectors.toSet());
+            when(conversationRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+                Iterable<String> ids = invocation.getArgument(0);
+                return StreamSupport.stream(ids.spliterator(), false)
+                        .map(id -> Conversation.builder().conversationId(id).userDetails(participants).build())
+                        .toList();
+            });
+            return conversationRepository;
+        }
+
+        @Bean
+        static ConversionService conversionService() {
+            // Binds the Duration defaults of KafkaRetryRouter
+            return ApplicationConversionService.getSharedInstance();
+        }
+
+        @Bean
+        KafkaRetryRouter kafkaRetryRouter(KafkaTemplate<String, Object> kafkaTemplate) {
+            return new KafkaRetryRouter(kafkaTemplate, new SimpleMeterRegistry());
+        }
+
+        @Bean
+        KafkaConsumer kafkaConsumer(ConversationRepository conversationRepository, SimpleMeterRegistry meterRegistry,
+                                    KafkaRetryRouter kafkaRetryRouter) {
+            SimpMessagingTemplate simpMessagingTemplate = mock(SimpMessagingTemplate.class);
+            doAnswer(invocation -> {
+                chatFrames.countDown();
+                return null;
+            }).when(simpMessagingTemplate).convertAndSendToUser(anyString(), eq("/queue/chat"), any(Object.class));
+
+            PresenceRegistry presenceRegistry = new PresenceRegistry(meterRegistry, event -> { });
+            PARTICIPANTS.forEach(participantId -> presenceRegistry.connect("session-" + participantId, participantId));
+            ClusterUserMessaging clusterUserMessaging = new ClusterUserMessaging(simpMessagingTemplate, presenceRegistry,
+                    new UserRouteTable(mock(KafkaTemplate.class), presenceRegistry, meterRegistry),
+                    mock(KafkaTemplate.class), new ObjectMapper(), meterRegistry);
+
+            return new KafkaConsumer(
+                    clusterUserMessaging,
+                    conversationRepository,
+                    new MessageDeliveryService(clusterUserMessaging, conversationRepository,
+                            mock(PendingDeliveryService.class)),
+                    meterRegistry,
+                    kafkaRetryRouter);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.hehe.thesocial.service.kafka;
+
+import com.hehe.thesocial.dto.event.ChatMessageEventDTO;
+import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.entity.enums.EventType;
+import com.hehe.thesocial.repository.ConversationRepository;
+import com.hehe.thesocial.service.cluster.ClusterUserMessaging;
+import com.hehe.thesocial.service.messageDelivery.MessageDeliveryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+@SpringJUnitConfig
+@EmbeddedKafka(partitions = 3, topics = {
+        "chat_messages", "chat_messages.retry-1", "chat_messages.retry-2", "chat_messages.retry-3",
+        "read_status_updates", "read_status_updates.retry-1", "read_status_updates.retry-2",
+        "read_status_updates.retry-3"})
+class KafkaConversationOrderingTest {
+    static final int CONVERSATIONS = 12;
+    static final int MESSAGES_PER_CONVERSATION = 50;
+
+    static Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+    static Set<String> consumerThreads = ConcurrentHashMap.newKeySet();
+    static CountDownLatch allReceived = new CountDownLatch(CONVERSATIONS * MESSAGES_PER_CONVERSATION);
+
+    @Autowired
+    KafkaProducer kafkaProducer;
+
+    @Test
+    void listenConversations_keepsPerConversationOrderAcrossConcurrentConsumers() throws InterruptedException {
+        // Interleave conversations so consecutive records of one conversation are never adjacent
+        for (int sequence = 0; sequence < MESSAGES_PER_CONVERSATION; sequence++) {
+            for (int conversation = 0; conversation < CONVERSATIONS; conversation++) {
+                kafkaProducer.sendMessage(event("conversation-" + conversation, sequence));
+            }
+        }
+
+        assertTrue(allReceived.await(60, TimeUnit.SECONDS), "not every message was consumed");
+
+        List<Integer> expected = IntStream.range(0, MESSAGES_PER_CONVERSATION).boxed().toList();
+        assertEquals(CONVERSATIONS, received.size());
+        received.forEach((conversationId, sequences) -> assertEquals(expected, sequences, conversationId));
+        assertTrue(consumerThreads.size() > 1, "records were not consumed concurrently");
+    }
+
+    private ChatMessageEventDTO event(String conversationId, int sequence) {
+        return ChatMessageEventDTO.builder()
+                .response(ChatMessageResponse.builder()
+                        .id(conversationId + "-" + sequence)
+                        .conversationId(conversationId)
+                        .message(String.valueOf(sequence))
+                        .build())
+                .participantsIds(Set.of("detail-1"))
+                .eventType(EventType.MESSAGE_CREATE)
+                .build();
+    }
+
+    @Configuration
+    @EnableKafka
+    static class Config {
+        @Bean
+        KafkaTemplate<String, Object> kafkaTemplate(EmbeddedKafkaBroker broker) {
+            return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of(
+                    ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class)));
+        }
+
+        @Bean
+        ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(EmbeddedKafkaBroker broker) {
+            ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+            factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(Map.of(
+                    ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                    ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
+                    ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+                    ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class,
+                    JsonDeserializer.TRUSTED_PACKAGES, "*")));
+            return factory;
+        }
+
+        @Bean
+        ConcurrentKafkaListenerContainerFactory<String, Object> retryKafkaListenerContainerFactory(
+                EmbeddedKafkaBroker broker) {
+            ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+            factory.setConsumerFactory(kafkaListenerContainerFactory(broker).getConsumerFactory());
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            return factory;
+        }
+
+        @Bean
+        KafkaProducer kafkaProducer(KafkaTemplate<String, Object> kafkaTemplate) {
+            return new KafkaProducer(kafkaTemplate);
+        }
+
+        @Bean
+        static ConversionService conversionService() {
+            // Binds the Duration defaults of KafkaRetryRouter
+            return ApplicationConversionService.getSharedInstance();
+        }
+
+        @Bean
+        KafkaRetryRouter kafkaRetryRouter(KafkaTemplate<String, Object> kafkaTemplate) {
+            return new KafkaRetryRouter(kafkaTemplate, new SimpleMeterRegistry());
+        }
+
+        @Bean
+        KafkaConsumer kafkaConsumer(KafkaRetryRouter kafkaRetryRouter) {
+            MessageDeliveryService messageDeliveryService = mock(MessageDeliveryService.class);
+            doAnswer(invocation -> {
+                List<ChatMessageEventDTO> events = invocation.getArgument(0);
+                for (ChatMessageEventDTO event : events) {
+                    received.computeIfAbsent(event.getResponse().getConversationId(), id -> new ArrayList<>())
+                            .add(Integer.parseInt(event.getResponse().getMessage()));
+                    allReceived.countDown();
+                }
+                consumerThreads.add(Thread.currentThread().getName());
+                return List.of();
+            }).when(messageDeliveryService).deliverAll(any());
+
+            return new KafkaConsumer(
+                    mock(ClusterUserMessaging.class),
+                    mock(ConversationRepository.class),
+                    messageDeliveryService,
+                    new SimpleMeterRegistry(),
+                    kafkaRetryRouter);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.hehe.thesocial.service.kafka;
+
+import com.hehe.thesocial.dto.event.ReadStatusEventDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class KafkaRetryRouterTest {
+    KafkaTemplate<String, Object> kafkaTemplate;
+    KafkaRetryRouter kafkaRetryRouter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        kafkaTemplate = mock(KafkaTemplate.class);
+        kafkaRetryRouter = new KafkaRetryRouter(kafkaTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(kafkaRetryRouter, "maxAttempts", 3);
+        ReflectionTestUtils.setField(kafkaRetryRouter, "initialDelay", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(kafkaRetryRouter, "multiplier", 2.0);
+        ReflectionTestUtils.setField(kafkaRetryRouter, "maxDelay", Duration.ofSeconds(3));
+    }
+
+    @Test
+    void backoff_growsExponentiallyUpToMaxDelay() {
+        assertEquals(Duration.ofSeconds(1), kafkaRetryRouter.backoff(1));
+        assertEquals(Duration.ofSeconds(2), kafkaRetryRouter.backoff(2));
+        assertEquals(Duration.ofSeconds(3), kafkaRetryRouter.backoff(3));
+    }
+
+    @Test
+    void routeFailure_retriesUntilAttemptsAreUsedUpThenDeadLetters() {
+        ReadStatusEventDTO event = ReadStatusEventDTO.builder().conversationId("conversation-1").build();
+
+        kafkaRetryRouter.routeFailure("read_status_updates", "conversation-1", event, 1, "mongo down");
+        ProducerRecord<String, Object> retry = lastSent();
+        assertEquals("read_status_updates.retry-1", retry.topic());
+        assertEquals("conversation-1", retry.key());
+
+        ConsumerRecord<String, Object> consumed = new ConsumerRecord<>(retry.topic(), 0, 0, retry.key(), retry.value());
+        retry.headers().forEach(header -> consumed.headers().add(header));
+        assertEquals(2, kafkaRetryRouter.attemptOf(consumed));
+        assertTrue(kafkaRetryRouter.remainingDelay(consumed).compareTo(Duration.ZERO) > 0);
+
+        kafkaRetryRouter.routeFailure("read_status_updates", "conversation-1", event, 2, "mongo down");
+        assertEquals("read_status_updates.retry-2", lastSent().topic());
+
+        kafkaRetryRouter.routeFailure("read_status_updates", "conversation-1", event, 3, "mongo down");
+        assertEquals("read_status_updates.DLT", lastSent().topic());
+    }
+
+    @Test
+    void retryTopics_hasOneTierPerAttemptThatCanBeRetried() {
+        assertArrayEquals(new String[]{"chat_messages.retry-1", "chat_messages.retry-2"},
+                kafkaRetryRouter.retryTopics("chat_messages"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProducerRecord<String, Object> lastSent() {
+        ArgumentCaptor<ProducerRecord<String, Object>> captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate, atLeastOnce()).send(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,123 @@
+package com.hehe.thesocial.service.kafka;
+
+import com.hehe.thesocial.dto.event.ReadStatusEventDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ReadStatusCoalescerTest {
+    static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    KafkaProducer producer;
+    SimpleMeterRegistry meterRegistry;
+    ReadStatusCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        producer = mock(KafkaProducer.class);
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new ReadStatusCoalescer(producer, meterRegistry);
+        ReflectionTestUtils.setField(coalescer, "window", Duration.ofMinutes(1));
+        coalescer.registerMetrics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+    }
+
+    @Test
+    void submit_mergesReadsOfSameReaderIntoOneEvent() {
+        coalescer.submit(event("conversation-1", "reader-1", "message-1", List.of("reader-1", "reader-3")));
+        coalescer.submit(event("conversation-1", "reader-1", "message-3", List.of("reader-1")));
+        coalescer.submit(event("conversation-1", "reader-1", "message-2", List.of("reader-1", "reader-2")));
+        coalescer.submit(event("conversation-1", "reader-2", "message-3", List.of("reader-1", "reader-2")));
+
+        verify(producer, never()).sendReadStatusUpdate(any());
+
+        coalescer.flushAll();
+
+        ArgumentCaptor<ReadStatusEventDTO> published = ArgumentCaptor.forClass(ReadStatusEventDTO.class);
+        verify(producer, times(2)).sendReadStatusUpdate(published.capture());
+        ReadStatusEventDTO merged = published.getAllValues().stream()
+                .filter(e -> e.getReaderId().equals("reader-1"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(List.of("message-1", "message-3", "message-2"), merged.getMessageIds());
+        // Every message keeps its own receipts, the single-message fields describe the latest read
+        assertEquals(Map.of(
+                "message-1", List.of("reader-1", "reader-3"),
+                "message-3", List.of("reader-1"),
+                "message-2", List.of("reader-1", "reader-2")), merged.getReadParticipantsByMessageId());
+        assertEquals("message-2", merged.getMessageId());
+        assertEquals(2, merged.getReadCount());
+
+        assertEquals(4, meterRegistry.counter("chat.read_status.events", "stage", "received").count());
+        assertEquals(2, meterRegistry.counter("chat.read_status.events", "stage", "published").count());
+        assertEquals(2.0, meterRegistry.summary("chat.read_status.merged").mean());
+    }
+
+    @Test
+    void submit_keepsOnlyTheNewestWatermarkOfAReader() {
+        coalescer.submit(watermark("conversation-1", "reader-1", NOW.minusMinutes(2)));
+        coalescer.submit(watermark("conversation-1", "reader-1", NOW));
+        coalescer.submit(watermark("conversation-1", "reader-1", NOW.minusMinutes(1)));
+
+        coalescer.flushAll();
+
+        ArgumentCaptor<ReadStatusEventDTO> published = ArgumentCaptor.forClass(ReadStatusEventDTO.class);
+        verify(producer, times(1)).sendReadStatusUpdate(published.capture());
+        ReadStatusEventDTO merged = published.getValue();
+        assertEquals(NOW, merged.getReadUpTo());
+        assertNull(merged.getMessageId());
+        assertNull(merged.getMessageIds());
+        assertNull(merged.getReadParticipantsByMessageId());
+        assertNull(merged.getReadCount());
+        assertEquals(3.0, meterRegistry.summary("chat.read_status.merged").mean());
+    }
+
+    @Test
+    void submit_publishesImmediatelyWhenWindowIsZero() {
+        ReflectionTestUtils.setField(coalescer, "window", Duration.ZERO);
+
+        coalescer.submit(event("conversation-1", "reader-1", "message-1", List.of("reader-1")));
+
+        ArgumentCaptor<ReadStatusEventDTO> published = ArgumentCaptor.forClass(ReadStatusEventDTO.class);
+        verify(producer, times(1)).sendReadStatusUpdate(published.capture());
+        assertEquals(List.of("message-1"), published.getValue().getMessageIds());
+    }
+
+    private ReadStatusEventDTO event(String conversationId, String readerId, String messageId, List<String> readers) {
+        return ReadStatusEventDTO.builder()
+                .conversationId(conversationId)
+                .readerId(readerId)
+                .messageId(messageId)
+                .readParticipantsId(readers)
+                .readCount(readers.size())
+                .build();
+    }
+
+    private ReadStatusEventDTO watermark(String conversationId, String readerId, LocalDateTime readUpTo) {
+        return ReadStatusEventDTO.builder()
+                .conversationId(conversationId)
+                .readerId(readerId)
+                .readUpTo(readUpTo)
+                .build();
+    }
+}
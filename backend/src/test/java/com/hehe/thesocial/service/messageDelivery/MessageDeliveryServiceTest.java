@@ -0,0 +1,146 @@
+package com.hehe.thesocial.service.messageDelivery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hehe.thesocial.dto.event.ChatMessageEventDTO;
+import com.hehe.thesocial.dto.event.NewestMessageBroadcast;
+import com.hehe.thesocial.dto.response.chat.ChatMessageResponse;
+import com.hehe.thesocial.entity.PendingDelivery;
+import com.hehe.thesocial.entity.enums.ConversationType;
+import com.hehe.thesocial.entity.enums.EventType;
+import com.hehe.thesocial.repository.ConversationRepository;
+import com.hehe.thesocial.service.cluster.ClusterUserMessaging;
+import com.hehe.thesocial.service.cluster.UserRouteTable;
+import com.hehe.thesocial.service.presence.PresenceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class MessageDeliveryServiceTest {
+    static final Set<String> PARTICIPANTS = Set.of("detail-1", "detail-2", "detail-3");
+
+    SimpMessagingTemplate simpMessagingTemplate;
+    ConversationRepository conversationRepository;
+    PendingDeliveryService pendingDeliveryService;
+    PresenceRegistry presenceRegistry;
+    MessageDeliveryService messageDeliveryService;
+
+    @BeforeEach
+    void setUp() {
+        simpMessagingTemplate = mock(SimpMessagingTemplate.class);
+        conversationRepository = mock(ConversationRepository.class);
+        pendingDeliveryService = mock(PendingDeliveryService.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        presenceRegistry = new PresenceRegistry(meterRegistry, event -> { });
+        PARTICIPANTS.forEach(participantId -> presenceRegistry.connect("session-" + participantId, participantId));
+        ClusterUserMessaging clusterUserMessaging = new ClusterUserMessaging(simpMessagingTemplate, presenceRegistry,
+                new UserRouteTable(mock(KafkaTemplate.class), presenceRegistry, meterRegistry),
+                mock(KafkaTemplate.class), new ObjectMapper(), meterRegistry);
+        messageDeliveryService = new MessageDeliveryService(
+                clusterUserMessaging, conversationRepository, pendingDeliveryService);
+    }
+
+    @Test
+    void deliver_sendsOneFramePerParticipantPerDestinationEvenWhenRedelivered() {
+        ChatMessageEventDTO event = ChatMessageEventDTO.builder()
+                .response(ChatMessageResponse.builder()
+                        .id("message-1")
+                        .conversationId("conversation-1")
+                        .message("hello")
+                        .build())
+                .participantsIds(PARTICIPANTS)
+                .eventType(EventType.MESSAGE_CREATE)
+                .conversationType(ConversationType.GROUP)
+                .build();
+
+        messageDeliveryService.deliver(event);
+        messageDeliveryService.deliver(event);
+
+        for (String participantId : PARTICIPANTS) {
+            verify(simpMessagingTemplate, times(1))
+                    .convertAndSendToUser(eq(participantId), eq("/queue/chat"), any(ChatMessageResponse.class));
+            verify(simpMessagingTemplate, times(1))
+                    .convertAndSendToUser(eq(participantId), eq("/queue/newest-message"), any(NewestMessageBroadcast.class));
+        }
+        verify(simpMessagingTemplate, times(PARTICIPANTS.size() * 2))
+                .convertAndSendToUser(anyString(), anyString(), any(Object.class));
+        verify(conversationRepository, never()).findById(any());
+    }
+
+    @Test
+    void deliver_sendsAMessageAgainOnceItsContentChanged() {
+        ChatMessageResponse draft = ChatMessageResponse.builder()
+                .id("message-1")
+                .conversationId("conversation-1")
+                .message("thinking")
+                .build();
+        ChatMessageResponse answer = ChatMessageResponse.builder()
+                .id("message-1")
+                .conversationId("conversation-1")
+                .message("the final answer")
+                .build();
+
+        messageDeliveryService.deliver(createEvent(draft));
+        messageDeliveryService.deliver(createEvent(answer));
+        messageDeliveryService.deliver(createEvent(answer));
+
+        verify(simpMessagingTemplate, times(2))
+                .convertAndSendToUser(eq("detail-1"), eq("/queue/chat"), any(ChatMessageResponse.class));
+    }
+
+    private static ChatMessageEventDTO createEvent(ChatMessageResponse response) {
+        return ChatMessageEventDTO.builder()
+                .response(response)
+                .participantsIds(PARTICIPANTS)
+                .eventType(EventType.MESSAGE_CREATE)
+                .conversationType(ConversationType.GROUP)
+                .build();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void deliverAll_recordsNewMessagesForOfflineParticipantsInsteadOfSendingFrames() {
+        presenceRegistry.disconnect("session-detail-2");
+        presenceRegistry.disconnect("session-detail-3");
+        ChatMessageEventDTO event = ChatMessageEventDTO.builder()
+                .response(ChatMessageResponse.builder()
+                        .id("message-1")
+                        .conversationId("conversation-1")
+                        .senderId("detail-3")
+                        .message("hello")
+                        .build())
+                .participantsIds(PARTICIPANTS)
+                .eventType(EventType.MESSAGE_CREATE)
+                .build();
+
+        messageDeliveryService.deliverAll(List.of(event));
+
+        // The offline sender already has the message, only the offline recipient is logged
+        Collection<PendingDelivery> recorded = (Collection<PendingDelivery>) mockingDetails(pendingDeliveryService)
+                .getInvocations().iterator().next().getArgument(0);
+        assertEquals(1, recorded.size());
+        PendingDelivery delivery = recorded.iterator().next();
+        assertEquals("detail-2", delivery.getOwnerId());
+        assertEquals("message-1", delivery.getMessageId());
+
+        verify(simpMessagingTemplate, times(2))
+                .convertAndSendToUser(eq("detail-1"), anyString(), any(Object.class));
+        verify(simpMessagingTemplate, never())
+                .convertAndSendToUser(eq("detail-2"), anyString(), any(Object.class));
+    }
+}
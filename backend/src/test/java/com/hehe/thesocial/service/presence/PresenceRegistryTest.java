@@ -0,0 +1,59 @@
+package com.hehe.thesocial.service.presence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PresenceRegistryTest {
+    SimpleMeterRegistry meterRegistry;
+    PresenceRegistry presenceRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        presenceRegistry = new PresenceRegistry(meterRegistry, event -> { });
+        ReflectionTestUtils.setField(presenceRegistry, "sessionTimeout", Duration.ZERO);
+        presenceRegistry.start();
+    }
+
+    @Test
+    void disconnect_keepsUserOnlineUntilLastSessionCloses() {
+        presenceRegistry.connect("session-1", "detail-1");
+        presenceRegistry.connect("session-2", "detail-1");
+        presenceRegistry.connect("session-2", "detail-1");
+
+        assertEquals(2, presenceRegistry.sessionCount("detail-1"));
+        assertEquals(1.0, meterRegistry.get("chat.presence.online_users").gauge().value());
+        assertEquals(2.0, meterRegistry.get("chat.presence.sessions").gauge().value());
+
+        presenceRegistry.disconnect("session-1");
+        assertTrue(presenceRegistry.isOnline("detail-1"));
+
+        presenceRegistry.disconnect("session-2");
+        presenceRegistry.disconnect("session-2");
+        assertFalse(presenceRegistry.isOnline("detail-1"));
+        assertEquals(Map.of(), presenceRegistry.snapshot());
+    }
+
+    @Test
+    void expireStaleSessions_dropsSessionsSilentForLongerThanTimeout() throws InterruptedException {
+        ReflectionTestUtils.setField(presenceRegistry, "sessionTimeout", Duration.ofMillis(50));
+        presenceRegistry.connect("session-silent", "detail-1");
+        presenceRegistry.connect("session-active", "detail-2");
+
+        Thread.sleep(100);
+        presenceRegistry.touch("session-active");
+        presenceRegistry.expireStaleSessions();
+
+        assertFalse(presenceRegistry.isOnline("detail-1"));
+        assertTrue(presenceRegistry.isOnline("detail-2"));
+    }
+}
@@ -0,0 +1,98 @@
+package com.hehe.thesocial.service.role;
+
+import com.hehe.thesocial.config.RoleAuthoritiesConverter;
+import com.hehe.thesocial.entity.Permission;
+import com.hehe.thesocial.entity.Role;
+import com.hehe.thesocial.mapper.role.RoleMapper;
+import com.hehe.thesocial.repository.PermissionRepository;
+import com.hehe.thesocial.repository.RoleRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoleServiceImplTest {
+    RoleRepository roleRepository;
+    PermissionRepository permissionRepository;
+    RolePermissionCache rolePermissionCache;
+    RoleServiceImpl roleService;
+    RoleAuthoritiesConverter roleAuthoritiesConverter;
+    Role userRole;
+
+    @BeforeEach
+    void setUp() {
+        roleRepository = mock(RoleRepository.class);
+        permissionRepository = mock(PermissionRepository.class);
+        userRole = Role.builder()
+                .id("role-user")
+                .roleName("USER")
+                .permissions(new HashSet<>(Set.of(permission("perm-read", "READ_POST"))))
+                .build();
+        when(roleRepository.findAll()).thenAnswer(invocation -> List.of(userRole));
+        when(roleRepository.findById("role-user")).thenReturn(Optional.of(userRole));
+        when(roleRepository.existsById("role-user")).thenReturn(true);
+        when(roleRepository.save(any(Role.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        rolePermissionCache = new RolePermissionCache(roleRepository, new SimpleMeterRegistry());
+        rolePermissionCache.reload();
+        roleService = new RoleServiceImpl(roleRepository, permissionRepository, mock(RoleMapper.class),
+                rolePermissionCache);
+        roleAuthoritiesConverter = new RoleAuthoritiesConverter(rolePermissionCache);
+    }
+
+    @Test
+    void authorities_followPermissionEditsWithoutReissuingTokens() {
+        Jwt jwt = Jwt.withTokenValue("token")
+                .header("alg", "HS512")
+                .claim("scope", "ROLE_USER")
+                .issuedAt(Instant.now())
+                .build();
+        assertEquals(Set.of("ROLE_USER", "READ_POST"), authoritiesOf(jwt));
+
+        Permission writePost = permission("perm-write", "WRITE_POST");
+        when(permissionRepository.findById("perm-write")).thenReturn(Optional.of(writePost));
+        when(permissionRepository.existsById("perm-write")).thenReturn(true);
+        long version = rolePermissionCache.version();
+
+        roleService.addPermissionToRole("role-user", "perm-write");
+        assertEquals(Set.of("ROLE_USER", "READ_POST", "WRITE_POST"), authoritiesOf(jwt));
+
+        roleService.removePermissionFromRole("role-user", "perm-write");
+        assertEquals(Set.of("ROLE_USER", "READ_POST"), authoritiesOf(jwt));
+        assertTrue(rolePermissionCache.version() >= version + 2);
+    }
+
+    @Test
+    void authorities_splitSpaceSeparatedRolesAndIgnoreUnknownOnes() {
+        Jwt jwt = Jwt.withTokenValue("token")
+                .header("alg", "HS512")
+                .claim("scope", "ROLE_USER ROLE_GHOST")
+                .build();
+
+        assertEquals(Set.of("ROLE_USER", "ROLE_GHOST", "READ_POST"), authoritiesOf(jwt));
+    }
+
+    private Set<String> authoritiesOf(Jwt jwt) {
+        return roleAuthoritiesConverter.convert(jwt).stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toSet());
+    }
+
+    private static Permission permission(String id, String name) {
+        return Permission.builder().id(id).permission(name).build();
+    }
+}
@@ -0,0 +1,44 @@
+package com.hehe.thesocial.service.userDetail;
+
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.repository.UserDetailRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserDetailIdCacheTest {
+    UserDetailRepository userDetailRepository;
+    UserDetailIdCache userDetailIdCache;
+
+    @BeforeEach
+    void setUp() {
+        userDetailRepository = mock(UserDetailRepository.class);
+        userDetailIdCache = new UserDetailIdCache(userDetailRepository, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void resolve_looksUpEachUserOnceUntilEvicted() {
+        when(userDetailRepository.findIdByUserId("user-1"))
+                .thenReturn(Optional.of(UserDetail.builder().id("detail-1").build()));
+
+        assertEquals(Optional.of("detail-1"), userDetailIdCache.resolve("user-1"));
+        assertEquals(Optional.of("detail-1"), userDetailIdCache.resolve("user-1"));
+        verify(userDetailRepository, times(1)).findIdByUserId("user-1");
+
+        // The profile was deleted
+        userDetailIdCache.evict("user-1");
+        when(userDetailRepository.findIdByUserId("user-1")).thenReturn(Optional.empty());
+
+        assertTrue(userDetailIdCache.resolve("user-1").isEmpty());
+        verify(userDetailRepository, times(2)).findIdByUserId("user-1");
+    }
+}
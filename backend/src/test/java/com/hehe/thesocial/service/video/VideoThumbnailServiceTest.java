@@ -0,0 +1,137 @@
+package com.hehe.thesocial.service.video;
+
+import com.hehe.thesocial.dto.event.VideoProcessedEvent;
+import com.hehe.thesocial.entity.FileDocument;
+import com.hehe.thesocial.entity.UserDetail;
+import com.hehe.thesocial.entity.Video;
+import com.hehe.thesocial.repository.FileRepository;
+import com.hehe.thesocial.repository.VideoRepository;
+import com.hehe.thesocial.service.cluster.ClusterUserMessaging;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VideoThumbnailServiceTest {
+    @TempDir
+    Path uploadDir;
+
+    VideoRepository videoRepository;
+    MongoTemplate mongoTemplate;
+    ClusterUserMessaging clusterUserMessaging;
+    VideoThumbnailService videoThumbnailService;
+
+    @BeforeEach
+    void setUp() {
+        videoRepository = mock(VideoRepository.class);
+        FileRepository fileRepository = mock(FileRepository.class);
+        when(fileRepository.save(any(FileDocument.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), any(Class.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        clusterUserMessaging = mock(ClusterUserMessaging.class);
+
+        VideoThumbnailExtractor extractor = new VideoThumbnailExtractor();
+        ReflectionTestUtils.setField(extractor, "maxWidth", 160);
+        ReflectionTestUtils.setField(extractor, "quality", 0.8f);
+
+        videoThumbnailService = new VideoThumbnailService(videoRepository, fileRepository, mongoTemplate, extractor,
+                clusterUserMessaging, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(videoThumbnailService, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(videoThumbnailService, "serverHost", "localhost");
+        ReflectionTestUtils.setField(videoThumbnailService, "serverPort", "8082");
+        ReflectionTestUtils.setField(videoThumbnailService, "contextPath", "/api/v1");
+        ReflectionTestUtils.setField(videoThumbnailService, "threads", 1);
+        ReflectionTestUtils.setField(videoThumbnailService, "queueCapacity", 1);
+        videoThumbnailService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        videoThumbnailService.stop();
+    }
+
+    @Test
+    void process_fillsProbeResultsAndThumbnailFromADetailedFrame() throws Exception {
+        Files.createDirectories(uploadDir.resolve("alice"));
+        recordClip(uploadDir.resolve("alice").resolve("clip.mp4"));
+        Video video = Video.builder()
+                .id("video-1")
+                .uploader(UserDetail.builder().id("detail-1").build())
+                .file(FileDocument.builder().id("file-1")
+                        .url("http://localhost:8082/api/v1/files/alice/clip.mp4").build())
+                .build();
+        when(videoRepository.findById("video-1")).thenReturn(Optional.of(video));
+
+        videoThumbnailService.process("video-1");
+
+        ArgumentCaptor<Object> event = ArgumentCaptor.forClass(Object.class);
+        verify(clusterUserMessaging).sendToUsers(eq(List.of("detail-1")), eq("/queue/video-updates"), event.capture());
+        VideoProcessedEvent processed = (VideoProcessedEvent) event.getValue();
+        assertEquals(320, processed.getWidth());
+        assertEquals(240, processed.getHeight());
+        assertEquals(2.0, processed.getDuration(), 0.2);
+        assertNotNull(processed.getThumbnailUrl());
+
+        String thumbnailName = processed.getThumbnailUrl().substring(processed.getThumbnailUrl().lastIndexOf('/') + 1);
+        BufferedImage thumbnail = ImageIO.read(uploadDir.resolve("thumbnailImage/alice").resolve(thumbnailName).toFile());
+        assertEquals(160, thumbnail.getWidth());
+        assertEquals(120, thumbnail.getHeight());
+        // The black opening second is skipped in favour of the textured part of the clip
+        assertTrue(VideoThumbnailExtractor.lumaVariance(thumbnail) > VideoThumbnailExtractor.DETAILED_VARIANCE);
+    }
+
+    /**
+     * Two seconds at 320x240: one black second, then random noise
+     */
+    private void recordClip(Path target) throws Exception {
+        Random random = new Random(42);
+        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(target.toFile(), 320, 240);
+             Java2DFrameConverter converter = new Java2DFrameConverter()) {
+            recorder.setFormat("mp4");
+            recorder.setVideoCodec(avcodec.AV_CODEC_ID_MPEG4);
+            recorder.setFrameRate(10);
+            recorder.setVideoQuality(2);
+            recorder.start();
+            for (int i = 0; i < 20; i++) {
+                BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_3BYTE_BGR);
+                if (i >= 10) {
+                    for (int y = 0; y < 240; y++) {
+                        for (int x = 0; x < 320; x++) {
+                            image.setRGB(x, y, random.nextInt(0xffffff));
+                        }
+                    }
+                }
+                recorder.record(converter.convert(image));
+            }
+            recorder.stop();
+        }
+    }
+}
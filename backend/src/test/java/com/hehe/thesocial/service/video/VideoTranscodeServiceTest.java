@@ -0,0 +1,197 @@
+package com.hehe.thesocial.service.video;
+
+import com.hehe.thesocial.entity.FileDocument;
+import com.hehe.thesocial.entity.Video;
+import com.hehe.thesocial.entity.enums.TranscodeStatus;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VideoTranscodeServiceTest {
+    @TempDir
+    Path uploadDir;
+
+    MongoTemplate mongoTemplate;
+    VideoTranscodeService videoTranscodeService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Video.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        HlsTranscoder hlsTranscoder = new HlsTranscoder();
+        ReflectionTestUtils.setField(hlsTranscoder, "segmentSeconds", 1);
+        ReflectionTestUtils.setField(hlsTranscoder, "audioBitrate", 96000);
+
+        videoTranscodeService = new VideoTranscodeService(mongoTemplate, hlsTranscoder, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(videoTranscodeService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(videoTranscodeService, "retryBackoff", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(videoTranscodeService, "lease", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(videoTranscodeService, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(videoTranscodeService, "serverHost", "localhost");
+        ReflectionTestUtils.setField(videoTranscodeService, "serverPort", "8082");
+        ReflectionTestUtils.setField(videoTranscodeService, "contextPath", "/api/v1");
+        ReflectionTestUtils.setField(videoTranscodeService, "transcoding",
+                new SimpleMeterRegistry().timer("video.transcode.duration"));
+        ReflectionTestUtils.setField(videoTranscodeService, "leaseRenewer",
+                Executors.newSingleThreadScheduledExecutor());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ((ExecutorService) ReflectionTestUtils.getField(videoTranscodeService, "leaseRenewer")).shutdownNow();
+    }
+
+    @Test
+    void transcode_writesTheLadderUpToTheSourceHeightAndMarksTheVideoReady() throws Exception {
+        Files.createDirectories(uploadDir.resolve("alice"));
+        recordClip(uploadDir.resolve("alice").resolve("clip.mp4"), 854, 480);
+        Path earlierAttempt = Files.createDirectories(uploadDir.resolve("hls").resolve("video-1").resolve("1"));
+
+        videoTranscodeService.transcode(video(2));
+
+        Path output = uploadDir.resolve("hls").resolve("video-1").resolve("2");
+        assertFalse(Files.exists(earlierAttempt));
+        String master = Files.readString(output.resolve(HlsTranscoder.MASTER_PLAYLIST));
+        assertTrue(master.contains("RESOLUTION=426x240\n240p/index.m3u8"));
+        assertTrue(master.contains("RESOLUTION=854x480\n480p/index.m3u8"));
+        assertFalse(master.contains("720p"), "the source is never upscaled");
+        for (String rendition : List.of("240p", "480p")) {
+            assertTrue(Files.readString(output.resolve(rendition).resolve("index.m3u8")).contains("#EXT-X-ENDLIST"));
+            try (Stream<Path> segments = Files.list(output.resolve(rendition))) {
+                assertTrue(segments.filter(path -> path.toString().endsWith(".ts")).count() >= 2);
+            }
+        }
+
+        Document set = lastUpdate().getUpdateObject().get("$set", Document.class);
+        assertEquals(TranscodeStatus.READY, set.get("transcode_status"));
+        assertEquals(100, set.get("transcode_progress"));
+        assertEquals("http://localhost:8082/api/v1/files/hls/video-1/2/master.m3u8", set.get("hls_url"));
+        assertEquals(2, lastQuery().getQueryObject().get("transcode_attempts"));
+    }
+
+    @Test
+    void transcode_dropsItsOutputWhenTheVideoWasClaimedAgainMeanwhile() throws Exception {
+        Files.createDirectories(uploadDir.resolve("alice"));
+        recordClip(uploadDir.resolve("alice").resolve("clip.mp4"), 426, 240);
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Video.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        videoTranscodeService.transcode(video(1));
+
+        assertFalse(Files.exists(uploadDir.resolve("hls").resolve("video-1").resolve("1")));
+    }
+
+    @Test
+    void transcode_retriesWithBackoffAndGivesUpAfterMaxAttempts() {
+        // No source file on disk
+        videoTranscodeService.transcode(video(2));
+        Document retry = lastUpdate().getUpdateObject().get("$set", Document.class);
+        assertEquals(TranscodeStatus.PENDING, retry.get("transcode_status"));
+        long delay = retry.get("transcode_next_attempt_at", Instant.class).toEpochMilli() - System.currentTimeMillis();
+        assertTrue(delay > Duration.ofSeconds(110).toMillis() && delay <= Duration.ofMinutes(2).toMillis());
+
+        videoTranscodeService.transcode(video(3));
+        Document failed = lastUpdate().getUpdateObject().get("$set", Document.class);
+        assertEquals(TranscodeStatus.FAILED, failed.get("transcode_status"));
+        assertFalse(Files.exists(uploadDir.resolve("hls").resolve("video-1")));
+    }
+
+    @Test
+    void drain_failsVideosWhoseWorkerDiedOnTheLastAttemptInsteadOfClaimingThemAgain() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(Video.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        videoTranscodeService.drain();
+
+        ArgumentCaptor<Query> abandoned = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> failed = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateMulti(abandoned.capture(), failed.capture(), eq(Video.class));
+        assertEquals(new Document("$gte", 3), abandoned.getValue().getQueryObject().get("transcode_attempts"));
+        assertEquals(TranscodeStatus.FAILED,
+                failed.getValue().getUpdateObject().get("$set", Document.class).get("transcode_status"));
+
+        ArgumentCaptor<Query> due = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(due.capture(), any(Update.class), any(), eq(Video.class));
+        Document leaseExpired = due.getValue().getQueryObject().getList("$or", Document.class).get(1);
+        assertEquals(new Document("$lt", 3), leaseExpired.get("transcode_attempts"));
+    }
+
+    private Video video(int attempts) {
+        return Video.builder()
+                .id("video-1")
+                .file(FileDocument.builder().id("file-1")
+                        .url("http://localhost:8082/api/v1/files/alice/clip.mp4").build())
+                .transcodeStatus(TranscodeStatus.PROCESSING)
+                .transcodeAttempts(attempts)
+                .build();
+    }
+
+    private Query lastQuery() {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, atLeastOnce()).updateFirst(queries.capture(), any(Update.class), eq(Video.class));
+        return queries.getValue();
+    }
+
+    private Update lastUpdate() {
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, atLeastOnce()).updateFirst(any(Query.class), updates.capture(), eq(Video.class));
+        return updates.getValue();
+    }
+
+    /**
+     * Three seconds of a moving bar so every segment has something to encode
+     */
+    private void recordClip(Path target, int width, int height) throws Exception {
+        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(target.toFile(), width, height);
+             Java2DFrameConverter converter = new Java2DFrameConverter()) {
+            recorder.setFormat("mp4");
+            recorder.setVideoCodec(avcodec.AV_CODEC_ID_MPEG4);
+            recorder.setFrameRate(10);
+            recorder.start();
+            for (int i = 0; i < 30; i++) {
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+                Graphics2D graphics = image.createGraphics();
+                graphics.setColor(Color.ORANGE);
+                graphics.fillRect(i * width / 30, 0, width / 10, height);
+                graphics.dispose();
+                recorder.record(converter.convert(image));
+            }
+            recorder.stop();
+        }
+    }
+}